@@ -0,0 +1,237 @@
+package open.com.permissionsmanager.analyzer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import open.com.permissionsmanager.PermissionClassifier;
+import open.com.permissionsmanager.PermissionPolicy;
+
+/**
+ * Classifies captured {@code adb shell dumpsys package} output on a workstation with the rules the
+ * app applies on the device, without installing it.
+ * <pre>
+ * analyzer [--policy policy.json] [--user 0] [--threads N] [--output DIR] DUMP_OR_DIRECTORY...
+ * </pre>
+ * Every dump, or every file of a given directory, is classified on its own thread, as many at a time
+ * as there are cores unless {@code --threads} says otherwise. The report of a dump has the format of
+ * the scan report the app exports: a {@code scan_report} line followed by one {@code application}
+ * line per user application with warnable permissions. Reports are written to {@code DUMP.jsonl} in
+ * the output directory, or to the standard output when a single dump is analyzed without one; the
+ * throughput of the run is reported on the standard error.
+ * <p>
+ * Dumps carry none of the user's ignore rules, so only the policy, if any, can ignore permissions.
+ */
+public class DumpAnalyzer {
+    private static final String AOSP_APPS_PREFIX = "com.android.";
+    private static final String REPORT_SUFFIX = ".jsonl";
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+    private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private final PermissionPolicy permissionPolicy;
+    private final int user;
+
+    private DumpAnalyzer(PermissionPolicy permissionPolicy, int user) {
+        this.permissionPolicy = permissionPolicy;
+        this.user = user;
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    private static int run(String[] args) {
+        PermissionPolicy permissionPolicy = PermissionPolicy.EMPTY;
+        int user = 0;
+        int numberOfThreads = Runtime.getRuntime().availableProcessors();
+        File outputDirectory = null;
+        List<File> inputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--policy":
+                        permissionPolicy = PermissionPolicy.parse(new String(Files.readAllBytes(new File(args[++i]).toPath()), StandardCharsets.UTF_8));
+                        break;
+                    case "--user":
+                        user = Integer.parseInt(args[++i]);
+                        break;
+                    case "--threads":
+                        numberOfThreads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--output":
+                        outputDirectory = new File(args[++i]);
+                        break;
+                    default:
+                        addInputs(inputs, new File(args[i]));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException | IOException | JSONException e) {
+            return usage(e.getMessage());
+        }
+        if (inputs.isEmpty())
+            return usage("No dump to analyze");
+        if (numberOfThreads < 1)
+            return usage("At least one thread is needed");
+        if (outputDirectory == null && inputs.size() > 1)
+            return usage("An output directory is needed to analyze more than one dump");
+        if (outputDirectory != null && !outputDirectory.isDirectory() && !outputDirectory.mkdirs())
+            return usage("Unable to create " + outputDirectory);
+        return new DumpAnalyzer(permissionPolicy, user).analyze(inputs, outputDirectory, numberOfThreads);
+    }
+
+    private static void addInputs(List<File> inputs, File input) throws IOException {
+        if (!input.exists())
+            throw new IOException(input + " does not exist");
+        if (!input.isDirectory()) {
+            inputs.add(input);
+            return;
+        }
+        File[] files = input.listFiles();
+        if (files == null)
+            throw new IOException("Unable to list " + input);
+        Arrays.sort(files);
+        for (File file : files)
+            if (file.isFile() && !file.getName().endsWith(REPORT_SUFFIX))
+                inputs.add(file);
+    }
+
+    private static int usage(String error) {
+        System.err.println(error);
+        System.err.println("usage: analyzer [--policy policy.json] [--user 0] [--threads N] [--output DIR] DUMP_OR_DIRECTORY...");
+        return EXIT_USAGE;
+    }
+
+    private int analyze(List<File> dumps, final File outputDirectory, int numberOfThreads) {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(numberOfThreads, dumps.size()));
+        List<Future<Integer>> analyses = new ArrayList<>(dumps.size());
+        for (final File dump : dumps) {
+            analyses.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws IOException {
+                    if (outputDirectory == null)
+                        return analyze(dump, System.out);
+                    OutputStream report = new FileOutputStream(new File(outputDirectory, dump.getName() + REPORT_SUFFIX));
+                    try {
+                        return analyze(dump, report);
+                    } finally {
+                        report.close();
+                    }
+                }
+            }));
+        }
+        executor.shutdown();
+        int numberOfPackages = 0;
+        int numberOfFailures = 0;
+        long numberOfBytes = 0;
+        for (int i = 0; i < dumps.size(); i++) {
+            try {
+                numberOfPackages += analyses.get(i).get();
+                numberOfBytes += dumps.get(i).length();
+            } catch (ExecutionException e) {
+                System.err.println("Unable to analyze " + dumps.get(i) + ": " + e.getCause());
+                numberOfFailures++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return EXIT_FAILED;
+            }
+        }
+        reportThroughput(dumps.size() - numberOfFailures, numberOfPackages, numberOfBytes, System.nanoTime() - start, Math.min(numberOfThreads, dumps.size()));
+        return numberOfFailures == 0 ? 0 : EXIT_FAILED;
+    }
+
+    /**
+     * @return the number of packages in the dump
+     */
+    private int analyze(File dump, OutputStream outputStream) throws IOException {
+        PackagesDump packagesDump;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(dump), StandardCharsets.UTF_8));
+        try {
+            packagesDump = DumpsysPackageParser.parse(reader, user);
+        } finally {
+            reader.close();
+        }
+        PermissionClassifier permissionClassifier = new PermissionClassifier(packagesDump, permissionPolicy);
+        Set<String> noIgnoredPermissions = Collections.emptySet();
+        List<JSONObject> applications = new ArrayList<>();
+        try {
+            for (PackagesDump.DumpedPackage dumpedPackage : packagesDump.getPackages()) {
+                if (!isUserApplication(dumpedPackage))
+                    continue;
+                List<String> warnablePermissions = new ArrayList<>(3);
+                List<String> nonwarnablePermissions = new ArrayList<>();
+                permissionClassifier.classify(dumpedPackage.getPackageName(), dumpedPackage.getGrantedPermissions(), noIgnoredPermissions, noIgnoredPermissions,
+                        warnablePermissions, nonwarnablePermissions);
+                if (warnablePermissions.isEmpty())
+                    continue;
+                applications.add(new JSONObject()
+                        .put("type", "application")
+                        .put("package", dumpedPackage.getPackageName())
+                        .put("name", dumpedPackage.getPackageName())
+                        .put("versionCode", dumpedPackage.getVersionCode())
+                        .put("ignored", false)
+                        .put("warnable", new JSONArray(warnablePermissions))
+                        .put("nonwarnable", new JSONArray(nonwarnablePermissions)));
+            }
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            writeLine(writer, new JSONObject()
+                    .put("type", "scan_report")
+                    .put("dump", dump.getName())
+                    .put("user", user)
+                    .put("applications", applications.size()));
+            for (JSONObject application : applications)
+                writeLine(writer, application);
+            writer.flush();
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        return packagesDump.getPackages().size();
+    }
+
+    /**
+     * The counterpart of {@code PermissionsScanner.isUserApplication()}.
+     */
+    private static boolean isUserApplication(PackagesDump.DumpedPackage dumpedPackage) {
+        return dumpedPackage.isInstalled()
+                && dumpedPackage.isEnabled()
+                && !dumpedPackage.isSystemApp()
+                && !dumpedPackage.getPackageName().startsWith(AOSP_APPS_PREFIX);
+    }
+
+    private static void writeLine(Writer writer, JSONObject record) throws IOException {
+        writer.write(record.toString());
+        writer.write('\n');
+    }
+
+    private static void reportThroughput(int numberOfDumps, int numberOfPackages, long numberOfBytes, long durationNanos, int numberOfThreads) {
+        double seconds = Math.max(durationNanos, 1) / 1e9;
+        System.err.println(String.format(Locale.US, "Analyzed %d dumps, %d packages, %.1f MB in %d ms on %d threads: %.1f dumps/s, %.0f packages/s, %.1f MB/s",
+                numberOfDumps, numberOfPackages, numberOfBytes / BYTES_PER_MEGABYTE, durationNanos / 1000000, numberOfThreads,
+                numberOfDumps / seconds, numberOfPackages / seconds, numberOfBytes / BYTES_PER_MEGABYTE / seconds));
+    }
+}
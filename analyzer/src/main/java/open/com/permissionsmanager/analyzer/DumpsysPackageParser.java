@@ -0,0 +1,232 @@
+package open.com.permissionsmanager.analyzer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the text of {@code adb shell dumpsys package} line by line, so a dump is never held in
+ * memory as a whole. The protection levels come from the {@code Permissions:} section and from the
+ * permissions packages declare; the packages come from the {@code Packages:} section, with the install
+ * state and runtime grants of the given user. The factory versions listed under
+ * {@code Hidden system packages:} are not installed packages and are skipped.
+ * <p>
+ * Blocks are delimited by indentation: a list, like {@code runtime permissions:}, holds the lines
+ * indented deeper than its header.
+ */
+public class DumpsysPackageParser {
+    private static final String SECTION_PERMISSIONS = "Permissions:";
+    private static final String SECTION_PACKAGES = "Packages:";
+    private static final String LIST_REQUESTED = "requested permissions:";
+    private static final String LIST_INSTALL = "install permissions:";
+    private static final String LIST_RUNTIME = "runtime permissions:";
+    private static final String LIST_DECLARED = "declared permissions:";
+    private static final String LIST_LEGACY_GRANTED = "grantedPermissions:";
+
+    private static final Pattern BRACKETED_NAME = Pattern.compile("^\\w+ \\[([^\\]]+)\\]");
+    private static final Pattern PROTECTION = Pattern.compile("prot=([\\w|]+)");
+    private static final Pattern VERSION_CODE = Pattern.compile("^versionCode=(\\d+)");
+    private static final Pattern FLAGS = Pattern.compile("^(?:pkgFlags|flags)=\\[(.*)\\]");
+    private static final Pattern USER = Pattern.compile("^User (\\d+):");
+    private static final Pattern INSTALLED = Pattern.compile("\\binstalled=(true|false)");
+    private static final Pattern ENABLED = Pattern.compile("\\benabled=(\\d+)");
+    private static final Pattern GRANTED = Pattern.compile("granted=(true|false)");
+    private static final Pattern PERMISSION_NAME = Pattern.compile("^([\\w.$-]+)");
+
+    /**
+     * {@code PackageManager.COMPONENT_ENABLED_STATE_DEFAULT} and {@code COMPONENT_ENABLED_STATE_ENABLED},
+     * the states in which the application is reported as enabled.
+     */
+    private static final int ENABLED_STATE_DEFAULT = 0;
+    private static final int ENABLED_STATE_ENABLED = 1;
+
+    private static final Map<String, Integer> BASE_PROTECTION_LEVELS = new HashMap<>();
+    private static final Map<String, Integer> PROTECTION_FLAGS = new HashMap<>();
+    /**
+     * Stands for flags this parser does not know, which only matter in that they are present.
+     */
+    private static final int PROTECTION_FLAG_UNKNOWN = 0x40000000;
+
+    static {
+        BASE_PROTECTION_LEVELS.put("normal", 0);
+        BASE_PROTECTION_LEVELS.put("dangerous", 1);
+        BASE_PROTECTION_LEVELS.put("signature", 2);
+        BASE_PROTECTION_LEVELS.put("signatureOrSystem", 3);
+        BASE_PROTECTION_LEVELS.put("internal", 4);
+        PROTECTION_FLAGS.put("privileged", 0x10);
+        PROTECTION_FLAGS.put("system", 0x10);
+        PROTECTION_FLAGS.put("development", 0x20);
+        PROTECTION_FLAGS.put("appop", 0x40);
+        PROTECTION_FLAGS.put("pre23", 0x80);
+        PROTECTION_FLAGS.put("installer", 0x100);
+        PROTECTION_FLAGS.put("verifier", 0x200);
+        PROTECTION_FLAGS.put("preinstalled", 0x400);
+        PROTECTION_FLAGS.put("setup", 0x800);
+        PROTECTION_FLAGS.put("instant", 0x1000);
+        PROTECTION_FLAGS.put("runtime", 0x2000);
+        PROTECTION_FLAGS.put("oem", 0x4000);
+        PROTECTION_FLAGS.put("vendorPrivileged", 0x8000);
+    }
+
+    private final String user;
+    private final PackagesDump packagesDump = new PackagesDump();
+    private String section;
+    private String definedPermission;
+    private PackagesDump.DumpedPackage currentPackage;
+    private String currentUser;
+    private int userIndentation;
+    private String currentList;
+    private int listIndentation;
+
+    private DumpsysPackageParser(int user) {
+        this.user = String.valueOf(user);
+    }
+
+    /**
+     * @param user the id of the user whose install state and grants are read, 0 for the owner
+     */
+    public static PackagesDump parse(BufferedReader reader, int user) throws IOException {
+        DumpsysPackageParser parser = new DumpsysPackageParser(user);
+        String line;
+        while ((line = reader.readLine()) != null)
+            parser.parseLine(line);
+        parser.finishPackage();
+        return parser.packagesDump;
+    }
+
+    /**
+     * @return the protection level the way {@code PermissionInfo.protectionToString()} printed it, flags included
+     */
+    static int parseProtectionLevel(String protection) {
+        String[] parts = protection.split("\\|");
+        Integer protectionLevel = BASE_PROTECTION_LEVELS.get(parts[0]);
+        if (protectionLevel == null)
+            return PackagesDump.PROTECTION_UNDEFINED;
+        for (int i = 1; i < parts.length; i++) {
+            Integer flag = PROTECTION_FLAGS.get(parts[i]);
+            protectionLevel |= flag == null ? PROTECTION_FLAG_UNKNOWN : flag;
+        }
+        return protectionLevel;
+    }
+
+    private void parseLine(String line) {
+        String text = line.trim();
+        if (text.isEmpty())
+            return;
+        int indentation = line.indexOf(text.charAt(0));
+        if (indentation == 0) {
+            finishPackage();
+            section = text;
+            definedPermission = null;
+            return;
+        }
+        if (SECTION_PERMISSIONS.equals(section))
+            parsePermissionLine(text);
+        else if (SECTION_PACKAGES.equals(section))
+            parsePackageLine(text, indentation);
+    }
+
+    private void parsePermissionLine(String text) {
+        if (text.startsWith("Permission [")) {
+            definedPermission = getBracketedName(text);
+            return;
+        }
+        Matcher protection = PROTECTION.matcher(text);
+        if (definedPermission != null && protection.find()) {
+            packagesDump.putProtectionLevel(definedPermission, parseProtectionLevel(protection.group(1)));
+            definedPermission = null;
+        }
+    }
+
+    private void parsePackageLine(String text, int indentation) {
+        if (text.startsWith("Package [")) {
+            finishPackage();
+            currentPackage = new PackagesDump.DumpedPackage(getBracketedName(text));
+            return;
+        }
+        if (currentPackage == null)
+            return;
+        if (currentList != null && indentation > listIndentation) {
+            parseListItem(text);
+            return;
+        }
+        currentList = null;
+        if (currentUser != null && indentation <= userIndentation && !text.startsWith("User "))
+            currentUser = null;
+        Matcher userMatcher = USER.matcher(text);
+        if (userMatcher.find()) {
+            currentUser = userMatcher.group(1);
+            userIndentation = indentation;
+            if (user.equals(currentUser))
+                parseUserState(text);
+            return;
+        }
+        if (text.equals(LIST_REQUESTED) || text.equals(LIST_INSTALL) || text.equals(LIST_RUNTIME) || text.equals(LIST_DECLARED) || text.equals(LIST_LEGACY_GRANTED)) {
+            currentList = text;
+            listIndentation = indentation;
+            return;
+        }
+        if (currentUser != null)
+            return;
+        Matcher versionCode = VERSION_CODE.matcher(text);
+        if (versionCode.find()) {
+            currentPackage.setVersionCode(Long.parseLong(versionCode.group(1)));
+            return;
+        }
+        Matcher flags = FLAGS.matcher(text);
+        if (flags.find())
+            currentPackage.setSystemApp((" " + flags.group(1) + " ").contains(" SYSTEM "));
+    }
+
+    private void parseUserState(String text) {
+        Matcher installed = INSTALLED.matcher(text);
+        if (installed.find())
+            currentPackage.setInstalled(Boolean.parseBoolean(installed.group(1)));
+        Matcher enabled = ENABLED.matcher(text);
+        if (enabled.find()) {
+            int enabledState = Integer.parseInt(enabled.group(1));
+            currentPackage.setEnabled(enabledState == ENABLED_STATE_DEFAULT || enabledState == ENABLED_STATE_ENABLED);
+        }
+    }
+
+    private void parseListItem(String text) {
+        Matcher name = PERMISSION_NAME.matcher(text);
+        if (!name.find())
+            return;
+        String permission = name.group(1).intern();
+        switch (currentList) {
+            case LIST_REQUESTED:
+                currentPackage.addRequestedPermission(permission);
+                break;
+            case LIST_DECLARED:
+                Matcher protection = PROTECTION.matcher(text);
+                if (protection.find())
+                    packagesDump.putProtectionLevelIfUndefined(permission, parseProtectionLevel(protection.group(1)));
+                break;
+            case LIST_LEGACY_GRANTED:
+                currentPackage.addGrantedPermission(permission);
+                break;
+            default:
+                Matcher granted = GRANTED.matcher(text);
+                boolean ofParsedUser = currentUser == null || user.equals(currentUser);
+                if (ofParsedUser && granted.find() && Boolean.parseBoolean(granted.group(1)))
+                    currentPackage.addGrantedPermission(permission);
+        }
+    }
+
+    private void finishPackage() {
+        if (currentPackage != null)
+            packagesDump.addPackage(currentPackage);
+        currentPackage = null;
+        currentUser = null;
+        currentList = null;
+    }
+
+    private static String getBracketedName(String text) {
+        Matcher bracketedName = BRACKETED_NAME.matcher(text);
+        return bracketedName.find() ? bracketedName.group(1) : text;
+    }
+}
@@ -0,0 +1,117 @@
+package open.com.permissionsmanager.analyzer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import open.com.permissionsmanager.ProtectionLevelSource;
+
+/**
+ * What {@link DumpsysPackageParser} read from one dump: the protection level of every permission
+ * defined on the device and the packages installed for the parsed user.
+ */
+public class PackagesDump implements ProtectionLevelSource {
+    public static final int PROTECTION_UNDEFINED = -1;
+
+    private final Map<String, Integer> protectionLevels = new HashMap<>();
+    private final List<DumpedPackage> packages = new ArrayList<>();
+
+    @Override
+    public int getProtectionLevel(String permission) {
+        Integer protectionLevel = protectionLevels.get(permission);
+        return protectionLevel == null ? PROTECTION_UNDEFINED : protectionLevel;
+    }
+
+    public List<DumpedPackage> getPackages() {
+        return packages;
+    }
+
+    void putProtectionLevel(String permission, int protectionLevel) {
+        protectionLevels.put(permission, protectionLevel);
+    }
+
+    void putProtectionLevelIfUndefined(String permission, int protectionLevel) {
+        if (!protectionLevels.containsKey(permission))
+            protectionLevels.put(permission, protectionLevel);
+    }
+
+    void addPackage(DumpedPackage dumpedPackage) {
+        packages.add(dumpedPackage);
+    }
+
+    public static class DumpedPackage {
+        private final String packageName;
+        private long versionCode;
+        private boolean systemApp;
+        private boolean installed = true;
+        private boolean enabled = true;
+        private final Set<String> requestedPermissions = new LinkedHashSet<>();
+        private final Set<String> grantedPermissions = new LinkedHashSet<>();
+
+        DumpedPackage(String packageName) {
+            this.packageName = packageName;
+        }
+
+        public String getPackageName() {
+            return packageName;
+        }
+
+        public long getVersionCode() {
+            return versionCode;
+        }
+
+        void setVersionCode(long versionCode) {
+            this.versionCode = versionCode;
+        }
+
+        public boolean isSystemApp() {
+            return systemApp;
+        }
+
+        void setSystemApp(boolean systemApp) {
+            this.systemApp = systemApp;
+        }
+
+        public boolean isInstalled() {
+            return installed;
+        }
+
+        void setInstalled(boolean installed) {
+            this.installed = installed;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        void addRequestedPermission(String permission) {
+            requestedPermissions.add(permission);
+        }
+
+        void addGrantedPermission(String permission) {
+            grantedPermissions.add(permission);
+        }
+
+        /**
+         * @return the granted permissions in the order the package requests them, like the
+         * PackageManager reports them on the device
+         */
+        public List<String> getGrantedPermissions() {
+            List<String> permissions = new ArrayList<>(grantedPermissions.size());
+            for (String permission : requestedPermissions)
+                if (grantedPermissions.contains(permission))
+                    permissions.add(permission);
+            for (String permission : grantedPermissions)
+                if (!requestedPermissions.contains(permission))
+                    permissions.add(permission);
+            return permissions;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package open.com.permissionsmanager.analyzer;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DumpsysPackageParserTest {
+    private static final String DUMP = "Permissions:\n"
+            + "  Permission [android.permission.CAMERA] (1a2b3c):\n"
+            + "    sourcePackage=android\n"
+            + "    uid=1000 gids=null type=0 prot=dangerous\n"
+            + "  Permission [android.permission.WRITE_SETTINGS] (4d5e6f):\n"
+            + "    sourcePackage=android\n"
+            + "    uid=1000 gids=null type=0 prot=signature|preinstalled|appop|pre23\n"
+            + "  Permission [android.permission.INTERNET] (7a8b9c):\n"
+            + "    prot=normal\n"
+            + "\n"
+            + "Packages:\n"
+            + "  Package [com.example.camera] (0a1b2c):\n"
+            + "    userId=10123\n"
+            + "    versionCode=42 minSdk=21 targetSdk=33\n"
+            + "    flags=[ HAS_CODE ALLOW_CLEAR_USER_DATA ]\n"
+            + "    declared permissions:\n"
+            + "      com.example.camera.permission.SHARE: prot=dangerous, INSTALLED\n"
+            + "      android.permission.CAMERA: prot=normal\n"
+            + "    requested permissions:\n"
+            + "      android.permission.INTERNET\n"
+            + "      android.permission.RECORD_AUDIO\n"
+            + "      android.permission.CAMERA\n"
+            + "    install permissions:\n"
+            + "      android.permission.INTERNET: granted=true\n"
+            + "    User 0: ceDataInode=1234 installed=true hidden=false suspended=false stopped=false notLaunched=false enabled=0\n"
+            + "      runtime permissions:\n"
+            + "        android.permission.CAMERA: granted=true, flags=[ USER_SET ]\n"
+            + "        android.permission.RECORD_AUDIO: granted=false, flags=[ USER_SET ]\n"
+            + "    User 10: ceDataInode=5678 installed=false hidden=false suspended=false stopped=true notLaunched=true enabled=3\n"
+            + "      runtime permissions:\n"
+            + "        android.permission.RECORD_AUDIO: granted=true\n"
+            + "  Package [com.android.settings] (3d4e5f):\n"
+            + "    versionCode=33 minSdk=33 targetSdk=33\n"
+            + "    pkgFlags=[ SYSTEM HAS_CODE PERSISTENT ]\n"
+            + "    User 0: installed=true enabled=2\n"
+            + "\n"
+            + "Hidden system packages:\n"
+            + "  Package [com.android.settings] (6a7b8c):\n"
+            + "    versionCode=30\n";
+
+    private static PackagesDump parse(String dump, int user) throws IOException {
+        return DumpsysPackageParser.parse(new BufferedReader(new StringReader(dump)), user);
+    }
+
+    @Test
+    public void readsProtectionLevelsWithTheirFlags() throws IOException {
+        PackagesDump packagesDump = parse(DUMP, 0);
+
+        assertEquals(1, packagesDump.getProtectionLevel("android.permission.CAMERA")); //not overridden by a declaration of a package
+        assertEquals(2 | 0x400 | 0x40 | 0x80, packagesDump.getProtectionLevel("android.permission.WRITE_SETTINGS"));
+        assertEquals(0, packagesDump.getProtectionLevel("android.permission.INTERNET"));
+        assertEquals(1, packagesDump.getProtectionLevel("com.example.camera.permission.SHARE"));
+        assertEquals(PackagesDump.PROTECTION_UNDEFINED, packagesDump.getProtectionLevel("android.permission.READ_SMS"));
+    }
+
+    @Test
+    public void parsesProtectionLevelsWithUnknownNamesAndFlags() {
+        assertEquals(PackagesDump.PROTECTION_UNDEFINED, DumpsysPackageParser.parseProtectionLevel("knownSigner"));
+        assertEquals(1 | 0x40000000, DumpsysPackageParser.parseProtectionLevel("dangerous|retailDemo"));
+    }
+
+    @Test
+    public void readsThePackagesButNotTheHiddenSystemPackages() throws IOException {
+        List<PackagesDump.DumpedPackage> packages = parse(DUMP, 0).getPackages();
+
+        assertEquals(2, packages.size());
+        PackagesDump.DumpedPackage camera = packages.get(0);
+        assertEquals("com.example.camera", camera.getPackageName());
+        assertEquals(42, camera.getVersionCode());
+        assertFalse(camera.isSystemApp());
+        PackagesDump.DumpedPackage settings = packages.get(1);
+        assertEquals(33, settings.getVersionCode());
+        assertTrue(settings.isSystemApp());
+        assertFalse(settings.isEnabled());
+    }
+
+    @Test
+    public void readsTheStateAndGrantsOfTheGivenUserInRequestOrder() throws IOException {
+        PackagesDump.DumpedPackage owner = parse(DUMP, 0).getPackages().get(0);
+        PackagesDump.DumpedPackage workProfile = parse(DUMP, 10).getPackages().get(0);
+
+        assertTrue(owner.isInstalled());
+        assertTrue(owner.isEnabled());
+        assertEquals(Arrays.asList("android.permission.INTERNET", "android.permission.CAMERA"), owner.getGrantedPermissions());
+        assertFalse(workProfile.isInstalled());
+        assertFalse(workProfile.isEnabled());
+        assertEquals(Arrays.asList("android.permission.INTERNET", "android.permission.RECORD_AUDIO"), workProfile.getGrantedPermissions());
+    }
+
+    @Test
+    public void readsTheGrantsOfLegacyDumps() throws IOException {
+        String legacyDump = "Packages:\n"
+                + "  Package [com.example.legacy] (1a2b3c):\n"
+                + "    versionCode=7 targetSdk=19\n"
+                + "    grantedPermissions:\n"
+                + "      android.permission.READ_CONTACTS\n"
+                + "      android.permission.INTERNET\n";
+
+        PackagesDump.DumpedPackage legacy = parse(legacyDump, 0).getPackages().get(0);
+
+        assertEquals(Arrays.asList("android.permission.READ_CONTACTS", "android.permission.INTERNET"), legacy.getGrantedPermissions());
+    }
+
+    @Test
+    public void readsNothingFromAnEmptyDump() throws IOException {
+        assertEquals(Collections.<PackagesDump.DumpedPackage>emptyList(), parse("", 0).getPackages());
+    }
+}
@@ -0,0 +1,125 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ChangedPackages;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static open.com.permissionsmanager.MainUtils.ALARM_INTERVAL;
+import static open.com.permissionsmanager.MainUtils.FIVE_MINUTES;
+
+/**
+ * Stretches the periodic scan interval while consecutive scans find nothing new and resets it as
+ * soon as a scan finds changes or packages were installed or updated. Low battery and battery saver
+ * stretch it further, charging caps it at the base interval. Every decision is recorded so that it
+ * can be inspected in the diagnostics.
+ */
+public class AdaptiveScanScheduler {
+    public static final String SHARED_PREF_KEY_SCAN_INTERVAL_LEVEL = "SCAN_INTERVAL_LEVEL";
+    public static final String SHARED_PREF_KEY_PACKAGES_SEQUENCE_NUMBER = "PACKAGES_SEQUENCE_NUMBER";
+    public static final String SHARED_PREF_KEY_PACKAGES_SEQUENCE_BOOT_TIME = "PACKAGES_SEQUENCE_BOOT_TIME";
+    public static final String SHARED_PREF_KEY_SCAN_SCHEDULE_DECISIONS = "SCAN_SCHEDULE_DECISIONS";
+    private static final int MAX_INTERVAL_LEVEL = 4;
+    private static final int LOW_BATTERY_PERCENTAGE = 20;
+    private static final int MAX_RECORDED_DECISIONS = 20;
+    private static final String DECISIONS_SEPARATOR = "\n";
+    private static final long BOOT_TIME_TOLERANCE = 10 * 1000;
+
+    /**
+     * Adapts the interval to the outcome of a scan which just completed.
+     */
+    public static synchronized void onScanCompleted(Context context, int numberOfChanges) {
+        SharedPreferences sharedPreferences = MainUtils.getSharedPreferences(context);
+        int level = sharedPreferences.getInt(SHARED_PREF_KEY_SCAN_INTERVAL_LEVEL, 0);
+        boolean packagesChanged = havePackagesChangedSinceLastScan(context);
+        String reason;
+        if (numberOfChanges > 0 || packagesChanged) {
+            level = 0;
+            reason = packagesChanged ? "packages installed or updated" : numberOfChanges + " changes found";
+        } else {
+            level = Math.min(level + 1, MAX_INTERVAL_LEVEL);
+            reason = "no changes found";
+        }
+        SharedPreferences.Editor editor = sharedPreferences.edit().putInt(SHARED_PREF_KEY_SCAN_INTERVAL_LEVEL, level);
+        rememberPackagesSequenceNumber(context, editor);
+        editor.apply();
+        recordDecision(context, getIntervalForLevel(context, level), reason);
+    }
+
+    public static long getAlarmInterval(Context context) {
+        return getIntervalForLevel(context, MainUtils.getSharedPreferences(context).getInt(SHARED_PREF_KEY_SCAN_INTERVAL_LEVEL, 0));
+    }
+
+    /**
+     * Results are rescanned on resume when packages changed since the last scan, or when they are
+     * older than a staleness window which grows along with the alarm interval.
+     */
+    public static boolean isRescanOnResumeNeeded(Context context) {
+        if (havePackagesChangedSinceLastScan(context))
+            return true;
+        int level = MainUtils.getSharedPreferences(context).getInt(SHARED_PREF_KEY_SCAN_INTERVAL_LEVEL, 0);
+        return MainUtils.areScanResultsOlderThan(context, FIVE_MINUTES << level);
+    }
+
+    public static List<String> getRecentDecisions(Context context) {
+        String decisions = MainUtils.getSharedPreferences(context).getString(SHARED_PREF_KEY_SCAN_SCHEDULE_DECISIONS, "");
+        if (decisions.isEmpty())
+            return new ArrayList<>(0);
+        return new ArrayList<>(Arrays.asList(decisions.split(DECISIONS_SEPARATOR)));
+    }
+
+    private static long getIntervalForLevel(Context context, int level) {
+        long interval = ALARM_INTERVAL << level;
+        BatteryManager batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (batteryManager != null && batteryManager.isCharging())
+            return ALARM_INTERVAL;
+        if ((powerManager != null && powerManager.isPowerSaveMode())
+                || (batteryManager != null && batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY) < LOW_BATTERY_PERCENTAGE))
+            return Math.min(interval * 2, ALARM_INTERVAL << MAX_INTERVAL_LEVEL);
+        return interval;
+    }
+
+    private static boolean havePackagesChangedSinceLastScan(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
+            return false;
+        SharedPreferences sharedPreferences = MainUtils.getSharedPreferences(context);
+        long bootTime = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        if (Math.abs(sharedPreferences.getLong(SHARED_PREF_KEY_PACKAGES_SEQUENCE_BOOT_TIME, 0) - bootTime) > BOOT_TIME_TOLERANCE)
+            return true;//sequence numbers restart on every boot
+        return context.getPackageManager().getChangedPackages(sharedPreferences.getInt(SHARED_PREF_KEY_PACKAGES_SEQUENCE_NUMBER, 0)) != null;
+    }
+
+    private static void rememberPackagesSequenceNumber(Context context, SharedPreferences.Editor editor) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
+            return;
+        SharedPreferences sharedPreferences = MainUtils.getSharedPreferences(context);
+        long bootTime = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        boolean sameBoot = Math.abs(sharedPreferences.getLong(SHARED_PREF_KEY_PACKAGES_SEQUENCE_BOOT_TIME, 0) - bootTime) <= BOOT_TIME_TOLERANCE;
+        int sequenceNumber = sameBoot ? sharedPreferences.getInt(SHARED_PREF_KEY_PACKAGES_SEQUENCE_NUMBER, 0) : 0;
+        ChangedPackages changedPackages = context.getPackageManager().getChangedPackages(sequenceNumber);
+        editor.putLong(SHARED_PREF_KEY_PACKAGES_SEQUENCE_BOOT_TIME, bootTime)
+                .putInt(SHARED_PREF_KEY_PACKAGES_SEQUENCE_NUMBER, changedPackages == null ? sequenceNumber : changedPackages.getSequenceNumber());
+    }
+
+    private static void recordDecision(Context context, long interval, String reason) {
+        String decision = MainUtils.formatTimestamp(System.currentTimeMillis()) + ": next scan in " + interval / MainUtils.ONE_MINUTE + " min, " + reason;
+        System.out.println("scan schedule decision: " + decision);
+        List<String> decisions = getRecentDecisions(context);
+        decisions.add(0, decision);
+        while (decisions.size() > MAX_RECORDED_DECISIONS)
+            decisions.remove(decisions.size() - 1);
+        MainUtils.getSharedPreferences(context)
+                .edit()
+                .putString(SHARED_PREF_KEY_SCAN_SCHEDULE_DECISIONS, TextUtils.join(DECISIONS_SEPARATOR, decisions))
+                .apply();
+    }
+}
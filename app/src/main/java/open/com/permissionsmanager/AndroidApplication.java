@@ -1,11 +1,18 @@
 package open.com.permissionsmanager;
 
-import android.graphics.drawable.Drawable;
-
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 public class AndroidApplication {
+    /**
+     * The profile the app itself runs in; other profiles are identified by their user serial number.
+     */
+    public static final long CURRENT_PROFILE = -1;
+    private static final char PROFILE_SEPARATOR = '/';
+
     public int dangerousThreshold;
 
     // ... existing code ...
@@ -20,8 +27,14 @@ public class AndroidApplication {
     private String name;
     private List<String> nonwarnablePermissions;
     private List<String> warnablePermissions;
-    private Drawable icon;
     private boolean ignoredTemporarily = false;
+    private long versionCode;
+    private int uid;
+    private long profile = CURRENT_PROFILE;
+    private boolean systemApp;
+    private volatile Map<String, Long> permissionLastAccessTimes = Collections.emptyMap();
+    private volatile ApplicationDetailsModel detailsModel;
+    private volatile Set<String> warnablePermissionGroups;
 
     public AndroidApplication(String packageName){
         this.packageName = packageName;
@@ -66,12 +79,121 @@ public class AndroidApplication {
         this.warnablePermissions = warnablePermissions;
     }
 
-    public Drawable getIcon() {
-        return icon;
+    public long getVersionCode() {
+        return versionCode;
+    }
+
+    private void setVersionCode(long versionCode) {
+        this.versionCode = versionCode;
+    }
+
+    public int getUid() {
+        return uid;
+    }
+
+    private void setUid(int uid) {
+        this.uid = uid;
+    }
+
+    public long getProfile() {
+        return profile;
+    }
+
+    private void setProfile(long profile) {
+        this.profile = profile;
+    }
+
+    public boolean isSystemApp() {
+        return systemApp;
+    }
+
+    private void setSystemApp(boolean systemApp) {
+        this.systemApp = systemApp;
+    }
+
+    public boolean isInCurrentProfile() {
+        return profile == CURRENT_PROFILE;
+    }
+
+    /**
+     * @return what identifies this application across profiles and keys its ignore rules: the package
+     * name in the current profile, the package name qualified by the profile in other ones
+     */
+    public String getKey() {
+        return getKey(profile, packageName);
+    }
+
+    public static String getKey(long profile, String packageName) {
+        return profile == CURRENT_PROFILE ? packageName : profile + "" + PROFILE_SEPARATOR + packageName;
+    }
+
+    /**
+     * @return whether the {@link #getKey() key} is the one of an application in the current profile
+     */
+    public static boolean isKeyOfCurrentProfile(String key) {
+        return key.indexOf(PROFILE_SEPARATOR) == -1;
+    }
+
+    /**
+     * @return an application to look up the one with the given {@link #getKey() key} with
+     */
+    public static AndroidApplication forKey(String key) {
+        int indexOfSeparator = key.indexOf(PROFILE_SEPARATOR);
+        if (indexOfSeparator == -1)
+            return new AndroidApplication(key);
+        return new Builder(key.substring(indexOfSeparator + 1))
+                .withProfile(Long.parseLong(key.substring(0, indexOfSeparator)))
+                .build();
+    }
+
+    public Map<String, Long> getPermissionLastAccessTimes() {
+        return permissionLastAccessTimes;
+    }
+
+    public void setPermissionLastAccessTimes(Map<String, Long> permissionLastAccessTimes) {
+        this.permissionLastAccessTimes = permissionLastAccessTimes;
+    }
+
+    /**
+     * @return the last time any of the warnable permissions was used, 0 if unknown
+     */
+    public long getLastWarnablePermissionAccessTime() {
+        long lastAccessTime = 0;
+        for (Map.Entry<String, Long> permissionLastAccessTime : permissionLastAccessTimes.entrySet())
+            if (warnablePermissions.contains(permissionLastAccessTime.getKey()))
+                lastAccessTime = Math.max(lastAccessTime, permissionLastAccessTime.getValue());
+        return lastAccessTime;
+    }
+
+    /**
+     * @return the details model of this application, computed on first use; call it off the main thread
+     */
+    public ApplicationDetailsModel getDetailsModel() {
+        ApplicationDetailsModel model = detailsModel;
+        if (model == null)
+            detailsModel = model = new ApplicationDetailsModel(this);
+        return model;
+    }
+
+    /**
+     * @return the permission groups this application holds warnable permissions in
+     */
+    public Set<String> getWarnablePermissionGroups() {
+        Set<String> groups = warnablePermissionGroups;
+        if (groups == null)
+            warnablePermissionGroups = groups = PermissionGroupStatistics.getGroups(warnablePermissions);
+        return groups;
+    }
+
+    /**
+     * Drops the details model, which is rebuilt the next time it is needed; called under memory pressure.
+     */
+    public void releaseDetails() {
+        detailsModel = null;
     }
 
-    private void setIcon(Drawable icon) {
-        this.icon = icon;
+    public int getNumberOfWarnablePermissions() {
+        return warnablePermissions.size();
     }
 
 
@@ -82,7 +204,7 @@ public class AndroidApplication {
 
         AndroidApplication that = (AndroidApplication) o;
 
-        return packageName.equals(that.packageName);
+        return packageName.equals(that.packageName) && profile == that.profile;
     }
 
     public static class Builder{
@@ -107,8 +229,28 @@ public class AndroidApplication {
             return this;
         }
 
-        public Builder withIcon(Drawable drawable){
-            androidApplication.setIcon(drawable);
+        public Builder withVersionCode(long versionCode){
+            androidApplication.setVersionCode(versionCode);
+            return this;
+        }
+
+        public Builder withUid(int uid){
+            androidApplication.setUid(uid);
+            return this;
+        }
+
+        public Builder withProfile(long profile){
+            androidApplication.setProfile(profile);
+            return this;
+        }
+
+        public Builder withSystemApp(boolean systemApp){
+            androidApplication.setSystemApp(systemApp);
+            return this;
+        }
+
+        public Builder withPermissionLastAccessTimes(Map<String, Long> permissionLastAccessTimes){
+            androidApplication.setPermissionLastAccessTimes(permissionLastAccessTimes);
             return this;
         }
 
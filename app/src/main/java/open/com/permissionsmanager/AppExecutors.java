@@ -0,0 +1,83 @@
+package open.com.permissionsmanager;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Threads shared by the whole process. All PackageManager, preference and file I/O triggered from
+ * the UI goes through the single I/O thread, which also keeps database writes in the order they
+ * were requested; work nobody is waiting for, like alarm driven scans, runs on the background
+ * thread at a lower priority. What screens show is built from data already in memory on the view
+ * thread, which never runs I/O, so it never queues behind a scan. Other profiles of the user are scanned on their own threads, alongside
+ * the scan of the current one. Results are handed back with {@link #runOnMainThread(Runnable)}.
+ */
+public class AppExecutors {
+    private static final ExecutorService IO_EXECUTOR = Executors.newSingleThreadExecutor(newThreadFactory("permissions-io", Thread.NORM_PRIORITY - 1));
+    private static final ExecutorService BACKGROUND_EXECUTOR = Executors.newSingleThreadExecutor(newThreadFactory("permissions-background", Thread.MIN_PRIORITY));
+    private static final ExecutorService VIEW_EXECUTOR = Executors.newSingleThreadExecutor(newThreadFactory("permissions-view", Thread.NORM_PRIORITY));
+    private static final ExecutorService PROFILES_EXECUTOR = Executors.newFixedThreadPool(2, newThreadFactory("permissions-profiles", Thread.NORM_PRIORITY - 1));
+    private static final Handler MAIN_THREAD_HANDLER = new Handler(Looper.getMainLooper());
+    private static final Executor MAIN_THREAD_NEXT_FRAME_EXECUTOR = new Executor() {
+        @Override
+        public void execute(final Runnable runnable) {
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                        @Override
+                        public void doFrame(long frameTimeNanos) {
+                            runnable.run();
+                        }
+                    });
+                }
+            });
+        }
+    };
+
+    public static ExecutorService io() {
+        return IO_EXECUTOR;
+    }
+
+    public static ExecutorService background() {
+        return BACKGROUND_EXECUTOR;
+    }
+
+    public static ExecutorService view() {
+        return VIEW_EXECUTOR;
+    }
+
+    public static ExecutorService profiles() {
+        return PROFILES_EXECUTOR;
+    }
+
+    /**
+     * @return an executor running its tasks on the main thread right before the next frame is drawn
+     */
+    public static Executor mainThreadNextFrame() {
+        return MAIN_THREAD_NEXT_FRAME_EXECUTOR;
+    }
+
+    public static void runOnMainThread(Runnable runnable) {
+        if (Looper.myLooper() == Looper.getMainLooper())
+            runnable.run();
+        else
+            MAIN_THREAD_HANDLER.post(runnable);
+    }
+
+    private static ThreadFactory newThreadFactory(final String name, final int priority) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setPriority(priority);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,50 @@
+package open.com.permissionsmanager;
+
+import android.content.SharedPreferences;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keys of the permissions ignored for single applications in the shared preferences: the
+ * {@link AndroidApplication#getKey() application key} behind a prefix, which sets these lists apart
+ * from every other string set stored there. Earlier versions stored them under the bare application
+ * key; {@link #migrate(SharedPreferences, Set)} moves those behind the prefix once.
+ */
+public class AppIgnoreLists {
+    public static final String KEY_PREFIX = "APP_IGNORE_LIST:";
+    public static final String SHARED_PREF_KEY_MIGRATED = "APP_IGNORE_LISTS_MIGRATED";
+
+    public static String getPreferenceKey(String applicationKey) {
+        return KEY_PREFIX + applicationKey;
+    }
+
+    public static boolean isPreferenceKey(String key) {
+        return key.startsWith(KEY_PREFIX);
+    }
+
+    public static String getApplicationKey(String preferenceKey) {
+        return preferenceKey.substring(KEY_PREFIX.length());
+    }
+
+    /**
+     * Moves the lists stored under bare application keys behind the prefix. Before the prefix, the
+     * only other string sets were the given ones, so every other string set is an application's list.
+     *
+     * @param otherStringSetKeys the keys of the string sets which are not lists of an application
+     */
+    public static synchronized void migrate(SharedPreferences sharedPreferences, Set<String> otherStringSetKeys) {
+        if (sharedPreferences.getBoolean(SHARED_PREF_KEY_MIGRATED, false))
+            return;
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        for (Map.Entry<String, ?> preference : sharedPreferences.getAll().entrySet()) {
+            String key = preference.getKey();
+            if (!(preference.getValue() instanceof Set) || isPreferenceKey(key) || otherStringSetKeys.contains(key))
+                continue;
+            @SuppressWarnings("unchecked")
+            Set<String> ignoredPermissions = (Set<String>) preference.getValue();
+            editor.putStringSet(getPreferenceKey(key), ignoredPermissions).remove(key);
+        }
+        editor.putBoolean(SHARED_PREF_KEY_MIGRATED, true).commit();
+    }
+}
@@ -0,0 +1,87 @@
+package open.com.permissionsmanager;
+
+import android.app.AppOpsManager;
+import android.content.Context;
+import android.os.Build;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads last access times from AppOpsManager with one call per package for all of its ops. The
+ * call is not part of the public SDK and needs GET_APP_OPS_STATS, which can be granted over adb
+ * ("pm grant open.com.permissionsmanager android.permission.GET_APP_OPS_STATS"); without it, or
+ * below Android 10, the source reports itself unavailable instead of failing for every package.
+ * A package whose ops cannot be read, say one uninstalled since the scan, only has no usage.
+ */
+public class AppOpsPermissionUsageSource implements PermissionUsageSource {
+    private static final int OP_FLAGS_ALL = 0x1F;
+    private static final String GET_APP_OPS_STATS = "android.permission.GET_APP_OPS_STATS";
+
+    private final AppOpsManager appOpsManager;
+    private volatile boolean available = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+    private Method getOpsForPackage;
+
+    public AppOpsPermissionUsageSource(Context context) {
+        appOpsManager = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return available;
+    }
+
+    @Override
+    public Map<String, Long> getLastAccessTimes(int uid, String packageName, List<String> permissions) {
+        Map<String, Long> lastAccessTimes = new HashMap<>();
+        if (!available)
+            return lastAccessTimes;
+        Map<String, String> permissionOfOp = new HashMap<>(permissions.size());
+        for (String permission : permissions) {
+            String op = AppOpsManager.permissionToOp(permission);
+            if (op != null)
+                permissionOfOp.put(op, permission);
+        }
+        if (permissionOfOp.isEmpty())
+            return lastAccessTimes;
+        try {
+            if (getOpsForPackage == null)
+                getOpsForPackage = AppOpsManager.class.getMethod("getOpsForPackage", int.class, String.class, String[].class);
+            List<?> packageOpsList = (List<?>) getOpsForPackage.invoke(appOpsManager, uid, packageName, new ArrayList<>(permissionOfOp.keySet()).toArray(new String[0]));
+            if (packageOpsList == null)
+                return lastAccessTimes;
+            for (Object packageOps : packageOpsList) {
+                for (Object opEntry : (List<?>) packageOps.getClass().getMethod("getOps").invoke(packageOps)) {
+                    String permission = permissionOfOp.get((String) opEntry.getClass().getMethod("getOpStr").invoke(opEntry));
+                    long lastAccessTime = (Long) opEntry.getClass().getMethod("getLastAccessTime", int.class).invoke(opEntry, OP_FLAGS_ALL);
+                    if (permission != null && lastAccessTime > 0)
+                        lastAccessTimes.put(permission, lastAccessTime);
+                }
+            }
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            System.out.println("Permission usage is unavailable on this device " + e);
+            available = false;
+        } catch (InvocationTargetException e) {
+            if (isPermissionDenied(e.getCause())) {
+                System.out.println("Permission usage is unavailable without GET_APP_OPS_STATS " + e.getCause());
+                available = false;
+            } else
+                System.out.println("Unable to read permission usage of " + packageName + " " + e.getCause());
+        } catch (RuntimeException e) {
+            System.out.println("Unable to read permission usage of " + packageName + " " + e);
+        }
+        return lastAccessTimes;
+    }
+
+    /**
+     * AppOpsManager also throws a SecurityException for a uid which does not own the package, so
+     * only the one naming the missing permission disables the source.
+     */
+    private static boolean isPermissionDenied(Throwable cause) {
+        return cause instanceof SecurityException && cause.getMessage() != null && cause.getMessage().contains(GET_APP_OPS_STATS);
+    }
+}
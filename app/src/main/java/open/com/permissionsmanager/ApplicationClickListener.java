@@ -0,0 +1,6 @@
+package open.com.permissionsmanager;
+
+public interface ApplicationClickListener {
+    void applicationClicked(AndroidApplication application);
+    void applicationLongClicked(AndroidApplication application);
+}
@@ -0,0 +1,155 @@
+package open.com.permissionsmanager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Hands the changes of {@link ApplicationsDatabase} to its listeners. Listeners are registered with
+ * the executor they want to be called on and can come and go while scan threads report changes.
+ * Events reported before a listener's previous delivery ran are queued and delivered together: a
+ * full update supersedes everything queued before it, and a later event about the same application
+ * replaces an earlier one of the same kind, so a burst of changes refreshes the UI once.
+ */
+public class ApplicationDatabaseChangeDispatcher implements ApplicationDatabaseChangeListener {
+    private static final int EVENT_PERMISSIONS_UPDATED = 0;
+    private static final int EVENT_DATABASE_UPDATED = 1;
+    private static final int EVENT_ADDED_TO_IGNORE_LIST = 2;
+    private static final int EVENT_REMOVED_FROM_IGNORE_LIST = 3;
+    private static final int EVENT_REFRESHED = 4;
+
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    public void addListener(ApplicationDatabaseChangeListener listener, Executor executor) {
+        registrations.add(new Registration(listener, executor));
+    }
+
+    public void removeListener(ApplicationDatabaseChangeListener listener) {
+        for (Registration registration : registrations) {
+            if (registration.listener == listener) {
+                registration.removed = true;
+                registrations.remove(registration);
+            }
+        }
+    }
+
+    @Override
+    public void applicationPermissionsUpdated(AndroidApplication androidApplication) {
+        dispatch(new Event(EVENT_PERMISSIONS_UPDATED, androidApplication.getKey(), androidApplication, null));
+    }
+
+    /**
+     * Every listener gets its own copy of the given list, which it is free to modify.
+     */
+    @Override
+    public void applicationsDatabaseUpdated(List<AndroidApplication> androidApplications) {
+        dispatch(new Event(EVENT_DATABASE_UPDATED, null, null, androidApplications));
+    }
+
+    @Override
+    public void applicationAddedToIgnoreList(AndroidApplication application) {
+        dispatch(new Event(EVENT_ADDED_TO_IGNORE_LIST, application.getKey(), application, null));
+    }
+
+    @Override
+    public void applicationRemovedFromIgnoredList(AndroidApplication androidApplication) {
+        dispatch(new Event(EVENT_REMOVED_FROM_IGNORE_LIST, androidApplication.getKey(), androidApplication, null));
+    }
+
+    @Override
+    public void applicationRefreshed(String packageName, AndroidApplication androidApplication) {
+        dispatch(new Event(EVENT_REFRESHED, packageName, androidApplication, null));
+    }
+
+    private void dispatch(Event event) {
+        for (Registration registration : registrations)
+            registration.post(event);
+    }
+
+    private static class Registration implements Runnable {
+        private final ApplicationDatabaseChangeListener listener;
+        private final Executor executor;
+        private final List<Event> pendingEvents = new ArrayList<>();
+        private boolean deliveryScheduled = false;
+        private volatile boolean removed = false;
+
+        private Registration(ApplicationDatabaseChangeListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        private synchronized void post(Event event) {
+            if (event.type == EVENT_DATABASE_UPDATED)
+                pendingEvents.clear();
+            else
+                removeSupersededEvent(event);
+            pendingEvents.add(event);
+            if (deliveryScheduled)
+                return;
+            deliveryScheduled = true;
+            executor.execute(this);
+        }
+
+        private void removeSupersededEvent(Event event) {
+            Iterator<Event> iterator = pendingEvents.iterator();
+            while (iterator.hasNext()) {
+                Event pendingEvent = iterator.next();
+                if (pendingEvent.type == event.type && pendingEvent.key.equals(event.key)) {
+                    iterator.remove();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            List<Event> events;
+            synchronized (this) {
+                events = new ArrayList<>(pendingEvents);
+                pendingEvents.clear();
+                deliveryScheduled = false;
+            }
+            for (Event event : events) {
+                if (removed)
+                    return;
+                event.deliverTo(listener);
+            }
+        }
+    }
+
+    private static class Event {
+        private final int type;
+        private final String key;
+        private final AndroidApplication application;
+        private final List<AndroidApplication> applications;
+
+        private Event(int type, String key, AndroidApplication application, List<AndroidApplication> applications) {
+            this.type = type;
+            this.key = key;
+            this.application = application;
+            this.applications = applications;
+        }
+
+        private void deliverTo(ApplicationDatabaseChangeListener listener) {
+            switch (type) {
+                case EVENT_PERMISSIONS_UPDATED:
+                    listener.applicationPermissionsUpdated(application);
+                    break;
+                case EVENT_DATABASE_UPDATED:
+                    listener.applicationsDatabaseUpdated(new ArrayList<>(applications));
+                    break;
+                case EVENT_ADDED_TO_IGNORE_LIST:
+                    listener.applicationAddedToIgnoreList(application);
+                    break;
+                case EVENT_REMOVED_FROM_IGNORE_LIST:
+                    listener.applicationRemovedFromIgnoredList(application);
+                    break;
+                case EVENT_REFRESHED:
+                    listener.applicationRefreshed(key, application);
+                    break;
+            }
+        }
+    }
+}
@@ -7,4 +7,10 @@ public interface ApplicationDatabaseChangeListener {
     void applicationsDatabaseUpdated(List<AndroidApplication> androidApplications);
     void applicationAddedToIgnoreList(AndroidApplication application);
     void applicationRemovedFromIgnoredList(AndroidApplication androidApplication);
+
+    /**
+     * A single package was re-evaluated; the application is null if it no longer has warnable
+     * permissions or is no longer installed, in which case it was removed from the database.
+     */
+    void applicationRefreshed(String packageName, AndroidApplication androidApplication);
 }
@@ -5,23 +5,19 @@ import android.content.Intent;
 import android.net.Uri;
 import android.provider.Settings;
 import android.os.Bundle;
-import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.view.ViewGroup;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.TextView;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import static open.com.permissionsmanager.MainActivity.APPLICATION_PACKAGE_NAME;
 
-import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
@@ -29,83 +25,106 @@ import androidx.appcompat.app.AppCompatActivity;
 
 public class ApplicationDetails extends AppCompatActivity {
     private AndroidApplication application;
-    private LayoutInflater layoutInflater;
     private ApplicationsDatabase applicationsDatabase;
-
-//    private static final int PERMISSION_THRESHOLD = 5; // Adjust the threshold as needed
+    private PermissionRowsArrayAdapter permissionRowsAdapter;
+    private TaskScope taskScope;
+    private boolean refreshOnResume;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        layoutInflater = getLayoutInflater();
         setContentView(R.layout.activity_application_details);
         Intent intent = getIntent();
-        final String packageName = intent.getStringExtra(APPLICATION_PACKAGE_NAME);
-        if(packageName == null)
-            finish();
+        final String applicationKey = intent.getStringExtra(APPLICATION_PACKAGE_NAME);
         applicationsDatabase = ApplicationsDatabase.getApplicationsDatabase(this);
-        application = applicationsDatabase.getApplication(packageName);
-        if(application == null)
+        taskScope = TaskScope.of(this);
+        application = applicationsDatabase.getApplication(applicationKey);
+        if(application == null){
             finish();
-        addApplicationDetails();
+            return;
+        }
+        setTitle(application.getName());
         final ListView permissionsList_listView = (ListView) findViewById(R.id.permissions);
-        final List<String> warnablePermissions = application.getWarnablePermissions();
-        final List<String> nonWarnablePermissions = application.getNonwarnablePermissions();
-        final int numberOfWarnablePermissions = warnablePermissions.size();
+        permissionRowsAdapter = new PermissionRowsArrayAdapter(this, R.layout.permission_row);
+        permissionsList_listView.setAdapter(permissionRowsAdapter);
         permissionsList_listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> parent, final View view, final int position, long id) {
+                showIgnoreOptions(permissionRowsAdapter.getItem(position));
+            }
+        });
+        loadApplicationDetails();
+    }
 
-                if(position >= numberOfWarnablePermissions)
-                    new AlertDialog.Builder(ApplicationDetails.this)
-                        .setTitle(R.string.unignore_for)
-                        .setItems(new String[]{"All apps", "This app", "Cancel"}, new DialogInterface.OnClickListener() {
-                            public void onClick(DialogInterface dialog, int which) {
-                                switch(which){
-                                    case 0:
-                                        applicationsDatabase.unignorePermissionForAllApps(nonWarnablePermissions.get(position - numberOfWarnablePermissions));
-                                        recreate();
-                                        break;
-                                    case 1:
-                                        applicationsDatabase.unignorePermissionForSpecificApp(application.getPackageName(), nonWarnablePermissions.get(position - numberOfWarnablePermissions));
-                                        recreate();
-                                        break;
-                                }
-                            }
-                        }).show();
-                else
-                    new AlertDialog.Builder(ApplicationDetails.this)//TODO: refactor this block as this looks quite similar to above
-                            .setTitle(R.string.ignore_for)
-                            .setItems(new String[]{"All apps", "This app", "Cancel"}, new DialogInterface.OnClickListener() {
-                                public void onClick(DialogInterface dialog, int which) {
-                                    switch(which){
-                                        case 0:
-                                            applicationsDatabase.ignorePermissionForAllApps(warnablePermissions.get(position));
-                                            recreate();
-                                            break;
-                                        case 1:
-                                            applicationsDatabase.ignorePermissionForSpecificApp(application.getPackageName(), warnablePermissions.get(position));
-                                            recreate();
-                                            break;
-                                    }
-                                }
-                            }).show();
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if(!refreshOnResume)
+            return;
+        refreshOnResume = false;
+        applicationsDatabase.refreshPackageAsync(taskScope, application.getPackageName(), new DatabaseCallback<AndroidApplication>() {
+            @Override
+            public void onComplete(AndroidApplication refreshedApplication) {
+                if(refreshedApplication == null){
+                    finish(); //uninstalled from the settings
+                    return;
+                }
+                application = refreshedApplication;
+                loadApplicationDetails();
+            }
+        });
+    }
 
+    private void loadApplicationDetails() {
+        final AndroidApplication applicationToLoad = application;
+        TaskScheduler.submit(TaskScheduler.LANE_INTERACTIVE, null, taskScope, new Callable<ApplicationDetailsModel>() {
+            @Override
+            public ApplicationDetailsModel call() {
+                return applicationToLoad.getDetailsModel();
+            }
+        }, new DatabaseCallback<ApplicationDetailsModel>() {
+            @Override
+            public void onComplete(ApplicationDetailsModel applicationDetailsModel) {
+                if(!isFinishing())
+                    addApplicationDetails(applicationDetailsModel);
             }
         });
+    }
 
+    private void showIgnoreOptions(final ApplicationDetailsModel.PermissionRow permissionRow) {
+        final boolean ignore = permissionRow.isWarnable();
+        new AlertDialog.Builder(ApplicationDetails.this)
+                .setTitle(ignore ? R.string.ignore_for : R.string.unignore_for)
+                .setItems(new String[]{"All apps", "This app", "Cancel"}, new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int which) {
+                        if(which != 0 && which != 1)
+                            return;
+                        applicationsDatabase.setPermissionIgnoredAsync(taskScope, application.getKey(), permissionRow.getPermission(), ignore, which == 0, new DatabaseCallback<AndroidApplication>() {
+                            @Override
+                            public void onComplete(AndroidApplication updatedApplication) {
+                                if(!isFinishing())
+                                    updatePermissionRow(permissionRow, updatedApplication);
+                            }
+                        });
+                    }
+                }).show();
+    }
 
-        TextView permissionCountTextView = findViewById(R.id.permissionCount);
-        updatePermissionCount(permissionCountTextView);
+    private void updatePermissionRow(ApplicationDetailsModel.PermissionRow permissionRow, AndroidApplication updatedApplication) {
+        if(updatedApplication == null){
+            //the application has no warnable permissions left
+            permissionRow.setWarnable(false);
+        }
+        else{
+            application = updatedApplication;
+            permissionRow.setWarnable(application.getWarnablePermissions().contains(permissionRow.getPermission()));
+        }
+        permissionRowsAdapter.notifyDataSetChanged();
     }
-git
-    // Add this method to update the permission count dynamically
-    private void updatePermissionCount(TextView permissionCountTextView) {
-        int totalPermissions = application.getWarnablePermissions().size() + application.getNonwarnablePermissions().size();
-//        int totalPermissions = application.getWarnablePermissions().size() + application.getNonwarnablePermissions().size();
-        String permissionCountText = getString(R.string.permission_count, totalPermissions);
-        permissionCountTextView.setText(permissionCountText);
 
+    private void updatePermissionCount(ApplicationDetailsModel applicationDetailsModel) {
+        TextView permissionCountTextView = findViewById(R.id.permissionCount);
+        permissionCountTextView.setText(getString(R.string.permission_count, applicationDetailsModel.getNumberOfPermissions()));
     }
 
     @Override
@@ -117,59 +136,77 @@ git
                 return true;
             }
         }).setShowAsAction(MenuItem.SHOW_AS_ACTION_ALWAYS);
+        menu.add(R.string.permission_history).setOnMenuItemClickListener(new MenuItem.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem item) {
+                showPermissionHistory();
+                return true;
+            }
+        }).setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
         return true;
     }
 
+    private void showPermissionHistory() {
+        final String packageName = application.getKey(); //only the current profile is journaled
+        TaskScheduler.submit(TaskScheduler.LANE_INTERACTIVE, null, taskScope, new Callable<List<PermissionChange>>() {
+            @Override
+            public List<PermissionChange> call() {
+                return PermissionChangeJournal.getPermissionChangeJournal(ApplicationDetails.this).getChanges(packageName, 0);
+            }
+        }, new DatabaseCallback<List<PermissionChange>>() {
+            @Override
+            public void onComplete(List<PermissionChange> changes) {
+                if(isFinishing())
+                    return;
+                AlertDialog.Builder builder = new AlertDialog.Builder(ApplicationDetails.this)
+                        .setTitle(R.string.permission_history)
+                        .setPositiveButton(android.R.string.ok, null);
+                if(changes.isEmpty())
+                    builder.setMessage(R.string.no_permission_history);
+                else
+                    builder.setItems(describePermissionChanges(changes), null);
+                builder.show();
+            }
+        });
+    }
+
+    private String[] describePermissionChanges(List<PermissionChange> changes) {
+        String[] descriptions = new String[changes.size()];
+        for(int i = 0; i < changes.size(); i++){
+            PermissionChange change = changes.get(changes.size() - 1 - i);
+            descriptions[i] = MainUtils.formatTimestamp(change.getTimestamp()) + "  " + describePermissionChange(change);
+        }
+        return descriptions;
+    }
+
+    private String describePermissionChange(PermissionChange change) {
+        switch(change.getType()){
+            case PermissionChange.TYPE_PERMISSION_GRANTED:
+                return getString(R.string.history_permission_granted, MainUtils.getNameSpaceTruncatedPermission(change.getPermission()));
+            case PermissionChange.TYPE_PERMISSION_REVOKED:
+                return getString(R.string.history_permission_revoked, MainUtils.getNameSpaceTruncatedPermission(change.getPermission()));
+            case PermissionChange.TYPE_APP_INSTALLED:
+                return getString(R.string.history_app_installed, change.getVersionCode());
+            case PermissionChange.TYPE_APP_UPDATED:
+                return getString(R.string.history_app_updated, change.getVersionCode());
+            default:
+                return getString(R.string.history_app_removed);
+        }
+    }
+
     private void launchApplicationSpecificSettingsActivity(){
         Intent intent = new Intent(Settings.ACTION_APPLICATION_DETAILS_SETTINGS);
         intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         Uri uri = Uri.fromParts("package", application.getPackageName(), null);
         intent.setData(uri);
+        refreshOnResume = application.isInCurrentProfile() && !application.isSystemApp();
         startActivity(intent);
     }
 
-    private void addApplicationDetails() {
-        setTitle(application.getName());
-
-        // Set red icon visibility based on the threshold
-
-        final List<String> warnablePermissions = getNameSpaceTruncatedPermissions(application.getWarnablePermissions());
-        setTitle(application.getName());
-        ListView permissionsList_listView = (ListView) findViewById(R.id.permissions);
-        // Check if the total count exceeds the threshold
-        boolean exceedsThreshold = (warnablePermissions.size() + getNameSpaceTruncatedPermissions(application.getNonwarnablePermissions()).size()) >= application.getDangerousThreshold();
-        ImageView redIcon = (ImageView) findViewById(R.id.redIcon); // Replace with the actual ID
-        redIcon.setVisibility(exceedsThreshold ? View.VISIBLE : View.INVISIBLE);
-
-        ArrayAdapter<String> arrayAdapter = new ArrayAdapter<String>(this, R.layout.permission_row){
-            @NonNull
-            @Override
-            public View getView(int position, View reusableView, ViewGroup parent) {
-                String permission = getItem(position);
-                if(reusableView == null)
-                    reusableView = layoutInflater.inflate(R.layout.permission_row, parent, false);
-                TextView permission_textView = (TextView) reusableView.findViewById(R.id.title);
-                ImageView warningImage = (ImageView) reusableView.findViewById(R.id.warning_image);
-                if(warnablePermissions.contains(permission))
-                    warningImage.setVisibility(View.VISIBLE);
-                else
-                    warningImage.setVisibility(View.INVISIBLE);
-                permission_textView.setText(permission);
-                return reusableView;
-            }
-        };
-        for(String permission : warnablePermissions)
-            arrayAdapter.add(permission);
-        for(String permission : getNameSpaceTruncatedPermissions(application.getNonwarnablePermissions()))
-            arrayAdapter.add(permission);
-        permissionsList_listView.setAdapter(arrayAdapter);
-    }
-
-    private List<String> getNameSpaceTruncatedPermissions(List<String> permissions) {
-        List<String> truncatedPermissions = new ArrayList<>(permissions.size());
-        for(String permission : permissions){
-            truncatedPermissions.add(permission.replace("android.permission.", ""));
-        }
-        return truncatedPermissions;
+    private void addApplicationDetails(ApplicationDetailsModel applicationDetailsModel) {
+        ImageView redIcon = (ImageView) findViewById(R.id.redIcon);
+        redIcon.setVisibility(applicationDetailsModel.isThresholdExceeded() ? View.VISIBLE : View.INVISIBLE);
+        updatePermissionCount(applicationDetailsModel);
+        permissionRowsAdapter.setPermissionRows(applicationDetailsModel.getPermissionRows());
     }
 }
@@ -0,0 +1,70 @@
+package open.com.permissionsmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything ApplicationDetails shows for an application, computed once off the main thread and
+ * cached on the {@link AndroidApplication} until its permissions change.
+ */
+public class ApplicationDetailsModel {
+    private final List<PermissionRow> permissionRows;
+    private final boolean thresholdExceeded;
+
+    public ApplicationDetailsModel(AndroidApplication application) {
+        List<String> warnablePermissions = application.getWarnablePermissions();
+        List<String> nonwarnablePermissions = application.getNonwarnablePermissions();
+        permissionRows = new ArrayList<>(warnablePermissions.size() + nonwarnablePermissions.size());
+        for (String permission : warnablePermissions)
+            permissionRows.add(new PermissionRow(permission, true));
+        for (String permission : nonwarnablePermissions)
+            permissionRows.add(new PermissionRow(permission, false));
+        thresholdExceeded = permissionRows.size() >= application.getDangerousThreshold();
+    }
+
+    public List<PermissionRow> getPermissionRows() {
+        return permissionRows;
+    }
+
+    public int getNumberOfPermissions() {
+        return permissionRows.size();
+    }
+
+    public boolean isThresholdExceeded() {
+        return thresholdExceeded;
+    }
+
+    public static class PermissionRow {
+        private final String permission;
+        private final String displayName;
+        private final String group;
+        private volatile boolean warnable;
+
+        PermissionRow(String permission, boolean warnable) {
+            this.permission = permission;
+            this.warnable = warnable;
+            displayName = MainUtils.getNameSpaceTruncatedPermission(permission);
+            group = PermissionGroups.getGroup(permission);
+        }
+
+        public String getPermission() {
+            return permission;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public String getGroup() {
+            return group;
+        }
+
+        public boolean isWarnable() {
+            return warnable;
+        }
+
+        public void setWarnable(boolean warnable) {
+            this.warnable = warnable;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package open.com.permissionsmanager;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Icons are the largest part of an application's footprint, so they are no longer kept on
+ * {@link AndroidApplication}: they are loaded when a row first shows them and kept in a cache
+ * bounded to a share of the heap, which is emptied when the system asks to trim memory.
+ */
+public class ApplicationIconCache {
+    private static final int SHARE_OF_HEAP = 16;
+    private static final int DEFAULT_ICON_SIZE = 4 * 48 * 48;
+
+    private static ApplicationIconCache applicationIconCache;
+    private final PackageManager pm;
+    private final LruCache<String, Drawable> icons;
+
+    private ApplicationIconCache(Context context) {
+        pm = context.getPackageManager();
+        icons = new LruCache<String, Drawable>((int) (Runtime.getRuntime().maxMemory() / SHARE_OF_HEAP)) {
+            @Override
+            protected int sizeOf(String packageName, Drawable icon) {
+                return getSize(icon);
+            }
+        };
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration configuration) {
+                icons.evictAll(); //icons depend on the density and theme
+            }
+
+            @Override
+            public void onLowMemory() {
+                icons.evictAll();
+            }
+        });
+    }
+
+    public synchronized static ApplicationIconCache getApplicationIconCache(Context context) {
+        if (applicationIconCache == null)
+            applicationIconCache = new ApplicationIconCache(context.getApplicationContext());
+        return applicationIconCache;
+    }
+
+    /**
+     * @return the icon if it is cached, null otherwise
+     */
+    public Drawable getCachedIcon(String packageName) {
+        return icons.get(packageName);
+    }
+
+    /**
+     * Loads the icon off the main thread; requests for an icon which is already being loaded join that load.
+     */
+    public void loadIcon(final String packageName, DatabaseCallback<Drawable> callback) {
+        TaskScheduler.submit(TaskScheduler.LANE_INTERACTIVE, "icon:" + packageName, null, new Callable<Drawable>() {
+            @Override
+            public Drawable call() {
+                Drawable icon = icons.get(packageName);
+                if (icon != null)
+                    return icon;
+                try {
+                    icon = pm.getApplicationIcon(packageName);
+                } catch (PackageManager.NameNotFoundException e) {
+                    icon = pm.getDefaultActivityIcon();
+                }
+                icons.put(packageName, icon);
+                return icon;
+            }
+        }, callback);
+    }
+
+    private void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL)
+            icons.evictAll();
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+            icons.trimToSize(icons.maxSize() / 2);
+    }
+
+    private static int getSize(Drawable icon) {
+        if (icon instanceof BitmapDrawable && ((BitmapDrawable) icon).getBitmap() != null)
+            return ((BitmapDrawable) icon).getBitmap().getAllocationByteCount();
+        if (icon.getIntrinsicWidth() > 0 && icon.getIntrinsicHeight() > 0)
+            return 4 * icon.getIntrinsicWidth() * icon.getIntrinsicHeight();
+        return DEFAULT_ICON_SIZE;
+    }
+}
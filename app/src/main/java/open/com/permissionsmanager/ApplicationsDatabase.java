@@ -1,19 +1,26 @@
 package open.com.permissionsmanager;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.PermissionInfo;
+import android.content.res.Configuration;
+import android.content.SharedPreferences;
 
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 
 public class ApplicationsDatabase {
@@ -22,28 +29,68 @@ public class ApplicationsDatabase {
     public static final String SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS = "IGNORED_APPS";
     public static final String SHARED_PREF_KEY_DUMMY = "DUMMY";
     public static final String AOSP_APPS_PREFIX = "com.android.";
+    private static final String SCAN_TASK_KEY = "scan";
+    private static final String PROFILES_SCAN_TASK_KEY = "scan:profiles";
     private List<AndroidApplication> applications = new ArrayList<>();
     private Context context;
     private SharedPreferences permissionsManagerSharedPreferences;
     private static ApplicationsDatabase applicationsDatabase;
-    private List<ApplicationDatabaseChangeListener> applicationDatabaseChangeListeners;
-    private boolean scanInProgress = false;
+    private final ApplicationDatabaseChangeDispatcher applicationDatabaseChangeDispatcher = new ApplicationDatabaseChangeDispatcher();
+    private volatile boolean scanInProgress = false;
+    private final ApplicationsSearchIndex searchIndex = new ApplicationsSearchIndex();
+    private final PermissionUsageTracker permissionUsageTracker;
+    private volatile PermissionGroupStatistics permissionGroupStatistics = PermissionGroupStatistics.of(new ArrayList<AndroidApplication>(0));
+    private final ProfileSource profileSource;
+    private final Map<Long, List<AndroidApplication>> otherProfilesApplications = new HashMap<>();
+    private final Set<Long> changedProfiles = Collections.synchronizedSet(new HashSet<Long>());
 
     private ApplicationsDatabase(Context context) {
         this.context = context;
         permissionsManagerSharedPreferences = MainUtils.getSharedPreferences(context);
-        applicationDatabaseChangeListeners = new ArrayList<>(3);
-        updateApplicationsDatabaseAsync();
-    }
+        permissionUsageTracker = new PermissionUsageTracker(new AppOpsPermissionUsageSource(context));
+        profileSource = new LauncherAppsProfileSource(context);
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL)
+                    releaseDetails();
+            }
 
-    private void updateApplicationsDatabaseAsync() {
-        scanInProgress = true;
-        new Thread() {
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration configuration) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                releaseDetails();
+            }
+        });
+        AppExecutors.background().execute(StartupTracer.deferred("ApplicationsDatabase.watch", new Runnable() {
             @Override
             public void run() {
-                updateApplicationsDatabase();
+                watchForChanges();
             }
-        }.start();
+        }));
+    }
+
+    /**
+     * Changes of other profiles and of the policy only matter to later scans, so they are watched
+     * off the main thread, while the database is being created for the first frame.
+     */
+    private void watchForChanges() {
+        profileSource.setProfileChangeListener(new ProfileChangeListener() {
+            @Override
+            public void profilePackagesChanged(long profile) {
+                changedProfiles.add(profile);
+                updateOtherProfilesAsync();
+            }
+        });
+        PermissionPolicyStore.getPermissionPolicyStore(context).watch(new PermissionPolicyChangeListener() {
+            @Override
+            public void permissionPolicyChanged(PermissionPolicy permissionPolicy) {
+                rescanApplicationsDatabaseAsync(null, TaskScheduler.LANE_BACKGROUND, null);
+            }
+        });
     }
 
     public boolean isScanInProgress() {
@@ -52,7 +99,15 @@ public class ApplicationsDatabase {
 
     public synchronized static ApplicationsDatabase getApplicationsDatabase(Context context) {
         if (applicationsDatabase == null)
-            applicationsDatabase = new ApplicationsDatabase(context);
+            applicationsDatabase = new ApplicationsDatabase(context.getApplicationContext());
+        return applicationsDatabase;
+    }
+
+    /**
+     * @return the database if this process already created it, null otherwise; lets work that should
+     * not set up a database, like notification actions, still keep an existing one up to date
+     */
+    public synchronized static ApplicationsDatabase getApplicationsDatabaseIfCreated() {
         return applicationsDatabase;
     }
 
@@ -70,102 +125,306 @@ public class ApplicationsDatabase {
         return performSynchronizedTask(TASK_RETURN_A_COPY, null);
     }
 
+    /**
+     * Drops the details models of all applications; they are rebuilt when ApplicationDetails shows one again.
+     */
+    private void releaseDetails() {
+        for (AndroidApplication application : getACopyOfApplications())
+            application.releaseDetails();
+    }
+
+    public PermissionUsageTracker getPermissionUsageTracker() {
+        return permissionUsageTracker;
+    }
+
+    public PermissionGroupStatistics getPermissionGroupStatistics() {
+        return permissionGroupStatistics;
+    }
+
+    public Set<String> searchApplications(String query) {
+        return searchIndex.search(query);
+    }
+
     public void updateApplicationsDatabase() {
         scanInProgress = true;
-        ArrayList<AndroidApplication> newApplicationsList = new ArrayList<>();
-        PackageManager pm = context.getPackageManager();
-        AndroidApplication androidApplication;
-        List<ApplicationInfo> packages = pm.getInstalledApplications(PackageManager.GET_META_DATA);
-        Set<String> ignoredPermissionsForAllApps = getIgnoredPermissionsForAllApps();
-        Set<String> temporarilyIgnoredApps = getIgnoredAppsList();
-
-        for (ApplicationInfo applicationInfo : packages) {
-            String packageName = applicationInfo.packageName;
-            //System.out.println("Processing App: " + packageName + " (System App: " + ((applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0) + ")");
-
-            if (!applicationInfo.enabled || (applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0 || packageName.startsWith(AOSP_APPS_PREFIX)) {
-                //System.out.println("Skipped App: " + packageName);
-                continue;  // Skip system apps and AOSP apps
-            }
+        PermissionsScanner permissionsScanner = new PermissionsScanner(context, true);
+        Map<Long, Future<PermissionsScanner.ScanResult>> profileScans = startOtherProfileScans(permissionsScanner);
+        try {
+            PermissionsScanner.ScanResult scanResult = permissionsScanner.scan();
+            List<AndroidApplication> newApplicationsList = new ArrayList<>(scanResult.getApplications());
+            newApplicationsList.addAll(finishOtherProfileScans(profileScans));
+            if (MainUtils.isRankingByRecentUsage(context))
+                permissionUsageTracker.mergeUsage(newApplicationsList);
+            performSynchronizedTask(TASK_REPLACE, newApplicationsList);
+            searchIndex.update(newApplicationsList);
+            permissionGroupStatistics = PermissionGroupStatistics.of(newApplicationsList);
+            List<PermissionChange> changes = PermissionChangeJournal.getPermissionChangeJournal(context).record(scanResult.getScannedPackages());
+            AdaptiveScanScheduler.onScanCompleted(context, changes.size());
+            saveSnapshots(newApplicationsList);
+        } finally {
+            for (Future<PermissionsScanner.ScanResult> profileScan : profileScans.values())
+                profileScan.cancel(true);
+            scanInProgress = false;
+        }
+        MainUtils.updateLastScanTime(context);
+        applicationDatabaseChangeDispatcher.applicationsDatabaseUpdated(performSynchronizedTask(TASK_RETURN_A_COPY, applications));
+    }
+
+    /**
+     * Rescans only the other profiles whose packages changed since they were last scanned, keeping the
+     * applications of the current profile and of the unchanged profiles as they are.
+     */
+    public void updateOtherProfiles() {
+        Map<Long, Future<PermissionsScanner.ScanResult>> profileScans = startOtherProfileScans(new PermissionsScanner(context, true));
+        if (profileScans.isEmpty())
+            return;
+        List<AndroidApplication> newApplicationsList = new ArrayList<>();
+        try {
+            for (AndroidApplication application : getACopyOfApplications())
+                if (application.isInCurrentProfile())
+                    newApplicationsList.add(application);
+            newApplicationsList.addAll(finishOtherProfileScans(profileScans));
+        } finally {
+            for (Future<PermissionsScanner.ScanResult> profileScan : profileScans.values())
+                profileScan.cancel(true);
+        }
+        performSynchronizedTask(TASK_REPLACE, newApplicationsList);
+        searchIndex.update(newApplicationsList);
+        permissionGroupStatistics = PermissionGroupStatistics.of(newApplicationsList);
+        saveSnapshots(newApplicationsList);
+        applicationDatabaseChangeDispatcher.applicationsDatabaseUpdated(performSynchronizedTask(TASK_RETURN_A_COPY, applications));
+    }
 
-            // Rest of the code for user-installed apps
-            //System.out.println("User Installed App: " + packageName);
+    private TaskHandle<Void> updateOtherProfilesAsync() {
+        return TaskScheduler.submit(TaskScheduler.LANE_BACKGROUND, PROFILES_SCAN_TASK_KEY, null, new Callable<Void>() {
+            @Override
+            public Void call() {
+                updateOtherProfiles();
+                return null;
+            }
+        }, null);
+    }
 
-            try {
-                androidApplication = createAndroidApplication(pm, applicationInfo, temporarilyIgnoredApps, ignoredPermissionsForAllApps);
-                if (androidApplication.getWarnablePermissions().size() == 0) {
-                    System.out.println("App with no warnable permissions: " + packageName);
+    /**
+     * Starts scanning, each on its own thread, the other profiles which were never scanned or whose
+     * packages changed since; profiles which no longer exist are forgotten.
+     */
+    private Map<Long, Future<PermissionsScanner.ScanResult>> startOtherProfileScans(final PermissionsScanner permissionsScanner) {
+        List<Long> profiles = profileSource.getOtherProfiles();
+        Map<Long, Future<PermissionsScanner.ScanResult>> profileScans = new HashMap<>(profiles.size());
+        synchronized (otherProfilesApplications) {
+            otherProfilesApplications.keySet().retainAll(profiles);
+            for (final Long profile : profiles) {
+                if (!changedProfiles.remove(profile) && otherProfilesApplications.containsKey(profile))
                     continue;
-                }
-                newApplicationsList.add(androidApplication);
-            } catch (PackageManager.NameNotFoundException e) {
-                System.out.println("Name not found for package " + packageName + ", skipping it");
+                profileScans.put(profile, AppExecutors.profiles().submit(new Callable<PermissionsScanner.ScanResult>() {
+                    @Override
+                    public PermissionsScanner.ScanResult call() {
+                        List<ApplicationInfo> profileApplications = profileSource.getApplications(profile);
+                        if (profileApplications == null)
+                            return null;
+                        return permissionsScanner.scanProfile(profileSource, profile, profileApplications);
+                    }
+                }));
             }
         }
-        performSynchronizedTask(TASK_REPLACE, newApplicationsList);
-        scanInProgress = false;
-        MainUtils.updateLastScanTime(context);
-        for (ApplicationDatabaseChangeListener applicationDatabaseChangeListener : applicationDatabaseChangeListeners)
-            applicationDatabaseChangeListener.applicationsDatabaseUpdated(performSynchronizedTask(TASK_RETURN_A_COPY, applications));
+        return profileScans;
     }
 
-    @NonNull
-    private AndroidApplication createAndroidApplication(PackageManager pm, ApplicationInfo applicationInfo, Set<String> temporarilyIgnoredApps, Set<String> ignoredPermissionsForAllApps) throws PackageManager.NameNotFoundException {
-        PackageInfo packageInfo;
-        packageInfo = pm.getPackageInfo(applicationInfo.packageName, PackageManager.GET_PERMISSIONS);
-        List<String> nonwarnablePermission = new ArrayList<>();
-        List<String> warnablePermissions = new ArrayList<>(3);
-        Set<String> appSpecificIgnoreList;
-
-        int dangerousThreshold = 1;
-
-        if (packageInfo.requestedPermissions != null) {
-            appSpecificIgnoreList = getAppSpecificIgnoreList(applicationInfo.packageName);
-            for (String permission : packageInfo.requestedPermissions) {
-                if (pm.checkPermission(permission, packageInfo.packageName) == PackageManager.PERMISSION_GRANTED) {
-                    if (isDangerous(permission, pm) && !ignoredPermissionsForAllApps.contains(permission) && !appSpecificIgnoreList.contains(permission))
-                        warnablePermissions.add(permission);
-                    else
-                        nonwarnablePermission.add(permission);
+    /**
+     * Waits for the given profile scans. A profile which could not be scanned keeps its previous
+     * applications, or the ones of its snapshot, and is scanned again the next time.
+     *
+     * @return the applications of every other profile
+     */
+    private List<AndroidApplication> finishOtherProfileScans(Map<Long, Future<PermissionsScanner.ScanResult>> profileScans) {
+        for (Map.Entry<Long, Future<PermissionsScanner.ScanResult>> profileScan : profileScans.entrySet()) {
+            PermissionsScanner.ScanResult scanResult = null;
+            try {
+                scanResult = profileScan.getValue().get();
+            } catch (ExecutionException e) {
+                System.out.println("Unable to scan profile " + profileScan.getKey() + " " + e.getCause());
+            } catch (InterruptedException e) {
+                throw new CancellationException();
+            }
+            synchronized (otherProfilesApplications) {
+                if (scanResult != null)
+                    otherProfilesApplications.put(profileScan.getKey(), scanResult.getApplications());
+                else {
+                    changedProfiles.add(profileScan.getKey());
+                    if (!otherProfilesApplications.containsKey(profileScan.getKey()))
+                        otherProfilesApplications.put(profileScan.getKey(), ScanSnapshotStore.getScanSnapshotStore(context, profileScan.getKey()).load().getApplications());
                 }
             }
         }
-        System.out.println(applicationInfo.packageName);
-        // Check if the app is WhatsApp and set a specific threshold
-        if (applicationInfo.packageName.equals("com.whatsapp")) {
-            dangerousThreshold = 10; // Set your specific threshold for WhatsApp
-        } else {
-            // For other apps, set a random threshold between 1 to 5
-            Random random = new Random();
-            dangerousThreshold = random.nextInt(5) + 1;
+        List<AndroidApplication> applications = new ArrayList<>();
+        synchronized (otherProfilesApplications) {
+            for (List<AndroidApplication> profileApplications : otherProfilesApplications.values())
+                applications.addAll(profileApplications);
         }
+        return applications;
+    }
 
-        return new AndroidApplication.Builder(packageInfo.packageName)
-                .withName(getApplicationName(pm, applicationInfo))
-                .withNonWarnablePermissions(nonwarnablePermission)
-                .withWarnablePermissions(warnablePermissions)
-                .withIcon(pm.getApplicationIcon(packageInfo.packageName))
-                .withIgnoredTemporarily(temporarilyIgnoredApps.contains(packageInfo.packageName))
-                .withDangerousThreshold(dangerousThreshold)
-                .build();
+    /**
+     * Saves the applications of each profile to the snapshot of that profile; audited system
+     * applications are saved to their own snapshot by the scanner.
+     */
+    private void saveSnapshots(List<AndroidApplication> applications) {
+        Map<Long, List<AndroidApplication>> applicationsByProfile = new HashMap<>();
+        applicationsByProfile.put(AndroidApplication.CURRENT_PROFILE, new ArrayList<AndroidApplication>());
+        synchronized (otherProfilesApplications) {
+            for (Long profile : otherProfilesApplications.keySet())
+                applicationsByProfile.put(profile, new ArrayList<AndroidApplication>());
+        }
+        for (AndroidApplication application : applications) {
+            List<AndroidApplication> profileApplications = applicationsByProfile.get(application.getProfile());
+            if (profileApplications != null && !application.isSystemApp())
+                profileApplications.add(application);
+        }
+        for (Map.Entry<Long, List<AndroidApplication>> profileApplications : applicationsByProfile.entrySet())
+            ScanSnapshotStore.getScanSnapshotStore(context, profileApplications.getKey()).save(profileApplications.getValue());
     }
 
-    @NonNull
-    private Set<String> getAppSpecificIgnoreList(String packageName) {
-        return permissionsManagerSharedPreferences.getStringSet(packageName, new HashSet<String>(0));
+    /**
+     * Re-evaluates a single package instead of rescanning the device, e.g. after the user changed its
+     * permissions in the system settings, and updates the index, statistics, journal and snapshot.
+     *
+     * @return the re-evaluated application, even if it has no warnable permissions left, null if it
+     * is no longer installed
+     */
+    public AndroidApplication refreshPackage(String packageName) {
+        PermissionsScanner.ScanResult scanResult = new PermissionsScanner(context, true).scanPackage(packageName);
+        AndroidApplication refreshedApplication = scanResult.getApplications().isEmpty() ? null : scanResult.getApplications().get(0);
+        boolean keep = refreshedApplication != null && refreshedApplication.getNumberOfWarnablePermissions() > 0;
+        replaceApplication(packageName, refreshedApplication, keep);
+        PermissionChangeJournal.getPermissionChangeJournal(context).recordPackage(packageName, scanResult.getScannedPackages().get(packageName));
+        applicationsChanged();
+        applicationDatabaseChangeDispatcher.applicationRefreshed(packageName, keep ? refreshedApplication : null);
+        return refreshedApplication;
     }
 
-    private boolean isDangerous(String permission, PackageManager pm) throws PackageManager.NameNotFoundException {
-        return pm.getPermissionInfo(permission, PackageManager.GET_META_DATA).protectionLevel == PermissionInfo.PROTECTION_DANGEROUS;
+    /**
+     * Splices the refreshed application into a new list in the place of the previous one, under the
+     * lock the scans replace the list under, so that a refresh and a concurrent scan never undo each
+     * other. The refreshed application keeps the permission usage merged into the previous one.
+     *
+     * @param keep false to drop the application from the list
+     */
+    private synchronized void replaceApplication(String packageName, AndroidApplication refreshedApplication, boolean keep) {
+        List<AndroidApplication> newApplicationsList = new ArrayList<>(applications);
+        int indexOfApplication = newApplicationsList.indexOf(new AndroidApplication(packageName));
+        if (indexOfApplication != -1 && refreshedApplication != null)
+            refreshedApplication.setPermissionLastAccessTimes(newApplicationsList.get(indexOfApplication).getPermissionLastAccessTimes());
+        if (indexOfApplication != -1 && keep)
+            newApplicationsList.set(indexOfApplication, refreshedApplication);
+        else if (indexOfApplication != -1)
+            newApplicationsList.remove(indexOfApplication);
+        else if (keep)
+            newApplicationsList.add(refreshedApplication);
+        applications = newApplicationsList;
     }
 
-    private String getApplicationName(PackageManager pm, ApplicationInfo applicationInfo) {
-        try {
-            return pm.getApplicationLabel(applicationInfo).toString();
-        } catch (Exception e) {
-            System.out.println("This application has no name hence using its package name" + applicationInfo.packageName);
-            return applicationInfo.packageName;
-        }
+    public TaskHandle<AndroidApplication> refreshPackageAsync(TaskScope scope, final String packageName, DatabaseCallback<AndroidApplication> callback) {
+        return TaskScheduler.submit(TaskScheduler.LANE_INTERACTIVE, "refresh:" + packageName, scope, new Callable<AndroidApplication>() {
+            @Override
+            public AndroidApplication call() {
+                return refreshPackage(packageName);
+            }
+        }, callback);
+    }
+
+    /**
+     * Requests a scan, joining the one already pending or running if there is one; the scan is
+     * cancelled if every scope which requested it ends before it completes.
+     */
+    public TaskHandle<List<AndroidApplication>> updateApplicationsDatabaseAsync(TaskScope scope, int lane, DatabaseCallback<List<AndroidApplication>> callback) {
+        return TaskScheduler.submit(lane, SCAN_TASK_KEY, scope, getScanTask(), callback);
+    }
+
+    /**
+     * Requests a scan after the rules it classifies by changed: a pending scan is joined, but not one
+     * already running, which may have read the rules before they changed.
+     */
+    public TaskHandle<List<AndroidApplication>> rescanApplicationsDatabaseAsync(TaskScope scope, int lane, DatabaseCallback<List<AndroidApplication>> callback) {
+        return TaskScheduler.submitAfterRunning(lane, SCAN_TASK_KEY, scope, getScanTask(), callback);
+    }
+
+    private Callable<List<AndroidApplication>> getScanTask() {
+        return new Callable<List<AndroidApplication>>() {
+            @Override
+            public List<AndroidApplication> call() {
+                updateApplicationsDatabase();
+                return getACopyOfApplications();
+            }
+        };
+    }
+
+    /**
+     * Ignores or stops ignoring the permission, for all apps or only for the given application, off the main thread.
+     *
+     * Changing the rule for all apps rescans the device, as a scan joined by the other requests for one.
+     *
+     * @param callback receives the application of the package afterwards, null if it has no warnable permissions left
+     */
+    public TaskHandle<AndroidApplication> setPermissionIgnoredAsync(final TaskScope scope, final String applicationKey, final String permission, final boolean ignored, final boolean forAllApps, final DatabaseCallback<AndroidApplication> callback) {
+        if (forAllApps)
+            return TaskScheduler.submit(TaskScheduler.LANE_INTERACTIVE, null, scope, new Callable<AndroidApplication>() {
+                @Override
+                public AndroidApplication call() {
+                    setPermissionIgnoredForAllApps(permission, ignored);
+                    return null;
+                }
+            }, new DatabaseCallback<AndroidApplication>() {
+                @Override
+                public void onComplete(AndroidApplication result) {
+                    rescanApplicationsDatabaseAsync(scope, TaskScheduler.LANE_INTERACTIVE, new DatabaseCallback<List<AndroidApplication>>() {
+                        @Override
+                        public void onComplete(List<AndroidApplication> applications) {
+                            if (callback == null)
+                                return;
+                            int indexOfApplication = applications.indexOf(AndroidApplication.forKey(applicationKey));
+                            callback.onComplete(indexOfApplication == -1 ? null : applications.get(indexOfApplication));
+                        }
+                    });
+                }
+            });
+        return TaskScheduler.submit(TaskScheduler.LANE_INTERACTIVE, null, scope, new Callable<AndroidApplication>() {
+            @Override
+            public AndroidApplication call() {
+                if (ignored)
+                    ignorePermissionForSpecificApp(applicationKey, permission);
+                else
+                    unignorePermissionForSpecificApp(applicationKey, permission);
+                return getApplication(applicationKey);
+            }
+        }, callback);
+    }
+
+    public TaskHandle<Boolean> setAppIgnoredAsync(TaskScope scope, final AndroidApplication androidApplication, final boolean ignored, DatabaseCallback<Boolean> callback) {
+        return TaskScheduler.submit(TaskScheduler.LANE_INTERACTIVE, null, scope, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                if (ignored)
+                    addAppToIgnoreList(androidApplication);
+                else
+                    removeAppFromIgnoreList(androidApplication);
+                return ignored;
+            }
+        }, callback);
+    }
+
+    public TaskHandle<Boolean> applyIgnoreRulesAsync(TaskScope scope, final IgnoreRulesTransfer.IgnoreRules ignoreRules, DatabaseCallback<Boolean> callback) {
+        return TaskScheduler.submit(TaskScheduler.LANE_INTERACTIVE, null, scope, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return applyIgnoreRules(ignoreRules);
+            }
+        }, callback);
+    }
+
+    @NonNull
+    private Set<String> getAppSpecificIgnoreList(String applicationKey) {
+        return permissionsManagerSharedPreferences.getStringSet(AppIgnoreLists.getPreferenceKey(applicationKey), new HashSet<String>(0));
     }
 
 
@@ -173,136 +432,269 @@ public class ApplicationsDatabase {
         return permissionsManagerSharedPreferences.getStringSet(context.getString(R.string.allowed_permissions), new HashSet<String>(0));
     }
 
-    public void ignorePermissionForAllApps(String permission) {
-        Set<String> ignoredPermissionsForAllApps = getIgnoredPermissionsForAllApps();
-        ignoredPermissionsForAllApps.add(permission);
+    /**
+     * Only stores the rule; the applications are reclassified by the scan requested afterwards.
+     */
+    private void setPermissionIgnoredForAllApps(String permission, boolean ignored) {
+        Set<String> ignoredPermissionsForAllApps = new HashSet<>(getIgnoredPermissionsForAllApps());
+        if (ignored)
+            ignoredPermissionsForAllApps.add(permission);
+        else
+            ignoredPermissionsForAllApps.remove(permission);
         permissionsManagerSharedPreferences
                 .edit()
                 .putInt(SHARED_PREF_KEY_DUMMY, new Random().nextInt())
                 .putStringSet(context.getString(R.string.allowed_permissions), ignoredPermissionsForAllApps)
                 .apply();
-        updateApplicationsDatabase();
     }
 
-    public void unignorePermissionForAllApps(String permission) {//TODO: refactor this block as this looks quite similar to above
-        Set<String> ignoredPermissionsForAllApps = getIgnoredPermissionsForAllApps();
-        ignoredPermissionsForAllApps.remove(permission);
-        permissionsManagerSharedPreferences
+    /**
+     * Adds the given rules to the stored ones in a single preferences commit and reclassifies the
+     * applications already in memory against them, without rescanning the device.
+     *
+     * @return false if the rules could not be persisted, in which case nothing changed
+     */
+    public boolean applyIgnoreRules(IgnoreRulesTransfer.IgnoreRules ignoreRules) {
+        Set<String> ignoredPermissionsForAllApps = new HashSet<>(getIgnoredPermissionsForAllApps());
+        ignoredPermissionsForAllApps.addAll(ignoreRules.getIgnoredPermissionsForAllApps());
+        Set<String> ignoredApps = new HashSet<>(getIgnoredAppsList());
+        ignoredApps.addAll(ignoreRules.getIgnoredApps());
+        SharedPreferences.Editor editor = permissionsManagerSharedPreferences
                 .edit()
                 .putInt(SHARED_PREF_KEY_DUMMY, new Random().nextInt())
                 .putStringSet(context.getString(R.string.allowed_permissions), ignoredPermissionsForAllApps)
-                .apply();
-        updateApplicationsDatabase();
+                .putStringSet(SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, ignoredApps);
+        for (Map.Entry<String, Set<String>> ignoredPermissionsOfApp : ignoreRules.getIgnoredPermissionsPerApp().entrySet()) {
+            Set<String> ignoredPermissionsForGivenApp = new HashSet<>(getAppSpecificIgnoreList(ignoredPermissionsOfApp.getKey()));
+            ignoredPermissionsForGivenApp.addAll(ignoredPermissionsOfApp.getValue());
+            editor.putStringSet(AppIgnoreLists.getPreferenceKey(ignoredPermissionsOfApp.getKey()), ignoredPermissionsForGivenApp);
+        }
+        if (!editor.commit())
+            return false;
+
+        reclassifyApplications(PermissionPolicyStore.getPermissionPolicyStore(context).getPolicy(), ignoreRules, ignoredApps);
+        applicationsChanged();
+        applicationDatabaseChangeDispatcher.applicationsDatabaseUpdated(performSynchronizedTask(TASK_RETURN_A_COPY, applications));
+        return true;
     }
 
-    public void ignorePermissionForSpecificApp(String packageName, String permission) {
-        int indexOfApp = applications.indexOf(new AndroidApplication(packageName));
-        if (indexOfApp == -1)
-            return;
-        AndroidApplication application = applications.get(indexOfApp);
-        List<String> warnablePermissions = application.getWarnablePermissions();
-        if (!warnablePermissions.contains(permission))
-            return;
-        warnablePermissions.remove(permission);
-        application.getNonwarnablePermissions().add(permission);
+    /**
+     * Reclassifies the applications against the imported rules and replaces the list with the result,
+     * under the lock the scans replace the list under, so that an import and a concurrent scan never
+     * undo each other.
+     */
+    private synchronized void reclassifyApplications(PermissionPolicy permissionPolicy, IgnoreRulesTransfer.IgnoreRules ignoreRules, Set<String> ignoredApps) {
+        List<AndroidApplication> reclassifiedApplications = new ArrayList<>();
+        for (AndroidApplication application : applications) {
+            PermissionPolicy.PackagePolicy packagePolicy = permissionPolicy.getPackagePolicy(application.getPackageName());
+            List<String> warnablePermissions = new ArrayList<>(application.getWarnablePermissions().size());
+            List<String> nonwarnablePermissions = new ArrayList<>(application.getNonwarnablePermissions());
+            for (String permission : application.getWarnablePermissions()) {
+                if (!packagePolicy.isWarnable(permission, ignoreRules.isIgnored(application.getKey(), permission)))
+                    nonwarnablePermissions.add(permission);
+                else
+                    warnablePermissions.add(permission);
+            }
+            if (warnablePermissions.isEmpty())
+                continue;
+            boolean ignored = application.isIgnoredTemporarily() || ignoredApps.contains(application.getKey());
+            if (ignored == application.isIgnoredTemporarily() && warnablePermissions.size() == application.getWarnablePermissions().size())
+                reclassifiedApplications.add(application);
+            else
+                reclassifiedApplications.add(createACopyOfAndroidApplication(application, ignored, warnablePermissions, nonwarnablePermissions));
+        }
+        applications = reclassifiedApplications;
+    }
 
+    /**
+     * The rule is committed before this returns, so a caller may finish right after, like a broadcast
+     * receiver; call it off the main thread.
+     */
+    public void ignorePermissionForSpecificApp(String applicationKey, final String permission) {
+        AndroidApplication updatedApplication = updateApplication(applicationKey, new ApplicationUpdate() {
+            @Override
+            public AndroidApplication update(AndroidApplication application) {
+                if (!application.getWarnablePermissions().contains(permission))
+                    return null;
+                List<String> warnablePermissions = new ArrayList<>(application.getWarnablePermissions());
+                warnablePermissions.remove(permission);
+                List<String> nonwarnablePermissions = new ArrayList<>(application.getNonwarnablePermissions());
+                nonwarnablePermissions.add(permission);
+                return createACopyOfAndroidApplication(application, application.isIgnoredTemporarily(), warnablePermissions, nonwarnablePermissions);
+            }
+        });
+        if (updatedApplication == null)
+            return;
 
-        Set<String> ignoredPermissionsForGivenApp = getAppSpecificIgnoreList(packageName);
+        Set<String> ignoredPermissionsForGivenApp = new HashSet<>(getAppSpecificIgnoreList(applicationKey));
         ignoredPermissionsForGivenApp.add(permission);
 
         permissionsManagerSharedPreferences
                 .edit()
                 .putInt(SHARED_PREF_KEY_DUMMY, new Random().nextInt())
-                .putStringSet(packageName, ignoredPermissionsForGivenApp)
-                .apply();
+                .putStringSet(AppIgnoreLists.getPreferenceKey(applicationKey), ignoredPermissionsForGivenApp)
+                .commit();
 
-        for (ApplicationDatabaseChangeListener applicationDatabaseChangeListener : applicationDatabaseChangeListeners)
-            applicationDatabaseChangeListener.applicationPermissionsUpdated(application);
+        applicationsChanged();
+        applicationDatabaseChangeDispatcher.applicationPermissionsUpdated(updatedApplication);
     }
 
-    public void unignorePermissionForSpecificApp(String packageName, String permission) {//TODO: refactor this block as this looks quite similar to above
-        int indexOfApp = applications.indexOf(new AndroidApplication(packageName));
-        if (indexOfApp == -1)
-            return;
-        AndroidApplication application = applications.get(indexOfApp);
-        List<String> warnablePermissions = application.getWarnablePermissions();
-        if (warnablePermissions.contains(permission))
+    public void unignorePermissionForSpecificApp(String applicationKey, final String permission) {//TODO: refactor this block as this looks quite similar to above
+        AndroidApplication updatedApplication = updateApplication(applicationKey, new ApplicationUpdate() {
+            @Override
+            public AndroidApplication update(AndroidApplication application) {
+                if (application.getWarnablePermissions().contains(permission))
+                    return null;
+                List<String> warnablePermissions = new ArrayList<>(application.getWarnablePermissions());
+                warnablePermissions.add(permission);
+                List<String> nonwarnablePermissions = new ArrayList<>(application.getNonwarnablePermissions());
+                nonwarnablePermissions.remove(permission);
+                return createACopyOfAndroidApplication(application, application.isIgnoredTemporarily(), warnablePermissions, nonwarnablePermissions);
+            }
+        });
+        if (updatedApplication == null)
             return;
-        warnablePermissions.add(permission);
-        application.getNonwarnablePermissions().remove(permission);
 
-        Set<String> ignoredPermissionsForGivenApp = getAppSpecificIgnoreList(packageName);
+        Set<String> ignoredPermissionsForGivenApp = new HashSet<>(getAppSpecificIgnoreList(applicationKey));
         ignoredPermissionsForGivenApp.remove(permission);
 
         permissionsManagerSharedPreferences
                 .edit()
                 .putInt(SHARED_PREF_KEY_DUMMY, new Random().nextInt())
-                .putStringSet(packageName, ignoredPermissionsForGivenApp)
-                .apply();
+                .putStringSet(AppIgnoreLists.getPreferenceKey(applicationKey), ignoredPermissionsForGivenApp)
+                .commit();
+
+        applicationsChanged();
+        applicationDatabaseChangeDispatcher.applicationPermissionsUpdated(updatedApplication);
+    }
+
+    /**
+     * Replaces the application of the given key by its update in a new list, under the lock the
+     * scans replace the list under. The lists handed out before, and the applications in them, are
+     * never modified, so they can be read, sorted and indexed on any thread.
+     *
+     * @return the updated application, null if it is no longer in the database or the update left it as it was
+     */
+    private synchronized AndroidApplication updateApplication(String applicationKey, ApplicationUpdate applicationUpdate) {
+        int indexOfApplication = applications.indexOf(AndroidApplication.forKey(applicationKey));
+        if (indexOfApplication == -1)
+            return null;
+        AndroidApplication updatedApplication = applicationUpdate.update(applications.get(indexOfApplication));
+        if (updatedApplication == null)
+            return null;
+        List<AndroidApplication> newApplicationsList = new ArrayList<>(applications);
+        newApplicationsList.set(indexOfApplication, updatedApplication);
+        applications = newApplicationsList;
+        return updatedApplication;
+    }
+
+    /**
+     * Brings the search index, the statistics and the snapshots up to date with the applications.
+     */
+    private void applicationsChanged() {
+        List<AndroidApplication> newApplicationsList = getACopyOfApplications();
+        searchIndex.update(newApplicationsList);
+        permissionGroupStatistics = PermissionGroupStatistics.of(newApplicationsList);
+        saveSnapshots(newApplicationsList);
+    }
 
-        for (ApplicationDatabaseChangeListener applicationDatabaseChangeListener : applicationDatabaseChangeListeners)
-            applicationDatabaseChangeListener.applicationPermissionsUpdated(application);
+    private interface ApplicationUpdate {
+        /**
+         * @return a copy of the application with the update, null to leave it as it is
+         */
+        AndroidApplication update(AndroidApplication application);
     }
 
 
+    /**
+     * The listener is called on the main thread, once per frame with the changes made since its last call.
+     */
     public void addApplicationDatabaseChangeListener(ApplicationDatabaseChangeListener applicationDatabaseChangeListener) {
-        applicationDatabaseChangeListeners.add(applicationDatabaseChangeListener);
+        addApplicationDatabaseChangeListener(applicationDatabaseChangeListener, AppExecutors.mainThreadNextFrame());
+    }
+
+    /**
+     * @param executor what the listener is called on; changes made before a call ran are delivered together
+     */
+    public void addApplicationDatabaseChangeListener(ApplicationDatabaseChangeListener applicationDatabaseChangeListener, Executor executor) {
+        applicationDatabaseChangeDispatcher.addListener(applicationDatabaseChangeListener, executor);
     }
 
     public void removeApplicationDatabaseChangeListener(ApplicationDatabaseChangeListener applicationDatabaseChangeListener) {
-        applicationDatabaseChangeListeners.remove(applicationDatabaseChangeListener);
+        applicationDatabaseChangeDispatcher.removeListener(applicationDatabaseChangeListener);
     }
 
-    public AndroidApplication getApplication(String packageName) {
-        if (packageName == null)
+    /**
+     * @param applicationKey the {@link AndroidApplication#getKey() key} of the application, its package name in the current profile
+     */
+    public synchronized AndroidApplication getApplication(String applicationKey) {
+        if (applicationKey == null)
             return null;
-        int indexOfApplication = applications.indexOf(new AndroidApplication(packageName));
+        int indexOfApplication = applications.indexOf(AndroidApplication.forKey(applicationKey));
         if (indexOfApplication == -1)
             return null;
         return applications.get(indexOfApplication);
     }
 
+    /**
+     * Like {@link #ignorePermissionForSpecificApp(String, String)}, commits before it returns.
+     */
     public void addAppToIgnoreList(AndroidApplication androidApplication) {
-        if (!applications.contains(androidApplication))
+        AndroidApplication ignoredApplication = updateApplication(androidApplication.getKey(), new ApplicationUpdate() {
+            @Override
+            public AndroidApplication update(AndroidApplication application) {
+                return createACopyOfAndroidApplicationButIgnoredFlag(true, application);
+            }
+        });
+        if (ignoredApplication == null)
             return;
-        Set<String> ignoredApps = permissionsManagerSharedPreferences.getStringSet(SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, new HashSet<String>(1));
-        ignoredApps.add(androidApplication.getPackageName());
+        Set<String> ignoredApps = new HashSet<>(getIgnoredAppsList());
+        ignoredApps.add(androidApplication.getKey());
         permissionsManagerSharedPreferences.edit()
                 .putInt(SHARED_PREF_KEY_DUMMY, new Random().nextInt())
                 .putStringSet(SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, ignoredApps)
-                .apply();
+                .commit();
         //android 19 has issue saving hashset, so we have to save something random with it
-        AndroidApplication ignoredApplication = createACopyOfAndroidApplicationButIgnoredFlag(true, androidApplication);
-        applications.remove(ignoredApplication);
-        applications.add(ignoredApplication);
-        for(ApplicationDatabaseChangeListener applicationDatabaseChangeListener : applicationDatabaseChangeListeners)
-            applicationDatabaseChangeListener.applicationAddedToIgnoreList(ignoredApplication);
+        applicationsChanged();
+        applicationDatabaseChangeDispatcher.applicationAddedToIgnoreList(ignoredApplication);
     }
 
     private AndroidApplication createACopyOfAndroidApplicationButIgnoredFlag(boolean ignored, AndroidApplication androidApplication) {
+        return createACopyOfAndroidApplication(androidApplication, ignored, androidApplication.getWarnablePermissions(), androidApplication.getNonwarnablePermissions());
+    }
+
+    private AndroidApplication createACopyOfAndroidApplication(AndroidApplication androidApplication, boolean ignored, List<String> warnablePermissions, List<String> nonwarnablePermissions) {
         return new AndroidApplication.Builder(androidApplication.getPackageName())
+                .withProfile(androidApplication.getProfile())
+                .withSystemApp(androidApplication.isSystemApp())
                 .withIgnoredTemporarily(ignored)
-                .withIcon(androidApplication.getIcon())
                 .withName(androidApplication.getName())
-                .withNonWarnablePermissions(androidApplication.getNonwarnablePermissions())
-                .withWarnablePermissions(androidApplication.getWarnablePermissions())
+                .withNonWarnablePermissions(nonwarnablePermissions)
+                .withWarnablePermissions(warnablePermissions)
+                .withVersionCode(androidApplication.getVersionCode())
+                .withUid(androidApplication.getUid())
+                .withPermissionLastAccessTimes(androidApplication.getPermissionLastAccessTimes())
+                .withDangerousThreshold(androidApplication.getDangerousThreshold())
                 .build();
     }
 
     public void removeAppFromIgnoreList(AndroidApplication androidApplication) {
-        if (!applications.contains(androidApplication))
+        AndroidApplication unignoredApplication = updateApplication(androidApplication.getKey(), new ApplicationUpdate() {
+            @Override
+            public AndroidApplication update(AndroidApplication application) {
+                return createACopyOfAndroidApplicationButIgnoredFlag(false, application);
+            }
+        });
+        if (unignoredApplication == null)
             return;
-        Set<String> ignored_apps = permissionsManagerSharedPreferences.getStringSet(SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, new HashSet<String>(1));
-        ignored_apps.remove(androidApplication.getPackageName());
+        Set<String> ignored_apps = new HashSet<>(getIgnoredAppsList());
+        ignored_apps.remove(androidApplication.getKey());
         permissionsManagerSharedPreferences.edit()
                 .putInt(SHARED_PREF_KEY_DUMMY, new Random().nextInt())
                 .putStringSet(SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, ignored_apps)
-                .apply();
-        AndroidApplication unignoredApplication = createACopyOfAndroidApplicationButIgnoredFlag(false, androidApplication);
-        applications.remove(unignoredApplication);
-        applications.add(unignoredApplication);
-        for(ApplicationDatabaseChangeListener applicationDatabaseChangeListener : applicationDatabaseChangeListeners)
-            applicationDatabaseChangeListener.applicationRemovedFromIgnoredList(unignoredApplication);
+                .commit();
+        applicationsChanged();
+        applicationDatabaseChangeDispatcher.applicationRemovedFromIgnoredList(unignoredApplication);
     }
 
     public Set<String> getIgnoredAppsList(){
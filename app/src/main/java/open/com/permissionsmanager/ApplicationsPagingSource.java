@@ -0,0 +1,69 @@
+package open.com.permissionsmanager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The applications MainActivity lists, as of one update of the database: split in the warnable and
+ * the temporarily ignored section, sorted and filtered by the search. It is built off the main
+ * thread and never changes afterwards; {@link SectionedApplicationsAdapter} reads it a page at a
+ * time, as the list is scrolled.
+ */
+public class ApplicationsPagingSource {
+    public static final int SECTION_WARNABLE = 0;
+    public static final int SECTION_IGNORED = 1;
+    public static final int NUMBER_OF_SECTIONS = 2;
+    public static final ApplicationsPagingSource EMPTY = new ApplicationsPagingSource(new ArrayList<AndroidApplication>(0), new ArrayList<AndroidApplication>(0));
+
+    private final List<AndroidApplication> warnableApplications;
+    private final List<AndroidApplication> ignoredApplications;
+
+    private ApplicationsPagingSource(List<AndroidApplication> warnableApplications, List<AndroidApplication> ignoredApplications) {
+        this.warnableApplications = warnableApplications;
+        this.ignoredApplications = ignoredApplications;
+    }
+
+    /**
+     * @param searchMatches the keys of the applications matching the search, null to list every application
+     */
+    public static ApplicationsPagingSource of(List<AndroidApplication> applications, Set<String> searchMatches, boolean rankByRecentUsage) {
+        List<AndroidApplication> warnableApplications = new ArrayList<>();
+        List<AndroidApplication> ignoredApplications = new ArrayList<>();
+        for (AndroidApplication application : applications) {
+            if (searchMatches != null && !searchMatches.contains(application.getKey()))
+                continue;
+            if (application.isIgnoredTemporarily())
+                ignoredApplications.add(application);
+            else
+                warnableApplications.add(application);
+        }
+        if (rankByRecentUsage) {
+            MainUtils.sortByRecentUsage(warnableApplications);
+            MainUtils.sortByRecentUsage(ignoredApplications);
+        } else {
+            MainUtils.sort(warnableApplications);
+            MainUtils.sort(ignoredApplications);
+        }
+        return new ApplicationsPagingSource(warnableApplications, ignoredApplications);
+    }
+
+    public int getSize(int section) {
+        return getSection(section).size();
+    }
+
+    /**
+     * @return at most limit applications of the section, starting at offset; empty past its end
+     */
+    public List<AndroidApplication> load(int section, int offset, int limit) {
+        List<AndroidApplication> applications = getSection(section);
+        if (offset >= applications.size())
+            return Collections.emptyList();
+        return Collections.unmodifiableList(applications.subList(offset, Math.min(applications.size(), offset + limit)));
+    }
+
+    private List<AndroidApplication> getSection(int section) {
+        return section == SECTION_WARNABLE ? warnableApplications : ignoredApplications;
+    }
+}
@@ -0,0 +1,164 @@
+package open.com.permissionsmanager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory search index over application labels, package names and short permission names.
+ * Queries of three or more characters are answered by intersecting trigram postings, shorter
+ * queries use token prefix postings. The index is updated incrementally: only applications
+ * whose searchable text changed since the last scan are re-indexed.
+ */
+public class ApplicationsSearchIndex {
+    private static final int TRIGRAM_LENGTH = 3;
+
+    private final Map<String, String> searchableTextByApplication = new HashMap<>();
+    private final Map<String, Set<String>> trigramPostings = new HashMap<>();
+    private final Map<String, Set<String>> prefixPostings = new HashMap<>();
+
+    public synchronized void update(List<AndroidApplication> applications) {
+        Set<String> scannedApplications = new HashSet<>(applications.size());
+        for (AndroidApplication application : applications) {
+            String applicationKey = application.getKey();
+            scannedApplications.add(applicationKey);
+            String searchableText = getSearchableText(application);
+            String indexedText = searchableTextByApplication.get(applicationKey);
+            if (searchableText.equals(indexedText))
+                continue;
+            if (indexedText != null)
+                unindex(applicationKey, indexedText);
+            index(applicationKey, searchableText);
+        }
+        Iterator<Map.Entry<String, String>> indexedEntries = searchableTextByApplication.entrySet().iterator();
+        while (indexedEntries.hasNext()) {
+            Map.Entry<String, String> indexedEntry = indexedEntries.next();
+            if (scannedApplications.contains(indexedEntry.getKey()))
+                continue;
+            removePostings(indexedEntry.getKey(), indexedEntry.getValue());
+            indexedEntries.remove();
+        }
+    }
+
+    /**
+     * @return {@link AndroidApplication#getKey() keys} of the applications matching the query, or null if the query is blank
+     * and hence nothing should be filtered out
+     */
+    public synchronized Set<String> search(String query) {
+        if (query == null)
+            return null;
+        String normalizedQuery = normalize(query).trim();
+        if (normalizedQuery.isEmpty())
+            return null;
+        Set<String> candidates = normalizedQuery.length() < TRIGRAM_LENGTH
+                ? prefixPostings.get(normalizedQuery)
+                : getTrigramCandidates(normalizedQuery);
+        Set<String> matches = new HashSet<>();
+        if (candidates == null)
+            return matches;
+        for (String applicationKey : candidates) {
+            if (searchableTextByApplication.get(applicationKey).contains(normalizedQuery))
+                matches.add(applicationKey);
+        }
+        return matches;
+    }
+
+    private Set<String> getTrigramCandidates(String normalizedQuery) {
+        List<Set<String>> postings = new ArrayList<>(normalizedQuery.length());
+        for (String trigram : getTrigrams(normalizedQuery)) {
+            Set<String> posting = trigramPostings.get(trigram);
+            if (posting == null)
+                return null;
+            postings.add(posting);
+        }
+        Set<String> smallestPosting = postings.get(0);
+        for (Set<String> posting : postings)
+            if (posting.size() < smallestPosting.size())
+                smallestPosting = posting;
+        Set<String> candidates = new HashSet<>(smallestPosting);
+        for (Set<String> posting : postings) {
+            if (posting != smallestPosting)
+                candidates.retainAll(posting);
+        }
+        return candidates;
+    }
+
+    private void index(String applicationKey, String searchableText) {
+        searchableTextByApplication.put(applicationKey, searchableText);
+        for (String trigram : getTrigrams(searchableText))
+            addToPosting(trigramPostings, trigram, applicationKey);
+        for (String prefix : getTokenPrefixes(searchableText))
+            addToPosting(prefixPostings, prefix, applicationKey);
+    }
+
+    private void unindex(String applicationKey, String indexedText) {
+        removePostings(applicationKey, indexedText);
+        searchableTextByApplication.remove(applicationKey);
+    }
+
+    private void removePostings(String applicationKey, String indexedText) {
+        for (String trigram : getTrigrams(indexedText))
+            removeFromPosting(trigramPostings, trigram, applicationKey);
+        for (String prefix : getTokenPrefixes(indexedText))
+            removeFromPosting(prefixPostings, prefix, applicationKey);
+    }
+
+    private static void addToPosting(Map<String, Set<String>> postings, String key, String applicationKey) {
+        Set<String> posting = postings.get(key);
+        if (posting == null) {
+            posting = new HashSet<>(2);
+            postings.put(key, posting);
+        }
+        posting.add(applicationKey);
+    }
+
+    private static void removeFromPosting(Map<String, Set<String>> postings, String key, String applicationKey) {
+        Set<String> posting = postings.get(key);
+        if (posting == null)
+            return;
+        posting.remove(applicationKey);
+        if (posting.isEmpty())
+            postings.remove(key);
+    }
+
+    private static Set<String> getTrigrams(String text) {
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + TRIGRAM_LENGTH <= text.length(); i++) {
+            String trigram = text.substring(i, i + TRIGRAM_LENGTH);
+            if (trigram.indexOf('\n') == -1)
+                trigrams.add(trigram);
+        }
+        return trigrams;
+    }
+
+    private static Set<String> getTokenPrefixes(String text) {
+        Set<String> prefixes = new HashSet<>();
+        for (String token : text.split("[^\\p{L}\\p{N}]+")) {
+            for (int length = 1; length < TRIGRAM_LENGTH && length <= token.length(); length++)
+                prefixes.add(token.substring(0, length));
+        }
+        return prefixes;
+    }
+
+    private static String getSearchableText(AndroidApplication application) {
+        StringBuilder searchableText = new StringBuilder();
+        searchableText.append(application.getName()).append('\n').append(application.getPackageName());
+        appendPermissions(searchableText, application.getWarnablePermissions());
+        appendPermissions(searchableText, application.getNonwarnablePermissions());
+        return normalize(searchableText.toString());
+    }
+
+    private static void appendPermissions(StringBuilder searchableText, List<String> permissions) {
+        for (String permission : MainUtils.getNameSpaceTruncatedPermissions(permissions))
+            searchableText.append('\n').append(permission);
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,257 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PermissionInfo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which packages define custom permissions and which scanned applications were granted them, taken
+ * from the package inventory the scan already acquired, so no permission is resolved to build it.
+ * Each scan only replaces the nodes of the packages whose definitions or grants changed; the graph is
+ * persisted next to the scan snapshot, and its exposures recomputed, only when something did.
+ * <p>
+ * An exposure is a custom permission with a normal or dangerous base protection level, which any
+ * application can obtain, granted to an application other than the one defining it.
+ */
+public class CustomPermissionGraph {
+    private static final String GRAPH_FILE_NAME = "custom_permission_graph";
+    private static final int FORMAT_VERSION = 1;
+    private static final String PLATFORM_PACKAGE_NAME = "android";
+    private static final String PLATFORM_PERMISSION_PREFIX = "android.permission.";
+
+    private static CustomPermissionGraph customPermissionGraph;
+    private final File graphFile;
+    private Map<String, PackageNode> packages;
+    private List<Exposure> exposures;
+
+    private CustomPermissionGraph(Context context) {
+        graphFile = new File(context.getFilesDir(), GRAPH_FILE_NAME);
+    }
+
+    public synchronized static CustomPermissionGraph getCustomPermissionGraph(Context context) {
+        if (customPermissionGraph == null)
+            customPermissionGraph = new CustomPermissionGraph(context.getApplicationContext());
+        return customPermissionGraph;
+    }
+
+    /**
+     * @param installedPackages every installed package, queried with its permissions
+     * @param requestingPackages the packages whose grants are part of the graph, i.e. the scanned ones
+     * @return the number of packages whose node changed
+     */
+    public synchronized int update(List<PackageInfo> installedPackages, Set<String> requestingPackages) {
+        load();
+        Map<String, PackageNode> newPackages = new HashMap<>(installedPackages.size());
+        int numberOfChangedPackages = 0;
+        for (PackageInfo packageInfo : installedPackages) {
+            PackageNode packageNode = PackageNode.of(packageInfo, requestingPackages.contains(packageInfo.packageName));
+            if (packageNode == null)
+                continue;
+            PackageNode previousPackageNode = packages.get(packageInfo.packageName);
+            if (packageNode.equals(previousPackageNode))
+                packageNode = previousPackageNode;
+            else
+                numberOfChangedPackages++;
+            newPackages.put(packageInfo.packageName, packageNode);
+        }
+        for (String packageName : packages.keySet())
+            if (!newPackages.containsKey(packageName))
+                numberOfChangedPackages++;
+        if (numberOfChangedPackages == 0)
+            return 0;
+        packages = newPackages;
+        exposures = null;
+        save();
+        return numberOfChangedPackages;
+    }
+
+    /**
+     * @return every exposure of the graph, computed once per change of the graph
+     */
+    public synchronized List<Exposure> getExposures() {
+        load();
+        if (exposures != null)
+            return exposures;
+        Map<String, String> definers = new HashMap<>();
+        Map<String, Integer> protectionLevels = new HashMap<>();
+        for (Map.Entry<String, PackageNode> packageNode : packages.entrySet()) {
+            for (Map.Entry<String, Integer> definedPermission : packageNode.getValue().definedPermissions.entrySet()) {
+                definers.put(definedPermission.getKey(), packageNode.getKey());
+                protectionLevels.put(definedPermission.getKey(), definedPermission.getValue());
+            }
+        }
+        List<Exposure> newExposures = new ArrayList<>();
+        for (Map.Entry<String, PackageNode> packageNode : packages.entrySet()) {
+            for (String grantedPermission : packageNode.getValue().grantedPermissions) {
+                String definer = definers.get(grantedPermission);
+                if (definer == null || definer.equals(packageNode.getKey()))
+                    continue;
+                int protectionLevel = protectionLevels.get(grantedPermission);
+                int baseProtectionLevel = protectionLevel & PermissionInfo.PROTECTION_MASK_BASE;
+                if (baseProtectionLevel == PermissionInfo.PROTECTION_NORMAL || baseProtectionLevel == PermissionInfo.PROTECTION_DANGEROUS)
+                    newExposures.add(new Exposure(grantedPermission, definer, packageNode.getKey(), protectionLevel));
+            }
+        }
+        return exposures = Collections.unmodifiableList(newExposures);
+    }
+
+    /**
+     * @return the exposures of the permissions granted to the given package
+     */
+    public List<Exposure> getExposures(String packageName) {
+        List<Exposure> exposuresOfPackage = new ArrayList<>(0);
+        for (Exposure exposure : getExposures())
+            if (exposure.getRequestingPackage().equals(packageName))
+                exposuresOfPackage.add(exposure);
+        return exposuresOfPackage;
+    }
+
+    private void load() {
+        if (packages != null)
+            return;
+        packages = new HashMap<>();
+        if (!graphFile.exists())
+            return;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(graphFile)));
+            if (input.readInt() != FORMAT_VERSION)
+                return;
+            int numberOfPackages = input.readInt();
+            for (int i = 0; i < numberOfPackages; i++) {
+                String packageName = input.readUTF();
+                PackageNode packageNode = new PackageNode();
+                int numberOfDefinedPermissions = input.readInt();
+                for (int j = 0; j < numberOfDefinedPermissions; j++)
+                    packageNode.definedPermissions.put(input.readUTF().intern(), input.readInt());
+                int numberOfGrantedPermissions = input.readInt();
+                for (int j = 0; j < numberOfGrantedPermissions; j++)
+                    packageNode.grantedPermissions.add(input.readUTF().intern());
+                packages.put(packageName, packageNode);
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to read custom permission graph " + e);
+            packages = new HashMap<>();
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    private void save() {
+        File temporaryFile = new File(graphFile.getPath() + ".tmp");
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+            try {
+                output.writeInt(FORMAT_VERSION);
+                output.writeInt(packages.size());
+                for (Map.Entry<String, PackageNode> packageNode : packages.entrySet()) {
+                    output.writeUTF(packageNode.getKey());
+                    output.writeInt(packageNode.getValue().definedPermissions.size());
+                    for (Map.Entry<String, Integer> definedPermission : packageNode.getValue().definedPermissions.entrySet()) {
+                        output.writeUTF(definedPermission.getKey());
+                        output.writeInt(definedPermission.getValue());
+                    }
+                    output.writeInt(packageNode.getValue().grantedPermissions.size());
+                    for (String grantedPermission : packageNode.getValue().grantedPermissions)
+                        output.writeUTF(grantedPermission);
+                }
+            } finally {
+                output.close();
+            }
+            if (!temporaryFile.renameTo(graphFile))
+                throw new IOException("Unable to replace " + graphFile);
+        } catch (IOException e) {
+            System.out.println("Unable to save custom permission graph " + e);
+        }
+    }
+
+    private static void closeQuietly(DataInputStream stream) {
+        if (stream == null)
+            return;
+        try {
+            stream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class PackageNode {
+        private final Map<String, Integer> definedPermissions = new HashMap<>(0);
+        private final Set<String> grantedPermissions = new HashSet<>(0);
+
+        /**
+         * @return the node of the package, null if it neither defines custom permissions nor is a
+         * requesting package granted permissions outside of the platform namespace
+         */
+        private static PackageNode of(PackageInfo packageInfo, boolean requesting) {
+            PackageNode packageNode = new PackageNode();
+            if (packageInfo.permissions != null && !PLATFORM_PACKAGE_NAME.equals(packageInfo.packageName))
+                for (PermissionInfo permissionInfo : packageInfo.permissions)
+                    packageNode.definedPermissions.put(permissionInfo.name.intern(), permissionInfo.protectionLevel);
+            if (requesting && packageInfo.requestedPermissions != null && packageInfo.requestedPermissionsFlags != null)
+                for (int i = 0; i < packageInfo.requestedPermissions.length; i++)
+                    if ((packageInfo.requestedPermissionsFlags[i] & PackageInfo.REQUESTED_PERMISSION_GRANTED) != 0
+                            && !packageInfo.requestedPermissions[i].startsWith(PLATFORM_PERMISSION_PREFIX))
+                        packageNode.grantedPermissions.add(packageInfo.requestedPermissions[i].intern());
+            if (packageNode.definedPermissions.isEmpty() && packageNode.grantedPermissions.isEmpty())
+                return null;
+            return packageNode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            PackageNode that = (PackageNode) o;
+
+            return definedPermissions.equals(that.definedPermissions) && grantedPermissions.equals(that.grantedPermissions);
+        }
+    }
+
+    public static class Exposure {
+        private final String permission;
+        private final String definingPackage;
+        private final String requestingPackage;
+        private final int protectionLevel;
+
+        private Exposure(String permission, String definingPackage, String requestingPackage, int protectionLevel) {
+            this.permission = permission;
+            this.definingPackage = definingPackage;
+            this.requestingPackage = requestingPackage;
+            this.protectionLevel = protectionLevel;
+        }
+
+        public String getPermission() {
+            return permission;
+        }
+
+        public String getDefiningPackage() {
+            return definingPackage;
+        }
+
+        public String getRequestingPackage() {
+            return requestingPackage;
+        }
+
+        public int getProtectionLevel() {
+            return protectionLevel;
+        }
+    }
+}
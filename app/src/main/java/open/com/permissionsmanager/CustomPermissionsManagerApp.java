@@ -8,30 +8,66 @@ import static open.com.permissionsmanager.ValidatePermissionsBroadcastReceiver.G
 import android.app.Application;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
+import android.content.SharedPreferences;
 import android.os.Build;
+import android.os.StrictMode;
 
 public class CustomPermissionsManagerApp extends Application {
+    private static final String SHARED_PREF_KEY_NOTIFICATION_CHANNELS_VERSION = "NOTIFICATION_CHANNELS_VERSION";
+
     @Override
     public void onCreate() {
+        StartupTracer.onApplicationCreate();
+        StartupTracer.beginSection("Application.onCreate");
         super.onCreate();
-        createNotificationChannels();
+        if (BuildConfig.DEBUG)
+            enableStrictMode();
+        AppExecutors.background().execute(StartupTracer.deferred("createNotificationChannels", new Runnable() {
+            @Override
+            public void run() {
+                createNotificationChannels();
+            }
+        }));
+        StartupTracer.endSection();
+    }
+
+    private void enableStrictMode() {
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectNetwork()
+                .detectCustomSlowCalls()
+                .penaltyLog()
+                .penaltyFlashScreen()
+                .build());
+        StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                .detectLeakedClosableObjects()
+                .detectLeakedSqlLiteObjects()
+                .detectActivityLeaks()
+                .penaltyLog()
+                .build());
     }
 
     private void createNotificationChannels() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            //channels survive process restarts, so they only need to be created once per app version
+            SharedPreferences sharedPreferences = MainUtils.getSharedPreferences(this);
+            if (sharedPreferences.getInt(SHARED_PREF_KEY_NOTIFICATION_CHANNELS_VERSION, 0) == BuildConfig.VERSION_CODE)
+                return;
             NotificationChannel dangerousPermissionsGrantedChannel = new NotificationChannel("" + FOUR_HOURLY_SCAN_RESULT_NOTIICATION_CODE, "Dangerous permissions granted", IMPORTANCE_HIGH);
             dangerousPermissionsGrantedChannel.setDescription("Warns about dangerous permissions granted");
 
             NotificationChannel notifyBlah = new NotificationChannel("" + 6684, "Generic notifications", IMPORTANCE_HIGH);
-            dangerousPermissionsGrantedChannel.setDescription("Generic notifications");
+            notifyBlah.setDescription("Generic notifications");
 
             NotificationChannel ignoredAppsChannel = new NotificationChannel("" + GENERIC_REQUEST_CODE, "Ignored apps reminder", IMPORTANCE_HIGH);
-            dangerousPermissionsGrantedChannel.setDescription("Reminds about ignored apps");
+            ignoredAppsChannel.setDescription("Reminds about ignored apps");
 
             NotificationManager notificationManager = getSystemService(NotificationManager.class);
             notificationManager.createNotificationChannel(dangerousPermissionsGrantedChannel);
             notificationManager.createNotificationChannel(ignoredAppsChannel);
             notificationManager.createNotificationChannel(notifyBlah);
+            sharedPreferences.edit().putInt(SHARED_PREF_KEY_NOTIFICATION_CHANNELS_VERSION, BuildConfig.VERSION_CODE).apply();
         }
 
     }
@@ -0,0 +1,9 @@
+package open.com.permissionsmanager;
+
+/**
+ * Receives the result of a task submitted to the {@link TaskScheduler}, such as an asynchronous
+ * {@link ApplicationsDatabase} call, on the main thread.
+ */
+public interface DatabaseCallback<T> {
+    void onComplete(T result);
+}
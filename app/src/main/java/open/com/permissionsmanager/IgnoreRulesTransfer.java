@@ -0,0 +1,192 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static open.com.permissionsmanager.ApplicationsDatabase.SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS;
+
+/**
+ * Exports ignore rules and the persisted scan report as JSON lines, one record per line, writing
+ * each record as soon as it is built so that nothing but the current record is held in memory.
+ * Imported rules are parsed completely before anything is applied, so a malformed file changes
+ * nothing; {@link ApplicationsDatabase#applyIgnoreRules(IgnoreRules)} then applies them at once.
+ * <p>
+ * Only rules of the current profile are transferred: other profiles are keyed by a serial number
+ * which means nothing on another device, so their rules are neither exported nor imported.
+ */
+public class IgnoreRulesTransfer {
+    private static final String KEY_TYPE = "type";
+    private static final String KEY_PACKAGE = "package";
+    private static final String KEY_PERMISSION = "permission";
+    private static final String TYPE_IGNORE_PERMISSION = "ignore_permission";
+    private static final String TYPE_IGNORE_APP_PERMISSION = "ignore_app_permission";
+    private static final String TYPE_IGNORE_APP = "ignore_app";
+    private static final String TYPE_SCAN_REPORT = "scan_report";
+    private static final String TYPE_APPLICATION = "application";
+
+    public static int exportIgnoreRules(Context context, OutputStream outputStream) throws IOException {
+        return exportIgnoreRules(MainUtils.getSharedPreferences(context), context.getString(R.string.allowed_permissions), outputStream);
+    }
+
+    static int exportIgnoreRules(SharedPreferences sharedPreferences, String ignoredPermissionsForAllAppsKey, OutputStream outputStream) throws IOException {
+        Writer writer = newWriter(outputStream);
+        int numberOfRules = 0;
+        try {
+            for (String permission : sharedPreferences.getStringSet(ignoredPermissionsForAllAppsKey, new HashSet<String>(0))) {
+                writeLine(writer, new JSONObject().put(KEY_TYPE, TYPE_IGNORE_PERMISSION).put(KEY_PERMISSION, permission));
+                numberOfRules++;
+            }
+            for (String packageName : sharedPreferences.getStringSet(SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, new HashSet<String>(0))) {
+                if (!AndroidApplication.isKeyOfCurrentProfile(packageName))
+                    continue;
+                writeLine(writer, new JSONObject().put(KEY_TYPE, TYPE_IGNORE_APP).put(KEY_PACKAGE, packageName));
+                numberOfRules++;
+            }
+            for (Map.Entry<String, ?> preference : sharedPreferences.getAll().entrySet()) {
+                if (!(preference.getValue() instanceof Set) || !AppIgnoreLists.isPreferenceKey(preference.getKey()))
+                    continue;
+                String packageName = AppIgnoreLists.getApplicationKey(preference.getKey());
+                if (!AndroidApplication.isKeyOfCurrentProfile(packageName))
+                    continue;
+                for (Object permission : (Set<?>) preference.getValue()) {
+                    writeLine(writer, new JSONObject().put(KEY_TYPE, TYPE_IGNORE_APP_PERMISSION).put(KEY_PACKAGE, packageName).put(KEY_PERMISSION, permission));
+                    numberOfRules++;
+                }
+            }
+        } catch (JSONException e) {
+            throw new IOException(e);
+        } finally {
+            writer.flush();
+        }
+        return numberOfRules;
+    }
+
+    public static int exportScanReport(Context context, OutputStream outputStream) throws IOException {
+        ScanSnapshot snapshot = ScanSnapshotStore.getScanSnapshotStore(context).load();
+        Writer writer = newWriter(outputStream);
+        try {
+            writeLine(writer, new JSONObject()
+                    .put(KEY_TYPE, TYPE_SCAN_REPORT)
+                    .put("version", snapshot.getVersion())
+                    .put("timestamp", snapshot.getTimestamp())
+                    .put("applications", snapshot.getApplications().size()));
+            for (AndroidApplication application : snapshot.getApplications())
+                writeLine(writer, new JSONObject()
+                        .put(KEY_TYPE, TYPE_APPLICATION)
+                        .put(KEY_PACKAGE, application.getPackageName())
+                        .put("name", application.getName())
+                        .put("versionCode", application.getVersionCode())
+                        .put("ignored", application.isIgnoredTemporarily())
+                        .put("warnable", new JSONArray(application.getWarnablePermissions()))
+                        .put("nonwarnable", new JSONArray(application.getNonwarnablePermissions())));
+        } catch (JSONException e) {
+            throw new IOException(e);
+        } finally {
+            writer.flush();
+        }
+        return snapshot.getApplications().size();
+    }
+
+    /**
+     * Parses ignore rules written by {@link #exportIgnoreRules(Context, OutputStream)}; lines of other
+     * types, such as the ones of a scan report, and rules of other profiles are skipped.
+     *
+     * @throws IOException if the stream can not be read or one of its lines is not a valid rule
+     */
+    public static IgnoreRules importIgnoreRules(InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        IgnoreRules ignoreRules = new IgnoreRules();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty())
+                continue;
+            try {
+                JSONObject rule = new JSONObject(line);
+                String type = rule.getString(KEY_TYPE);
+                if ((TYPE_IGNORE_APP.equals(type) || TYPE_IGNORE_APP_PERMISSION.equals(type)) && !AndroidApplication.isKeyOfCurrentProfile(rule.getString(KEY_PACKAGE))) {
+                    System.out.println("Skipping the rule of another profile on line " + lineNumber);
+                    continue;
+                }
+                if (TYPE_IGNORE_PERMISSION.equals(type))
+                    ignoreRules.ignoredPermissionsForAllApps.add(rule.getString(KEY_PERMISSION));
+                else if (TYPE_IGNORE_APP.equals(type))
+                    ignoreRules.ignoredApps.add(rule.getString(KEY_PACKAGE));
+                else if (TYPE_IGNORE_APP_PERMISSION.equals(type))
+                    ignoreRules.addIgnoredPermissionForApp(rule.getString(KEY_PACKAGE), rule.getString(KEY_PERMISSION));
+            } catch (JSONException e) {
+                throw new IOException("Invalid rule on line " + lineNumber, e);
+            }
+        }
+        return ignoreRules;
+    }
+
+    private static Writer newWriter(OutputStream outputStream) {
+        return new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    }
+
+    private static void writeLine(Writer writer, JSONObject record) throws IOException {
+        writer.write(record.toString());
+        writer.write('\n');
+    }
+
+    public static class IgnoreRules {
+        private final Set<String> ignoredPermissionsForAllApps = new HashSet<>();
+        private final Set<String> ignoredApps = new HashSet<>();
+        private final Map<String, Set<String>> ignoredPermissionsPerApp = new HashMap<>();
+        private int numberOfAppSpecificRules;
+
+        private void addIgnoredPermissionForApp(String packageName, String permission) {
+            Set<String> ignoredPermissions = ignoredPermissionsPerApp.get(packageName);
+            if (ignoredPermissions == null)
+                ignoredPermissionsPerApp.put(packageName, ignoredPermissions = new HashSet<>());
+            if (ignoredPermissions.add(permission))
+                numberOfAppSpecificRules++;
+        }
+
+        public Set<String> getIgnoredPermissionsForAllApps() {
+            return ignoredPermissionsForAllApps;
+        }
+
+        public Set<String> getIgnoredApps() {
+            return ignoredApps;
+        }
+
+        public Map<String, Set<String>> getIgnoredPermissionsPerApp() {
+            return ignoredPermissionsPerApp;
+        }
+
+        /**
+         * @return whether the permission is ignored for the application by these rules
+         */
+        public boolean isIgnored(String packageName, String permission) {
+            if (ignoredPermissionsForAllApps.contains(permission))
+                return true;
+            Set<String> ignoredPermissions = ignoredPermissionsPerApp.get(packageName);
+            return ignoredPermissions != null && ignoredPermissions.contains(permission);
+        }
+
+        public int getNumberOfRules() {
+            return ignoredPermissionsForAllApps.size() + ignoredApps.size() + numberOfAppSpecificRules;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.LauncherActivityInfo;
+import android.content.pm.LauncherApps;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.UserHandle;
+import android.os.UserManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists the other profiles with UserManager and their applications with LauncherApps, which only
+ * exposes applications with a launcher entry: the same ones the user can open from that profile.
+ */
+public class LauncherAppsProfileSource implements ProfileSource {
+    private final PackageManager pm;
+    private final UserManager userManager;
+    private final LauncherApps launcherApps;
+
+    public LauncherAppsProfileSource(Context context) {
+        pm = context.getPackageManager();
+        userManager = (UserManager) context.getSystemService(Context.USER_SERVICE);
+        launcherApps = (LauncherApps) context.getSystemService(Context.LAUNCHER_APPS_SERVICE);
+    }
+
+    @Override
+    public List<Long> getOtherProfiles() {
+        List<Long> profiles = new ArrayList<>(1);
+        for (UserHandle profile : userManager.getUserProfiles())
+            if (!profile.equals(Process.myUserHandle()))
+                profiles.add(userManager.getSerialNumberForUser(profile));
+        return profiles;
+    }
+
+    @Override
+    public List<ApplicationInfo> getApplications(long profile) {
+        UserHandle userHandle = userManager.getUserForSerialNumber(profile);
+        if (userHandle == null)
+            return null;
+        Map<String, ApplicationInfo> applications = new LinkedHashMap<>();
+        try {
+            for (LauncherActivityInfo activity : launcherApps.getActivityList(null, userHandle))
+                applications.put(activity.getApplicationInfo().packageName, activity.getApplicationInfo());
+        } catch (SecurityException e) {
+            System.out.println("Unable to list the applications of profile " + profile + " " + e);
+            return null;
+        }
+        return new ArrayList<>(applications.values());
+    }
+
+    @Override
+    public String getBadgedLabel(ApplicationInfo applicationInfo, long profile) {
+        CharSequence label = pm.getApplicationLabel(applicationInfo);
+        UserHandle userHandle = userManager.getUserForSerialNumber(profile);
+        return userHandle == null ? label.toString() : pm.getUserBadgedLabel(label, userHandle).toString();
+    }
+
+    @Override
+    public void setProfileChangeListener(final ProfileChangeListener profileChangeListener) {
+        launcherApps.registerCallback(new LauncherApps.Callback() {
+            @Override
+            public void onPackageRemoved(String packageName, UserHandle user) {
+                profileChanged(user);
+            }
+
+            @Override
+            public void onPackageAdded(String packageName, UserHandle user) {
+                profileChanged(user);
+            }
+
+            @Override
+            public void onPackageChanged(String packageName, UserHandle user) {
+                profileChanged(user);
+            }
+
+            @Override
+            public void onPackagesAvailable(String[] packageNames, UserHandle user, boolean replacing) {
+                profileChanged(user);
+            }
+
+            @Override
+            public void onPackagesUnavailable(String[] packageNames, UserHandle user, boolean replacing) {
+                profileChanged(user);
+            }
+
+            private void profileChanged(UserHandle user) {
+                if (!user.equals(Process.myUserHandle()))
+                    profileChangeListener.profilePackagesChanged(userManager.getSerialNumberForUser(user));
+            }
+        }, new Handler(Looper.getMainLooper()));
+    }
+}
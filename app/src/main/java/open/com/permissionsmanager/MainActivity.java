@@ -1,266 +1,466 @@
 package open.com.permissionsmanager;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.os.AsyncTask;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
+import android.view.ViewTreeObserver;
 import android.widget.ListView;
-import android.widget.GridView;
 import android.widget.Toast;
-import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.appcompat.widget.AppCompatTextView;
-import androidx.biometric.BiometricPrompt;
-import androidx.biometric.BiometricManager;
-import androidx.core.content.ContextCompat;
+import androidx.appcompat.widget.SearchView;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class MainActivity extends AppCompatActivity implements ApplicationDatabaseChangeListener {
     public static final String APPLICATION_PACKAGE_NAME = "APPLICATION_PACKAGE_NAME";
+    private static final int MAX_LISTED_EXPOSURES = 10;
+    private static final long SEARCH_DEBOUNCE_DELAY = 150;
+    private static final int REQUEST_CODE_EXPORT_IGNORE_RULES = 1;
+    private static final int REQUEST_CODE_EXPORT_SCAN_REPORT = 2;
+    private static final int REQUEST_CODE_IMPORT_IGNORE_RULES = 3;
+    private static final String JSON_LINES_MIME_TYPE = "application/x-ndjson";
+    private static final int NUMBER_OF_COLUMNS = 2;
+    /**
+     * Followed by the identity of the activity, so that an activity never joins the rebuild of another.
+     */
+    private static final String SECTIONS_TASK_KEY = "sections:";
     private ApplicationsDatabase applicationsDatabase;
-    private List<AndroidApplication> warnableApplications, ignoredApplications;
-    private GridView listOfApplications_gridView, ignorelistOfApplications_gridView;
-    private AppCompatTextView warnableAppsToggle;
-    private AppCompatTextView ignoredAppsToggle;
-
-
-
-
+    private TaskScope taskScope;
+    private List<AndroidApplication> applications;
+    private ListView listOfApplications_listView;
+    private SectionedApplicationsAdapter applicationsAdapter;
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private volatile String searchQuery = "";
+    private TaskHandle<ApplicationsPagingSource> sectionsTask;
+    private final Runnable searchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if(applications != null)
+                updateView();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTracer.beginSection("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 //        Executor executor = ContextCompat.getMainExecutor(this);
         applicationsDatabase = ApplicationsDatabase.getApplicationsDatabase(this);
         applicationsDatabase.addApplicationDatabaseChangeListener(this);
-        setupListViewsAndToggles();
+        taskScope = TaskScope.of(this);
+        setupListView();
         scanApplications();
         showSpinner();
+        traceFirstFrame();
+        StartupTracer.endSection();
+    }
+
+    private void traceFirstFrame() {
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                StartupTracer.onFirstFrame();
+                return true;
+            }
+        });
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        MainUtils.setAlarm(this);
-        if(MainUtils.areScanResultsOlderThan5Mins(this)){
-            scanApplications();
-            showSpinner();
-        }
-    }
-
-    private void scanApplications() {
-        if(applicationsDatabase.isScanInProgress())
-            return;
-        new Thread(){
+        //arming the alarm can wait for the scan the user is waiting for
+        AppExecutors.background().execute(StartupTracer.deferred("setAlarm", new Runnable() {
             @Override
             public void run() {
-                applicationsDatabase.updateApplicationsDatabase();
+                MainUtils.setAlarm(getApplicationContext());
+            }
+        }));
+        TaskScheduler.submit(TaskScheduler.LANE_INTERACTIVE, null, taskScope, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return AdaptiveScanScheduler.isRescanOnResumeNeeded(MainActivity.this);
             }
-        }.start();
+        }, new DatabaseCallback<Boolean>() {
+            @Override
+            public void onComplete(Boolean rescanNeeded) {
+                if(!rescanNeeded)
+                    return;
+                scanApplications();
+                showSpinner();
+            }
+        });
     }
 
-    private void setupListViewsAndToggles() {
-        listOfApplications_gridView = (GridView) findViewById(R.id.grid_apps);
-        ignorelistOfApplications_gridView = (GridView) findViewById(R.id.grid_ignored_apps);
-        warnableAppsToggle = (AppCompatTextView) findViewById(R.id.warnable_apps_toggle);
-        ignoredAppsToggle = (AppCompatTextView) findViewById(R.id.ignored_apps_toggle);
-
-        warnableAppsToggle.setOnClickListener(getToggleClickListener(listOfApplications_gridView, warnableAppsToggle));
-        ignoredAppsToggle.setOnClickListener(getToggleClickListener(ignorelistOfApplications_gridView, ignoredAppsToggle));
+    private void scanApplications() {
+        applicationsDatabase.updateApplicationsDatabaseAsync(taskScope, TaskScheduler.LANE_INTERACTIVE, null);
+    }
 
-        AdapterView.OnItemClickListener onAppClick = new AdapterView.OnItemClickListener() {
+    private void setupListView() {
+        listOfApplications_listView = (ListView) findViewById(R.id.list_apps);
+        applicationsAdapter = new SectionedApplicationsAdapter(this, NUMBER_OF_COLUMNS, new ApplicationClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+            public void applicationClicked(AndroidApplication application) {
                 Intent intentToShowApplicationDetails = new Intent(MainActivity.this, ApplicationDetails.class);
-                intentToShowApplicationDetails.putExtra(APPLICATION_PACKAGE_NAME, ((PermissionsApplicationsArrayAdapter) parent.getAdapter()).getItem(position).getPackageName());
+                intentToShowApplicationDetails.putExtra(APPLICATION_PACKAGE_NAME, application.getKey());
                 startActivity(intentToShowApplicationDetails);
             }
-        };
 
-        listOfApplications_gridView.setOnItemClickListener(onAppClick);
+            @Override
+            public void applicationLongClicked(AndroidApplication application) {
+                showIgnoreAppDialog(application);
+            }
+        });
+        listOfApplications_listView.setAdapter(applicationsAdapter);
+    }
 
-        listOfApplications_gridView.setOnItemLongClickListener(getAppLongClickListener(true));
+    private void showIgnoreAppDialog(final AndroidApplication application) {
+        final boolean isWarnableApplication = !application.isIgnoredTemporarily();
+        AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
+        builder.setTitle(isWarnableApplication ? R.string.add_to_ignore_list : R.string.stop_ignoring)
+                .setPositiveButton("Yes", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        applicationsDatabase.setAppIgnoredAsync(taskScope, application, isWarnableApplication, null);
+                    }
+                })
+                .setNegativeButton("No", null)
+                .show();
+    }
 
-        listOfApplications_gridView.setAdapter(new PermissionsApplicationsArrayAdapter(MainActivity.this, R.layout.application_info_row));
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_activity_menu, menu);
+        menu.findItem(R.id.refresh).setOnMenuItemClickListener(new MenuItem.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem item) {
+                updateApplicationsList();
+                return true;
+            }
+        });
+        MenuItem rankByRecentUsage = menu.findItem(R.id.rank_by_recent_usage);
+        rankByRecentUsage.setChecked(MainUtils.isRankingByRecentUsage(this));
+        rankByRecentUsage.setOnMenuItemClickListener(new MenuItem.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem item) {
+                item.setChecked(!item.isChecked());
+                MainUtils.setRankingByRecentUsage(MainActivity.this, item.isChecked());
+                updateApplicationsList();
+                return true;
+            }
+        });
+        MenuItem auditSystemApps = menu.findItem(R.id.audit_system_apps);
+        auditSystemApps.setChecked(MainUtils.isAuditingSystemApps(this));
+        auditSystemApps.setOnMenuItemClickListener(new MenuItem.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem item) {
+                item.setChecked(!item.isChecked());
+                MainUtils.setAuditingSystemApps(MainActivity.this, item.isChecked());
+                scanApplications();
+                showSpinner();
+                return true;
+            }
+        });
+        menu.findItem(R.id.export_ignore_rules).setOnMenuItemClickListener(new MenuItem.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem item) {
+                createDocument(REQUEST_CODE_EXPORT_IGNORE_RULES, "ignore_rules.jsonl");
+                return true;
+            }
+        });
+        menu.findItem(R.id.export_scan_report).setOnMenuItemClickListener(new MenuItem.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem item) {
+                createDocument(REQUEST_CODE_EXPORT_SCAN_REPORT, "scan_report.jsonl");
+                return true;
+            }
+        });
+        menu.findItem(R.id.import_ignore_rules).setOnMenuItemClickListener(new MenuItem.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem item) {
+                Intent intentToPickRules = new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                        .addCategory(Intent.CATEGORY_OPENABLE)
+                        .setType("*/*");
+                startActivityForResult(intentToPickRules, REQUEST_CODE_IMPORT_IGNORE_RULES);
+                return true;
+            }
+        });
+        menu.findItem(R.id.statistics).setOnMenuItemClickListener(new MenuItem.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem item) {
+                showPermissionGroupStatistics();
+                return true;
+            }
+        });
+        menu.findItem(R.id.diagnostics).setOnMenuItemClickListener(new MenuItem.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem item) {
+                showDiagnostics();
+                return true;
+            }
+        });
+        SearchView searchView = (SearchView) menu.findItem(R.id.search).getActionView();
+        searchView.setQueryHint(getString(R.string.search));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                searchApplications(query, 0);
+                return true;
+            }
 
-        ignorelistOfApplications_gridView.setOnItemClickListener(onAppClick);
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                searchApplications(newText, SEARCH_DEBOUNCE_DELAY);
+                return true;
+            }
+        });
+        return super.onCreateOptionsMenu(menu);
+    }
 
-        ignorelistOfApplications_gridView.setOnItemLongClickListener(getAppLongClickListener(false));
-        ignorelistOfApplications_gridView.setAdapter(new PermissionsApplicationsArrayAdapter(MainActivity.this, R.layout.application_info_row));
+    private void createDocument(int requestCode, String fileName) {
+        Intent intentToCreateDocument = new Intent(Intent.ACTION_CREATE_DOCUMENT)
+                .addCategory(Intent.CATEGORY_OPENABLE)
+                .setType(JSON_LINES_MIME_TYPE)
+                .putExtra(Intent.EXTRA_TITLE, fileName);
+        startActivityForResult(intentToCreateDocument, requestCode);
     }
-    @NonNull
-    private View.OnClickListener getToggleClickListener(final GridView gridView, final AppCompatTextView appCompatTextView) {
-        return new View.OnClickListener() {
+
+    @Override
+    protected void onActivityResult(final int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if(resultCode != RESULT_OK || data == null || data.getData() == null)
+            return;
+        final Uri uri = data.getData();
+        TaskScheduler.submit(TaskScheduler.LANE_INTERACTIVE, null, taskScope, new Callable<String>() {
             @Override
-            public void onClick(View v) {
-                toggleList(gridView, appCompatTextView);
+            public String call() {
+                try {
+                    if(requestCode == REQUEST_CODE_IMPORT_IGNORE_RULES)
+                        return importIgnoreRules(uri);
+                    return export(requestCode, uri);
+                } catch (IOException | SecurityException e) {
+                    System.out.println("Unable to transfer ignore rules " + e);
+                    return getString(requestCode == REQUEST_CODE_IMPORT_IGNORE_RULES ? R.string.import_failed : R.string.export_failed);
+                }
             }
-        };
-    }
-    @NonNull
-    private AdapterView.OnItemLongClickListener getAppLongClickListener(final boolean isWarnableAppsList) {
-        return new AdapterView.OnItemLongClickListener() {
+        }, new DatabaseCallback<String>() {
             @Override
-            public boolean onItemLongClick(final AdapterView<?> parent, View view, final int position, long id) {
-                AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
-                builder.setTitle(isWarnableAppsList ? R.string.add_to_ignore_list : R.string.stop_ignoring)
-                        .setPositiveButton("Yes", new DialogInterface.OnClickListener() {
-                            @Override
-                            public void onClick(DialogInterface dialog, int which) {
-                                if(isWarnableAppsList)
-                                    applicationsDatabase.addAppToIgnoreList(((PermissionsApplicationsArrayAdapter)parent.getAdapter()).getItem(position));
-                                else
-                                    applicationsDatabase.removeAppFromIgnoreList(((PermissionsApplicationsArrayAdapter)parent.getAdapter()).getItem(position));
-                            }
-                        })
-                        .setNegativeButton("No", null)
-                        .show();
-                return true;
+            public void onComplete(String result) {
+                Toast.makeText(MainActivity.this, result, Toast.LENGTH_SHORT).show();
             }
-        };
+        });
     }
 
-    private void toggleList(GridView gridView, AppCompatTextView toggle) {
-        if(gridView.getVisibility() == View.VISIBLE){
-            gridView.setVisibility(View.GONE);
-            toggle.setCompoundDrawablesWithIntrinsicBounds(null, null, ContextCompat.getDrawable(MainActivity.this, R.drawable.ic_keyboard_arrow_down_24dp), null);
+    private String export(int requestCode, Uri uri) throws IOException {
+        OutputStream outputStream = getContentResolver().openOutputStream(uri, "wt");
+        if(outputStream == null)
+            throw new IOException("Unable to open " + uri);
+        try {
+            if(requestCode == REQUEST_CODE_EXPORT_SCAN_REPORT)
+                return getString(R.string.scan_report_exported, IgnoreRulesTransfer.exportScanReport(this, outputStream));
+            return getString(R.string.ignore_rules_exported, IgnoreRulesTransfer.exportIgnoreRules(this, outputStream));
+        } finally {
+            outputStream.close();
         }
-        else{
-            gridView.setVisibility(View.VISIBLE);
-            toggle.setCompoundDrawablesWithIntrinsicBounds(null, null, ContextCompat.getDrawable(MainActivity.this, R.drawable.ic_keyboard_arrow_up_24dp), null);
+    }
+
+    private String importIgnoreRules(Uri uri) throws IOException {
+        InputStream inputStream = getContentResolver().openInputStream(uri);
+        if(inputStream == null)
+            throw new IOException("Unable to open " + uri);
+        IgnoreRulesTransfer.IgnoreRules ignoreRules;
+        try {
+            ignoreRules = IgnoreRulesTransfer.importIgnoreRules(inputStream);
+        } finally {
+            inputStream.close();
         }
+        if(!applicationsDatabase.applyIgnoreRules(ignoreRules))
+            throw new IOException("Unable to persist the imported rules");
+        return getString(R.string.ignore_rules_imported, ignoreRules.getNumberOfRules());
     }
-    @Override
-    public boolean onCreateOptionsMenu(Menu menu) {
-        getMenuInflater().inflate(R.menu.main_activity_menu, menu);
-        menu.findItem(R.id.refresh).setOnMenuItemClickListener(new MenuItem.OnMenuItemClickListener() {
+
+    private void showPermissionGroupStatistics() {
+        TaskScheduler.submit(TaskScheduler.LANE_INTERACTIVE, null, taskScope, new Callable<String>() {
             @Override
-            public boolean onMenuItemClick(MenuItem item) {
-                updateApplicationsList();
-                return true;
+            public String call() {
+                return getPermissionGroupStatistics();
+            }
+        }, new DatabaseCallback<String>() {
+            @Override
+            public void onComplete(String statistics) {
+                if(isFinishing())
+                    return;
+                new AlertDialog.Builder(MainActivity.this)
+                        .setTitle(R.string.statistics)
+                        .setMessage(statistics)
+                        .setPositiveButton(android.R.string.ok, null)
+                        .show();
             }
         });
-        return super.onCreateOptionsMenu(menu);
     }
 
-    private void updateApplicationsList() {
-        showSpinner();
-        new AsyncTask<Void, Void, Void>(){
+    private String getPermissionGroupStatistics() {
+        PermissionGroupStatistics statistics = applicationsDatabase.getPermissionGroupStatistics();
+        StringBuilder summary = new StringBuilder()
+                .append(getString(R.string.statistics_applications_with_cautions, statistics.getNumberOfApplications()))
+                .append("\n\n")
+                .append(getString(R.string.statistics_most_exposed_groups));
+        for(String group : statistics.getMostExposedGroups())
+            summary.append('\n').append(getString(R.string.statistics_count, PermissionGroupLabels.getLabel(this, group), statistics.getNumberOfApplicationsIn(group)));
+        summary.append("\n\n").append(getString(R.string.statistics_group_combinations));
+        for(String combination : statistics.getCombinationsByDescendingCount())
+            summary.append('\n').append(getString(R.string.statistics_count, PermissionGroupLabels.getCombinationLabel(this, combination), statistics.getApplicationsPerCombination().get(combination)));
+        List<CustomPermissionGraph.Exposure> exposures = CustomPermissionGraph.getCustomPermissionGraph(this).getExposures();
+        summary.append("\n\n").append(getString(R.string.statistics_custom_permission_exposures, exposures.size()));
+        for(CustomPermissionGraph.Exposure exposure : exposures.subList(0, Math.min(MAX_LISTED_EXPOSURES, exposures.size())))
+            summary.append('\n').append(getString(R.string.statistics_custom_permission_exposure, exposure.getRequestingPackage(), exposure.getPermission(), exposure.getDefiningPackage()));
+        return summary.toString();
+    }
 
+    private void showDiagnostics() {
+        TaskScheduler.submit(TaskScheduler.LANE_INTERACTIVE, null, taskScope, new Callable<String>() {
+            @Override
+            public String call() {
+                return getDiagnostics();
+            }
+        }, new DatabaseCallback<String>() {
             @Override
-            protected Void doInBackground(Void... params) {
-                applicationsDatabase.updateApplicationsDatabase();
-                return null;
+            public void onComplete(String diagnostics) {
+                if(isFinishing())
+                    return;
+                new AlertDialog.Builder(MainActivity.this)
+                        .setTitle(R.string.diagnostics)
+                        .setMessage(diagnostics)
+                        .setPositiveButton(android.R.string.ok, null)
+                        .show();
             }
-        }.execute();
+        });
+    }
+
+    private String getDiagnostics() {
+        StringBuilder diagnostics = new StringBuilder()
+                .append(getString(R.string.diagnostics_last_wakeup_duration, MainUtils.getLastWakeupDuration(this)))
+                .append('\n')
+                .append(getString(R.string.diagnostics_scan_interval, AdaptiveScanScheduler.getAlarmInterval(this) / MainUtils.ONE_MINUTE))
+                .append('\n')
+                .append(getString(R.string.diagnostics_usage_pass, applicationsDatabase.getPermissionUsageTracker().getLastPassQueries(), applicationsDatabase.getPermissionUsageTracker().getLastPassDuration()))
+                .append('\n')
+                .append(getPermissionPolicyStatus())
+                .append('\n')
+                .append(TextUtils.join("\n", StartupTracer.getDiagnostics(this)))
+                .append("\n\n")
+                .append(getString(R.string.diagnostics_scan_schedule_decisions));
+        for(String decision : AdaptiveScanScheduler.getRecentDecisions(this))
+            diagnostics.append('\n').append(decision);
+        return diagnostics.toString();
+    }
+
+    private String getPermissionPolicyStatus() {
+        PermissionPolicyStore permissionPolicyStore = PermissionPolicyStore.getPermissionPolicyStore(this);
+        String lastError = permissionPolicyStore.getLastError();
+        if(lastError != null)
+            return getString(R.string.diagnostics_policy_invalid, lastError);
+        return getString(R.string.diagnostics_policy_rules, permissionPolicyStore.getPolicy().getNumberOfRules());
+    }
+
+    private void searchApplications(String query, long delay) {
+        searchQuery = query == null ? "" : query;
+        searchHandler.removeCallbacks(searchRunnable);
+        searchHandler.postDelayed(searchRunnable, delay);
+    }
+
+    private void updateApplicationsList() {
+        showSpinner();
+        applicationsDatabase.updateApplicationsDatabaseAsync(taskScope, TaskScheduler.LANE_INTERACTIVE, null);
     }
     private void showSpinner() {
         findViewById(R.id.progressbar).setVisibility(View.VISIBLE);
-        warnableAppsToggle.setVisibility(View.GONE);
-        ignoredAppsToggle.setVisibility(View.GONE);
-        listOfApplications_gridView.setVisibility(View.GONE);
-        ignorelistOfApplications_gridView.setVisibility(View.GONE);
+        listOfApplications_listView.setVisibility(View.GONE);
     }
 
     private void hideSpinner() {
         findViewById(R.id.progressbar).setVisibility(View.GONE);
-        warnableAppsToggle.setVisibility(View.VISIBLE);
-        ignoredAppsToggle.setVisibility(View.VISIBLE);
-        listOfApplications_gridView.setVisibility(View.VISIBLE);
-        ignorelistOfApplications_gridView.setVisibility(View.VISIBLE);
-
-
+        listOfApplications_listView.setVisibility(View.VISIBLE);
     }
 
     @Override
     protected void onDestroy() {
         applicationsDatabase.removeApplicationDatabaseChangeListener(this);
+        searchHandler.removeCallbacks(searchRunnable);
         super.onDestroy();
     }
 
     @Override
-    public void applicationPermissionsUpdated(final AndroidApplication androidApplication) {
-        final PermissionsApplicationsArrayAdapter warnableApplicationsListAdapter = (PermissionsApplicationsArrayAdapter) listOfApplications_gridView.getAdapter();
-        final PermissionsApplicationsArrayAdapter ignoredApplicationsListAdapter = (PermissionsApplicationsArrayAdapter) ignorelistOfApplications_gridView.getAdapter();
-        if(warnableApplicationsListAdapter == null && ignoredApplicationsListAdapter == null)
+    public void applicationPermissionsUpdated(AndroidApplication androidApplication) {
+        if(applications == null)
             return;
-        if(androidApplication.isIgnoredTemporarily())
-            updateAdapterWithNewApplication(androidApplication, ignoredApplicationsListAdapter);
-        else
-            updateAdapterWithNewApplication(androidApplication, warnableApplicationsListAdapter);
-    }
-    private void updateAdapterWithNewApplication(final AndroidApplication androidApplication, final PermissionsApplicationsArrayAdapter listAdapter) {
-        final int indexOfApplication = listAdapter.getPosition(androidApplication);
+        int indexOfApplication = applications.indexOf(androidApplication);
         if(indexOfApplication == -1)
             return;
-        warnableApplications.remove(indexOfApplication);
-        warnableApplications.add(indexOfApplication, androidApplication);
-        this.runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                listAdapter.replaceItemAt(indexOfApplication, androidApplication);
-                listAdapter.notifyDataSetChanged();
-            }
-        });
+        applications.set(indexOfApplication, androidApplication);
+        updateView();
     }
 
+    /**
+     * Searches, splits and sorts the applications off the main thread, cancelling a rebuild it
+     * supersedes. They are built on the view lane, which runs no scans, so a rebuild for the search
+     * never queues behind one.
+     */
     private void updateView() {
-        this.runOnUiThread(new Runnable() {
+        final List<AndroidApplication> applicationsToList = new ArrayList<>(applications);
+        final String query = searchQuery;
+        final boolean rankByRecentUsage = MainUtils.isRankingByRecentUsage(this);
+        if (sectionsTask != null)
+            sectionsTask.cancel();
+        sectionsTask = TaskScheduler.submit(TaskScheduler.LANE_VIEW, SECTIONS_TASK_KEY + System.identityHashCode(this), taskScope, new Callable<ApplicationsPagingSource>() {
             @Override
-            public void run() {
-                showSpinner();
-                PermissionsApplicationsArrayAdapter warnableAppsAdapter = (PermissionsApplicationsArrayAdapter) listOfApplications_gridView.getAdapter();
-                PermissionsApplicationsArrayAdapter ignoredAppsAdapter = (PermissionsApplicationsArrayAdapter) ignorelistOfApplications_gridView.getAdapter();
-                updateListWithApplications(warnableAppsAdapter, warnableApplications);
-                updateListWithApplications(ignoredAppsAdapter, ignoredApplications);
-
+            public ApplicationsPagingSource call() {
+                return ApplicationsPagingSource.of(applicationsToList, applicationsDatabase.searchApplications(query), rankByRecentUsage);
+            }
+        }, new DatabaseCallback<ApplicationsPagingSource>() {
+            @Override
+            public void onComplete(ApplicationsPagingSource pagingSource) {
+                applicationsAdapter.setPagingSource(pagingSource);
                 hideSpinner();
+                StartupTracer.onContentShown(MainActivity.this);
             }
         });
     }
-    private void updateListWithApplications(PermissionsApplicationsArrayAdapter adapter, List<AndroidApplication> androidApplications) {
-        adapter.addAllApplications(androidApplications);
-        adapter.notifyDataSetChanged();
-    }
+
     @Override
     public void applicationsDatabaseUpdated(List<AndroidApplication> androidApplications) {
-        PermissionsApplicationsArrayAdapter warnableAppsListAdapter = (PermissionsApplicationsArrayAdapter) listOfApplications_gridView.getAdapter();
-        PermissionsApplicationsArrayAdapter ignoredAppsListAdapter = (PermissionsApplicationsArrayAdapter) listOfApplications_gridView.getAdapter();
-        if(warnableAppsListAdapter == null && ignoredAppsListAdapter == null)
-            return;
-        MainUtils.sort(androidApplications);
-        warnableApplications = new ArrayList<>();
-        ignoredApplications = new ArrayList<>();
-        for(AndroidApplication application: androidApplications){
-            if(application.isIgnoredTemporarily())
-                ignoredApplications.add(application);
-            else
-                warnableApplications.add(application);
-        }
+        applications = androidApplications;
         updateView();
     }
     @Override
-    public void applicationAddedToIgnoreList(final AndroidApplication application) {
-        warnableApplications.remove(application);
-        ignoredApplications.add(application);
+    public void applicationRefreshed(String packageName, AndroidApplication application) {
+        if(applications == null)
+            return; //the first scan has not completed yet and will include the application
+        applications.remove(new AndroidApplication(packageName));
+        if(application != null)
+            applications.add(application);
         updateView();
     }
     @Override
-    public void applicationRemovedFromIgnoredList(final AndroidApplication application) {
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                warnableApplications.add(application);
-                ignoredApplications.remove(application);
-                updateView();
-            }
-        });
+    public void applicationAddedToIgnoreList(AndroidApplication application) {
+        applicationPermissionsUpdated(application);
+    }
+    @Override
+    public void applicationRemovedFromIgnoredList(AndroidApplication application) {
+        applicationPermissionsUpdated(application);
     }
 }
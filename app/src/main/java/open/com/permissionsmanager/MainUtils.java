@@ -10,15 +10,21 @@ import android.content.SharedPreferences;
 import android.media.RingtoneManager;
 import android.os.SystemClock;
 
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 
 import static android.app.PendingIntent.FLAG_IMMUTABLE;
 import static android.app.PendingIntent.FLAG_UPDATE_CURRENT;
+import static open.com.permissionsmanager.ApplicationsDatabase.SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS;
 import static open.com.permissionsmanager.ValidatePermissionsBroadcastReceiver.GENERIC_REQUEST_CODE;
+import static open.com.permissionsmanager.WarnableGrantsFingerprint.SHARED_PREF_KEY_NOTIFIED_WARNABLE_GRANTS;
 
 import androidx.core.app.NotificationCompat;
 
@@ -30,12 +36,28 @@ public class MainUtils {
     public static final String SHARED_PREFERENCES_KEY_IGNORED_APPLICATIONS_WARN_TIMESTAMP = "SHARED_PREFERENCES_KEY_IGNORED_APPLICATIONS_WARN_TIMESTAMP";
     public static final String SHARED_PREFERENCES_KEY_LAST_ALARM_TIME = "SHARED_PREFERENCES_KEY_LAST_ALARM_TIME";
     public static final String SHARED_PREF_KEY_LAST_SCAN_TIME = "LAST_SCAN_TIME";
+    public static final String SHARED_PREF_KEY_LAST_WAKEUP_DURATION = "LAST_WAKEUP_DURATION";
+    public static final String SHARED_PREF_KEY_RANK_BY_RECENT_USAGE = "RANK_BY_RECENT_USAGE";
+    public static final String SHARED_PREF_KEY_AUDIT_SYSTEM_APPS = "AUDIT_SYSTEM_APPS";
     public static final int ONE_MINUTE = 60 * 1000;
     public static final int FIVE_MINUTES = 1 * ONE_MINUTE;
     public static final long ALARM_INTERVAL = ONE_MINUTE * 30;
+    public static final String ANDROID_PERMISSION_NAMESPACE = "android.permission.";
 
+    private static volatile boolean appIgnoreListsMigrated;
+
+    /**
+     * The ignore lists of applications stored by earlier versions are moved behind their prefix the
+     * first time the preferences are used, so that nothing reads them under their old keys.
+     */
     public static SharedPreferences getSharedPreferences(Context context) {
-        return context.getSharedPreferences(context.getString(R.string.permissions_manager), context.MODE_PRIVATE);
+        SharedPreferences sharedPreferences = context.getSharedPreferences(context.getString(R.string.permissions_manager), context.MODE_PRIVATE);
+        if (!appIgnoreListsMigrated) {
+            AppIgnoreLists.migrate(sharedPreferences, new HashSet<>(Arrays.asList(context.getString(R.string.allowed_permissions),
+                    SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, SHARED_PREF_KEY_NOTIFIED_WARNABLE_GRANTS)));
+            appIgnoreListsMigrated = true;
+        }
+        return sharedPreferences;
     }
 
     private static Intent getIntentToBroadcastValidatePermissions(Context context){
@@ -51,7 +73,7 @@ public class MainUtils {
         AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
         PendingIntent pendingIntent = PendingIntent.getBroadcast(context, GENERIC_REQUEST_CODE, getIntentToBroadcastValidatePermissions(context), FLAG_UPDATE_CURRENT| FLAG_IMMUTABLE);
         alarmManager.cancel(pendingIntent);
-        alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, SystemClock.elapsedRealtime() + ALARM_INTERVAL, pendingIntent);
+        alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, SystemClock.elapsedRealtime() + AdaptiveScanScheduler.getAlarmInterval(context), pendingIntent);
 
     }
 
@@ -64,6 +86,49 @@ public class MainUtils {
         });
     }
 
+    public static void sortByRecentUsage(List<AndroidApplication> applications) {
+        Collections.sort(applications, new Comparator<AndroidApplication>() {
+            @Override
+            public int compare(AndroidApplication app1, AndroidApplication app2) {
+                int byUsage = Long.compare(app2.getLastWarnablePermissionAccessTime(), app1.getLastWarnablePermissionAccessTime());
+                return byUsage != 0 ? byUsage : app2.getWarnablePermissions().size() - app1.getWarnablePermissions().size();
+            }
+        });
+    }
+
+    public static boolean isRankingByRecentUsage(Context context) {
+        return getSharedPreferences(context).getBoolean(SHARED_PREF_KEY_RANK_BY_RECENT_USAGE, false);
+    }
+
+    public static void setRankingByRecentUsage(Context context, boolean rankByRecentUsage) {
+        getSharedPreferences(context)
+                .edit()
+                .putBoolean(SHARED_PREF_KEY_RANK_BY_RECENT_USAGE, rankByRecentUsage)
+                .apply();
+    }
+
+    public static boolean isAuditingSystemApps(Context context) {
+        return getSharedPreferences(context).getBoolean(SHARED_PREF_KEY_AUDIT_SYSTEM_APPS, false);
+    }
+
+    public static void setAuditingSystemApps(Context context, boolean auditSystemApps) {
+        getSharedPreferences(context)
+                .edit()
+                .putBoolean(SHARED_PREF_KEY_AUDIT_SYSTEM_APPS, auditSystemApps)
+                .apply();
+    }
+
+    public static String getNameSpaceTruncatedPermission(String permission) {
+        return permission.replace(ANDROID_PERMISSION_NAMESPACE, "");
+    }
+
+    public static List<String> getNameSpaceTruncatedPermissions(List<String> permissions) {
+        List<String> truncatedPermissions = new ArrayList<>(permissions.size());
+        for(String permission : permissions)
+            truncatedPermissions.add(getNameSpaceTruncatedPermission(permission));
+        return truncatedPermissions;
+    }
+
     public static long getLastIgnoredApplicationsWarningNotifiedInstance(Context context){
         return getSharedPreferences(context)
                 .getLong(SHARED_PREFERENCES_KEY_IGNORED_APPLICATIONS_WARN_TIMESTAMP, 0);
@@ -94,9 +159,17 @@ public class MainUtils {
     }
 
     public static boolean areScanResultsOlderThan5Mins(Context context) {
+        return areScanResultsOlderThan(context, FIVE_MINUTES);
+    }
+
+    public static boolean areScanResultsOlderThan(Context context, long age) {
         Date last_scan_time = new Date(getSharedPreferences(context).getLong(SHARED_PREF_KEY_LAST_SCAN_TIME, 0));
-        Date fiveMinsAgo = new Date(System.currentTimeMillis() - FIVE_MINUTES);
-        return fiveMinsAgo.after(last_scan_time);
+        Date ageAgo = new Date(System.currentTimeMillis() - age);
+        return ageAgo.after(last_scan_time);
+    }
+
+    public static String formatTimestamp(long timestamp) {
+        return DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT).format(new Date(timestamp));
     }
 
     public static void updateLastScanTime(Context context) {
@@ -106,6 +179,17 @@ public class MainUtils {
                 .apply();
     }
 
+    public static long getLastWakeupDuration(Context context) {
+        return getSharedPreferences(context).getLong(SHARED_PREF_KEY_LAST_WAKEUP_DURATION, -1);
+    }
+
+    public static void updateLastWakeupDuration(Context context, long duration) {
+        getSharedPreferences(context)
+                .edit()
+                .putLong(SHARED_PREF_KEY_LAST_WAKEUP_DURATION, duration)
+                .apply();
+    }
+
     public static void notify(String title, String content, int notificationCode, Context context) {
         final NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
         Notification notification = new NotificationCompat.Builder(context, "6684")
@@ -0,0 +1,130 @@
+package open.com.permissionsmanager;
+
+import android.app.NotificationManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import static open.com.permissionsmanager.ApplicationsDatabase.SHARED_PREF_KEY_DUMMY;
+import static open.com.permissionsmanager.ApplicationsDatabase.SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS;
+import static open.com.permissionsmanager.ValidatePermissionsBroadcastReceiver.FOUR_HOURLY_SCAN_RESULT_NOTIICATION_CODE;
+
+/**
+ * Handles the actions of the notifications about new potentially harmful permissions. The ignore rule
+ * is written to the preferences and applied to the persisted snapshot, and to the database if this
+ * process already has one, so triaging a notification neither starts the UI nor queries the
+ * package manager.
+ */
+public class NotificationActionReceiver extends BroadcastReceiver {
+    public static final String ACTION_IGNORE_APP = "open.com.permissionsmanager.action.IGNORE_APP";
+    public static final String ACTION_IGNORE_PERMISSIONS = "open.com.permissionsmanager.action.IGNORE_PERMISSIONS";
+    private static final String EXTRA_PERMISSIONS = "permissions";
+
+    /**
+     * The package is the data of the intent, so the pending intents of different applications are distinct.
+     */
+    public static Intent newIntent(Context context, String action, String packageName, List<String> permissions) {
+        return new Intent(context, NotificationActionReceiver.class)
+                .setAction(action)
+                .setData(Uri.fromParts("package", packageName, null))
+                .putExtra(EXTRA_PERMISSIONS, permissions.toArray(new String[0]));
+    }
+
+    @Override
+    public void onReceive(final Context context, Intent intent) {
+        final String action = intent.getAction();
+        if (!ACTION_IGNORE_APP.equals(action) && !ACTION_IGNORE_PERMISSIONS.equals(action)) return;
+        if (intent.getData() == null) return;
+        final String packageName = intent.getData().getSchemeSpecificPart();
+        String[] permissionsExtra = intent.getStringArrayExtra(EXTRA_PERMISSIONS);
+        final List<String> permissions = permissionsExtra == null ? Collections.<String>emptyList() : Arrays.asList(permissionsExtra);
+        final PendingResult pendingResult = goAsync();
+        TaskScheduler.submit(TaskScheduler.LANE_INTERACTIVE, null, null, new Callable<Void>() {
+            @Override
+            public Void call() {
+                try {
+                    if (ACTION_IGNORE_APP.equals(action))
+                        ignoreApp(context, packageName);
+                    else
+                        ignorePermissions(context, packageName, permissions);
+                    NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+                    notificationManager.cancel(packageName, FOUR_HOURLY_SCAN_RESULT_NOTIICATION_CODE);
+                } finally {
+                    pendingResult.finish();
+                }
+                return null;
+            }
+        }, null);
+    }
+
+    private static void ignoreApp(Context context, String packageName) {
+        ApplicationsDatabase applicationsDatabase = ApplicationsDatabase.getApplicationsDatabaseIfCreated();
+        AndroidApplication application = applicationsDatabase == null ? null : applicationsDatabase.getApplication(packageName);
+        if (application != null)
+            applicationsDatabase.addAppToIgnoreList(application);
+        else
+            addToStringSet(MainUtils.getSharedPreferences(context), SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, Collections.singleton(packageName));
+        updateSnapshot(context, packageName, true, Collections.<String>emptyList());
+    }
+
+    private static void ignorePermissions(Context context, String packageName, List<String> permissions) {
+        ApplicationsDatabase applicationsDatabase = ApplicationsDatabase.getApplicationsDatabaseIfCreated();
+        AndroidApplication application = applicationsDatabase == null ? null : applicationsDatabase.getApplication(packageName);
+        if (application != null) {
+            for (String permission : permissions)
+                applicationsDatabase.ignorePermissionForSpecificApp(packageName, permission);
+        } else
+            addToStringSet(MainUtils.getSharedPreferences(context), AppIgnoreLists.getPreferenceKey(packageName), permissions);
+        updateSnapshot(context, packageName, false, permissions);
+    }
+
+    /**
+     * Committed rather than applied, like the database commits its rules: the process may be gone as
+     * soon as the broadcast is finished.
+     */
+    private static void addToStringSet(SharedPreferences preferences, String key, Collection<String> values) {
+        Set<String> set = new HashSet<>(preferences.getStringSet(key, new HashSet<String>(0)));
+        set.addAll(values);
+        preferences.edit()
+                .putInt(SHARED_PREF_KEY_DUMMY, new Random().nextInt())
+                .putStringSet(key, set)
+                .commit();
+    }
+
+    private static void updateSnapshot(Context context, String packageName, boolean ignoreApp, List<String> ignoredPermissions) {
+        ScanSnapshotStore scanSnapshotStore = ScanSnapshotStore.getScanSnapshotStore(context);
+        List<AndroidApplication> applications = new ArrayList<>(scanSnapshotStore.load().getApplications());
+        int indexOfApplication = applications.indexOf(new AndroidApplication(packageName));
+        if (indexOfApplication == -1)
+            return;
+        AndroidApplication application = applications.get(indexOfApplication);
+        List<String> warnablePermissions = new ArrayList<>(application.getWarnablePermissions());
+        List<String> nonwarnablePermissions = new ArrayList<>(application.getNonwarnablePermissions());
+        for (String permission : ignoredPermissions)
+            if (warnablePermissions.remove(permission))
+                nonwarnablePermissions.add(permission);
+        applications.set(indexOfApplication, new AndroidApplication.Builder(packageName)
+                .withIgnoredTemporarily(ignoreApp || application.isIgnoredTemporarily())
+                .withName(application.getName())
+                .withWarnablePermissions(warnablePermissions)
+                .withNonWarnablePermissions(nonwarnablePermissions)
+                .withVersionCode(application.getVersionCode())
+                .withUid(application.getUid())
+                .withPermissionLastAccessTimes(application.getPermissionLastAccessTimes())
+                .withDangerousThreshold(application.getDangerousThreshold())
+                .build());
+        scanSnapshotStore.save(applications);
+    }
+}
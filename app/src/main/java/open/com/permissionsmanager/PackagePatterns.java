@@ -0,0 +1,58 @@
+package open.com.permissionsmanager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Package names and prefixes compiled into hash sets: a pattern either names a package or ends with
+ * {@code *} to match every package starting with what precedes it. Matching a package costs one
+ * lookup per character of its name, however many patterns there are.
+ */
+public class PackagePatterns {
+    private static final String WILDCARD = "*";
+
+    private final Set<String> packages = new HashSet<>();
+    private final Set<String> prefixes = new HashSet<>();
+
+    public PackagePatterns(Collection<String> patterns) {
+        for (String pattern : patterns) {
+            if (pattern.endsWith(WILDCARD))
+                prefixes.add(pattern.substring(0, pattern.length() - WILDCARD.length()));
+            else
+                packages.add(pattern);
+        }
+    }
+
+    public boolean isEmpty() {
+        return packages.isEmpty() && prefixes.isEmpty();
+    }
+
+    public boolean matches(String packageName) {
+        if (packages.contains(packageName))
+            return true;
+        if (prefixes.isEmpty())
+            return false;
+        for (int end = 0; end <= packageName.length(); end++)
+            if (prefixes.contains(packageName.substring(0, end)))
+                return true;
+        return false;
+    }
+
+    /**
+     * @return the patterns matching the package, as they were given, empty if none does
+     */
+    public List<String> getMatchingPatterns(String packageName) {
+        List<String> matchingPatterns = new ArrayList<>(1);
+        for (int end = 0; end <= packageName.length() && !prefixes.isEmpty(); end++) {
+            String prefix = packageName.substring(0, end);
+            if (prefixes.contains(prefix))
+                matchingPatterns.add(prefix + WILDCARD);
+        }
+        if (packages.contains(packageName))
+            matchingPatterns.add(packageName);
+        return matchingPatterns;
+    }
+}
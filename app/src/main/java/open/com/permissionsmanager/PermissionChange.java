@@ -0,0 +1,47 @@
+package open.com.permissionsmanager;
+
+public class PermissionChange {
+    public static final byte TYPE_PERMISSION_GRANTED = 1;
+    public static final byte TYPE_PERMISSION_REVOKED = 2;
+    public static final byte TYPE_APP_INSTALLED = 3;
+    public static final byte TYPE_APP_REMOVED = 4;
+    public static final byte TYPE_APP_UPDATED = 5;
+
+    private final long timestamp;
+    private final byte type;
+    private final String packageName;
+    private final String permission;
+    private final long versionCode;
+
+    public PermissionChange(long timestamp, byte type, String packageName, String permission, long versionCode) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.packageName = packageName;
+        this.permission = permission;
+        this.versionCode = versionCode;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getPermission() {
+        return permission;
+    }
+
+    public long getVersionCode() {
+        return versionCode;
+    }
+
+    public boolean isPermissionChange() {
+        return type == TYPE_PERMISSION_GRANTED || type == TYPE_PERMISSION_REVOKED;
+    }
+}
@@ -0,0 +1,441 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only journal of the changes observed between consecutive scans. Every scan appends one
+ * batch holding only the deltas, and a side index of (timestamp, offset) pairs lets readers seek to
+ * the batches of a time range without replaying the whole file. The very first scan and every
+ * compaction write a baseline batch with the full state, which is not reported as history.
+ */
+public class PermissionChangeJournal {
+    private static final String JOURNAL_FILE_NAME = "permission_changes.journal";
+    private static final String INDEX_FILE_NAME = "permission_changes.index";
+    private static final byte BATCH_SCAN = 1;
+    private static final byte BATCH_BASELINE = 2;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    static final long MAX_JOURNAL_SIZE = 512 * 1024;
+    static final long RETENTION = 365L * 24 * 60 * MainUtils.ONE_MINUTE;
+
+    private static PermissionChangeJournal permissionChangeJournal;
+    private final File journalFile;
+    private final File indexFile;
+    private Map<String, PackageState> state;
+
+    PermissionChangeJournal(File directory) {
+        journalFile = new File(directory, JOURNAL_FILE_NAME);
+        indexFile = new File(directory, INDEX_FILE_NAME);
+    }
+
+    public synchronized static PermissionChangeJournal getPermissionChangeJournal(Context context) {
+        if (permissionChangeJournal == null)
+            permissionChangeJournal = new PermissionChangeJournal(context.getApplicationContext().getFilesDir());
+        return permissionChangeJournal;
+    }
+
+    /**
+     * Diffs the scanned packages against the journaled state and appends the deltas.
+     *
+     * @return the changes since the previous scan, empty if nothing changed or nothing was journaled before
+     */
+    public synchronized List<PermissionChange> record(Map<String, PackageState> scannedPackages) {
+        return record(scannedPackages, System.currentTimeMillis());
+    }
+
+    synchronized List<PermissionChange> record(Map<String, PackageState> scannedPackages, long now) {
+        try {
+            loadState();
+            if (state.isEmpty() && journalFile.length() == 0) {
+                appendBatch(BATCH_BASELINE, now, getBaselineChanges(now, scannedPackages));
+                state = copyOf(scannedPackages);
+                return new ArrayList<>(0);
+            }
+            List<PermissionChange> changes = getChanges(now, state, scannedPackages);
+            if (changes.isEmpty())
+                return changes;
+            appendBatch(BATCH_SCAN, now, changes);
+            state = copyOf(scannedPackages);
+            long[] index = readIndex();
+            if (journalFile.length() > getBaselineSize(index) + MAX_JOURNAL_SIZE || getOldestBatchTimestamp(index) < now - RETENTION)
+                compact(now, index);
+            return changes;
+        } catch (IOException e) {
+            System.out.println("Unable to journal permission changes " + e);
+            state = null;
+            return new ArrayList<>(0);
+        }
+    }
+
+    /**
+     * Journals the changes of a single package, keeping the journaled state of every other package.
+     *
+     * @param packageState the state of the package, null if it is no longer installed
+     * @return the changes of the package since it was last journaled
+     */
+    public synchronized List<PermissionChange> recordPackage(String packageName, PackageState packageState) {
+        try {
+            loadState();
+        } catch (IOException e) {
+            System.out.println("Unable to journal permission changes " + e);
+            state = null;
+            return new ArrayList<>(0);
+        }
+        if (state.isEmpty() && journalFile.length() == 0)
+            return new ArrayList<>(0); //the baseline has to come from a full scan
+        Map<String, PackageState> scannedPackages = copyOf(state);
+        if (packageState == null)
+            scannedPackages.remove(packageName);
+        else
+            scannedPackages.put(packageName, packageState);
+        return record(scannedPackages);
+    }
+
+    /**
+     * @return the journaled changes of the given package that happened at or after {@code since}, oldest first
+     */
+    public synchronized List<PermissionChange> getChanges(String packageName, long since) {
+        List<PermissionChange> changes = new ArrayList<>();
+        if (!journalFile.exists())
+            return changes;
+        DataInputStream journal = null;
+        try {
+            long offset = findFirstBatchOffset(since);
+            if (offset < 0)
+                return changes;
+            journal = openJournalAt(offset);
+            while (true) {
+                byte batchKind = journal.readByte();
+                long timestamp = journal.readLong();
+                int numberOfChanges = journal.readInt();
+                for (int i = 0; i < numberOfChanges; i++) {
+                    PermissionChange change = readChange(journal, timestamp);
+                    if (batchKind == BATCH_SCAN && timestamp >= since && change.getPackageName().equals(packageName))
+                        changes.add(change);
+                }
+            }
+        } catch (EOFException e) {
+            return changes;
+        } catch (IOException e) {
+            System.out.println("Unable to read permission changes " + e);
+            return changes;
+        } finally {
+            closeQuietly(journal);
+        }
+    }
+
+    private long findFirstBatchOffset(long since) throws IOException {
+        long[] index = readIndex();
+        int numberOfBatches = index.length / 2;
+        int low = 0, high = numberOfBatches;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (index[2 * mid] < since)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low == numberOfBatches ? -1 : index[2 * low + 1];
+    }
+
+    private long[] readIndex() throws IOException {
+        if (!indexFile.exists())
+            rebuildIndex();
+        int numberOfEntries = (int) (indexFile.length() / INDEX_ENTRY_SIZE);
+        long[] index = new long[numberOfEntries * 2];
+        DataInputStream indexStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            for (int i = 0; i < index.length; i++)
+                index[i] = indexStream.readLong();
+        } finally {
+            closeQuietly(indexStream);
+        }
+        return index;
+    }
+
+    private long getBaselineSize(long[] index) {
+        return index.length >= 4 ? index[3] : journalFile.length();
+    }
+
+    /**
+     * @return the timestamp of the oldest batch after the baseline; the baseline itself carries the
+     * time of the last batch folded into it, which stays out of the retention window for good
+     */
+    private static long getOldestBatchTimestamp(long[] index) {
+        return index.length >= 4 ? index[2] : Long.MAX_VALUE;
+    }
+
+    private void loadState() throws IOException {
+        if (state != null)
+            return;
+        state = new HashMap<>();
+        if (!journalFile.exists()) {
+            writeIndex(indexFile, new ArrayList<long[]>(0));
+            return;
+        }
+        List<long[]> indexEntries = new ArrayList<>();
+        long lastCompleteBatchEnd = 0;
+        DataInputStream journal = openJournalAt(0);
+        try {
+            while (true) {
+                byte batchKind = journal.readByte();
+                long timestamp = journal.readLong();
+                int numberOfChanges = journal.readInt();
+                if ((batchKind != BATCH_SCAN && batchKind != BATCH_BASELINE) || numberOfChanges < 0)
+                    throw new IOException("Corrupt journal batch at " + lastCompleteBatchEnd);
+                List<PermissionChange> changes = new ArrayList<>();
+                for (int i = 0; i < numberOfChanges; i++)
+                    changes.add(readChange(journal, timestamp));
+                apply(state, changes);
+                indexEntries.add(new long[]{timestamp, lastCompleteBatchEnd});
+                lastCompleteBatchEnd = journalFile.length() - journal.available();
+            }
+        } catch (EOFException e) {
+            System.out.println("Replayed " + indexEntries.size() + " journal batches");
+        } catch (IOException e) {
+            //e.g. a UTFDataFormatException; what follows the last readable batch is dropped
+            System.out.println("Replayed " + indexEntries.size() + " journal batches before a corrupt one " + e);
+        } finally {
+            closeQuietly(journal);
+        }
+        if (lastCompleteBatchEnd < journalFile.length()) {
+            System.out.println("Truncating incomplete or corrupt journal batch");
+            RandomAccessFile randomAccessJournal = new RandomAccessFile(journalFile, "rw");
+            try {
+                randomAccessJournal.setLength(lastCompleteBatchEnd);
+            } finally {
+                randomAccessJournal.close();
+            }
+        }
+        if (!indexFile.exists() || indexFile.length() != (long) indexEntries.size() * INDEX_ENTRY_SIZE)
+            writeIndex(indexFile, indexEntries);
+    }
+
+    private void rebuildIndex() throws IOException {
+        state = null;
+        loadState();
+    }
+
+    private void appendBatch(byte batchKind, long timestamp, List<PermissionChange> changes) throws IOException {
+        long offset = journalFile.length();
+        DataOutputStream journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+        try {
+            writeBatch(journal, batchKind, timestamp, changes);
+        } finally {
+            journal.close();
+        }
+        DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+        try {
+            index.writeLong(timestamp);
+            index.writeLong(offset);
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Folds every batch older than the retention window (or the older half of the journal, if it has
+     * grown too large regardless) into a single baseline batch.
+     */
+    private void compact(long now, long[] index) throws IOException {
+        long cutoff = now - RETENTION;
+        if (journalFile.length() > getBaselineSize(index) + MAX_JOURNAL_SIZE)
+            cutoff = Math.max(cutoff, index[2 * (index.length / 4)]);
+        Map<String, PackageState> baseline = new HashMap<>();
+        long baselineTimestamp = 0;
+        File compactedFile = new File(journalFile.getPath() + ".tmp");
+        List<long[]> indexEntries = new ArrayList<>();
+        DataInputStream journal = openJournalAt(0);
+        DataOutputStream compactedJournal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compactedFile)));
+        try {
+            boolean baselineWritten = false;
+            while (true) {
+                byte batchKind;
+                try {
+                    batchKind = journal.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                long timestamp = journal.readLong();
+                int numberOfChanges = journal.readInt();
+                List<PermissionChange> changes = new ArrayList<>(numberOfChanges);
+                for (int i = 0; i < numberOfChanges; i++)
+                    changes.add(readChange(journal, timestamp));
+                if (timestamp < cutoff) {
+                    apply(baseline, changes);
+                    baselineTimestamp = timestamp;
+                    continue;
+                }
+                if (!baselineWritten) {
+                    indexEntries.add(new long[]{baselineTimestamp, compactedJournal.size()});
+                    writeBatch(compactedJournal, BATCH_BASELINE, baselineTimestamp, getBaselineChanges(baselineTimestamp, baseline));
+                    baselineWritten = true;
+                }
+                indexEntries.add(new long[]{timestamp, compactedJournal.size()});
+                writeBatch(compactedJournal, batchKind, timestamp, changes);
+            }
+            if (!baselineWritten) {
+                indexEntries.add(new long[]{baselineTimestamp, compactedJournal.size()});
+                writeBatch(compactedJournal, BATCH_BASELINE, baselineTimestamp, getBaselineChanges(baselineTimestamp, baseline));
+            }
+        } finally {
+            closeQuietly(journal);
+            compactedJournal.close();
+        }
+        File compactedIndexFile = new File(indexFile.getPath() + ".tmp");
+        writeIndex(compactedIndexFile, indexEntries);
+        if (!compactedFile.renameTo(journalFile) || !compactedIndexFile.renameTo(indexFile))
+            throw new IOException("Unable to replace journal with its compacted version");
+        System.out.println("Compacted permission change journal to " + journalFile.length() + " bytes");
+    }
+
+    private static void writeIndex(File file, List<long[]> indexEntries) throws IOException {
+        DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            for (long[] indexEntry : indexEntries) {
+                index.writeLong(indexEntry[0]);
+                index.writeLong(indexEntry[1]);
+            }
+        } finally {
+            index.close();
+        }
+    }
+
+    private static void writeBatch(DataOutputStream journal, byte batchKind, long timestamp, List<PermissionChange> changes) throws IOException {
+        journal.writeByte(batchKind);
+        journal.writeLong(timestamp);
+        journal.writeInt(changes.size());
+        for (PermissionChange change : changes) {
+            journal.writeByte(change.getType());
+            journal.writeUTF(change.getPackageName());
+            if (change.isPermissionChange())
+                journal.writeUTF(change.getPermission());
+            else if (change.getType() != PermissionChange.TYPE_APP_REMOVED)
+                journal.writeLong(change.getVersionCode());
+        }
+    }
+
+    private static PermissionChange readChange(DataInputStream journal, long timestamp) throws IOException {
+        byte type = journal.readByte();
+        String packageName = journal.readUTF();
+        if (type == PermissionChange.TYPE_PERMISSION_GRANTED || type == PermissionChange.TYPE_PERMISSION_REVOKED)
+            return new PermissionChange(timestamp, type, packageName, journal.readUTF(), 0);
+        if (type == PermissionChange.TYPE_APP_REMOVED)
+            return new PermissionChange(timestamp, type, packageName, null, 0);
+        return new PermissionChange(timestamp, type, packageName, null, journal.readLong());
+    }
+
+    private DataInputStream openJournalAt(long offset) throws IOException {
+        FileInputStream journal = new FileInputStream(journalFile);
+        journal.getChannel().position(offset);
+        return new DataInputStream(new BufferedInputStream(journal));
+    }
+
+    private static void apply(Map<String, PackageState> state, List<PermissionChange> changes) {
+        for (PermissionChange change : changes) {
+            String packageName = change.getPackageName();
+            switch (change.getType()) {
+                case PermissionChange.TYPE_APP_INSTALLED:
+                    state.put(packageName, new PackageState(change.getVersionCode(), new HashSet<String>()));
+                    break;
+                case PermissionChange.TYPE_APP_UPDATED:
+                    PackageState packageState = state.get(packageName);
+                    state.put(packageName, new PackageState(change.getVersionCode(), packageState == null ? new HashSet<String>() : packageState.getGrantedPermissions()));
+                    break;
+                case PermissionChange.TYPE_APP_REMOVED:
+                    state.remove(packageName);
+                    break;
+                case PermissionChange.TYPE_PERMISSION_GRANTED:
+                    if (state.containsKey(packageName))
+                        state.get(packageName).getGrantedPermissions().add(change.getPermission());
+                    break;
+                case PermissionChange.TYPE_PERMISSION_REVOKED:
+                    if (state.containsKey(packageName))
+                        state.get(packageName).getGrantedPermissions().remove(change.getPermission());
+                    break;
+            }
+        }
+    }
+
+    private static List<PermissionChange> getChanges(long timestamp, Map<String, PackageState> previousState, Map<String, PackageState> scannedPackages) {
+        List<PermissionChange> changes = new ArrayList<>();
+        for (Map.Entry<String, PackageState> scannedPackage : scannedPackages.entrySet()) {
+            String packageName = scannedPackage.getKey();
+            PackageState current = scannedPackage.getValue();
+            PackageState previous = previousState.get(packageName);
+            if (previous == null) {
+                changes.add(new PermissionChange(timestamp, PermissionChange.TYPE_APP_INSTALLED, packageName, null, current.getVersionCode()));
+                for (String permission : current.getGrantedPermissions())
+                    changes.add(new PermissionChange(timestamp, PermissionChange.TYPE_PERMISSION_GRANTED, packageName, permission, 0));
+                continue;
+            }
+            if (previous.getVersionCode() != current.getVersionCode())
+                changes.add(new PermissionChange(timestamp, PermissionChange.TYPE_APP_UPDATED, packageName, null, current.getVersionCode()));
+            for (String permission : current.getGrantedPermissions())
+                if (!previous.getGrantedPermissions().contains(permission))
+                    changes.add(new PermissionChange(timestamp, PermissionChange.TYPE_PERMISSION_GRANTED, packageName, permission, 0));
+            for (String permission : previous.getGrantedPermissions())
+                if (!current.getGrantedPermissions().contains(permission))
+                    changes.add(new PermissionChange(timestamp, PermissionChange.TYPE_PERMISSION_REVOKED, packageName, permission, 0));
+        }
+        for (String packageName : previousState.keySet())
+            if (!scannedPackages.containsKey(packageName))
+                changes.add(new PermissionChange(timestamp, PermissionChange.TYPE_APP_REMOVED, packageName, null, 0));
+        return changes;
+    }
+
+    private static List<PermissionChange> getBaselineChanges(long timestamp, Map<String, PackageState> packages) {
+        return getChanges(timestamp, new HashMap<String, PackageState>(0), packages);
+    }
+
+    private static Map<String, PackageState> copyOf(Map<String, PackageState> packages) {
+        Map<String, PackageState> copy = new HashMap<>(packages.size());
+        for (Map.Entry<String, PackageState> packageEntry : packages.entrySet())
+            copy.put(packageEntry.getKey(), new PackageState(packageEntry.getValue().getVersionCode(), new HashSet<>(packageEntry.getValue().getGrantedPermissions())));
+        return copy;
+    }
+
+    private static void closeQuietly(DataInputStream stream) {
+        if (stream == null)
+            return;
+        try {
+            stream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static class PackageState {
+        private final long versionCode;
+        private final Set<String> grantedPermissions;
+
+        public PackageState(long versionCode, Set<String> grantedPermissions) {
+            this.versionCode = versionCode;
+            this.grantedPermissions = grantedPermissions;
+        }
+
+        public long getVersionCode() {
+            return versionCode;
+        }
+
+        public Set<String> getGrantedPermissions() {
+            return grantedPermissions;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package open.com.permissionsmanager;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The rule splitting the granted permissions of a package into warnable and nonwarnable ones: a
+ * permission is warnable if its protection level is exactly dangerous and neither the policy nor the
+ * user's ignore rules say otherwise. It has no Android dependencies, so the host-side analyzer
+ * classifies captured {@code dumpsys package} output with this very class.
+ */
+public class PermissionClassifier {
+    /**
+     * The value of {@code PermissionInfo.PROTECTION_DANGEROUS}, which is not available off the device.
+     */
+    public static final int PROTECTION_DANGEROUS = 1;
+
+    private final ProtectionLevelSource protectionLevelSource;
+    private final PermissionPolicy permissionPolicy;
+
+    public PermissionClassifier(ProtectionLevelSource protectionLevelSource, PermissionPolicy permissionPolicy) {
+        this.protectionLevelSource = protectionLevelSource;
+        this.permissionPolicy = permissionPolicy;
+    }
+
+    public boolean isDangerous(String permission) {
+        return protectionLevelSource.getProtectionLevel(permission) == PROTECTION_DANGEROUS;
+    }
+
+    /**
+     * @param ignoredPermissionsForAllApps the permissions the user ignores for every application
+     * @param appSpecificIgnoreList the permissions the user ignores for this package
+     */
+    public void classify(String packageName, List<String> grantedPermissions, Set<String> ignoredPermissionsForAllApps, Set<String> appSpecificIgnoreList,
+                         List<String> warnablePermissions, List<String> nonwarnablePermissions) {
+        PermissionPolicy.PackagePolicy packagePolicy = permissionPolicy.getPackagePolicy(packageName);
+        for (String permission : grantedPermissions) {
+            if (isDangerous(permission) && packagePolicy.isWarnable(permission, ignoredPermissionsForAllApps.contains(permission) || appSpecificIgnoreList.contains(permission)))
+                warnablePermissions.add(permission);
+            else
+                nonwarnablePermissions.add(permission);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the user is shown for the {@link PermissionGroups} identifiers, which are kept out of the
+ * Android free PermissionGroups so the host-side analyzer can keep using it.
+ */
+public class PermissionGroupLabels {
+    private static final String COMBINATION_SEPARATOR = " + ";
+    private static final Map<String, Integer> LABEL_OF_GROUP = new HashMap<>();
+
+    static {
+        LABEL_OF_GROUP.put(PermissionGroups.CALENDAR, R.string.permission_group_calendar);
+        LABEL_OF_GROUP.put(PermissionGroups.CALL_LOG, R.string.permission_group_call_log);
+        LABEL_OF_GROUP.put(PermissionGroups.CAMERA, R.string.permission_group_camera);
+        LABEL_OF_GROUP.put(PermissionGroups.CONTACTS, R.string.permission_group_contacts);
+        LABEL_OF_GROUP.put(PermissionGroups.LOCATION, R.string.permission_group_location);
+        LABEL_OF_GROUP.put(PermissionGroups.MICROPHONE, R.string.permission_group_microphone);
+        LABEL_OF_GROUP.put(PermissionGroups.NEARBY_DEVICES, R.string.permission_group_nearby_devices);
+        LABEL_OF_GROUP.put(PermissionGroups.NOTIFICATIONS, R.string.permission_group_notifications);
+        LABEL_OF_GROUP.put(PermissionGroups.PHONE, R.string.permission_group_phone);
+        LABEL_OF_GROUP.put(PermissionGroups.PHYSICAL_ACTIVITY, R.string.permission_group_physical_activity);
+        LABEL_OF_GROUP.put(PermissionGroups.SENSORS, R.string.permission_group_sensors);
+        LABEL_OF_GROUP.put(PermissionGroups.SMS, R.string.permission_group_sms);
+        LABEL_OF_GROUP.put(PermissionGroups.STORAGE, R.string.permission_group_storage);
+        LABEL_OF_GROUP.put(PermissionGroups.OTHER, R.string.permission_group_other);
+    }
+
+    public static String getLabel(Context context, String group) {
+        Integer label = LABEL_OF_GROUP.get(group);
+        return label == null ? group : context.getString(label);
+    }
+
+    /**
+     * @param combination a combination of groups as keyed by {@link PermissionGroupStatistics#getApplicationsPerCombination()}
+     */
+    public static String getCombinationLabel(Context context, String combination) {
+        StringBuilder combinationLabel = new StringBuilder();
+        List<String> groups = PermissionGroupStatistics.getGroupsOfCombination(combination);
+        for (String group : groups) {
+            if (combinationLabel.length() > 0)
+                combinationLabel.append(COMBINATION_SEPARATOR);
+            combinationLabel.append(getLabel(context, group));
+        }
+        return combinationLabel.toString();
+    }
+}
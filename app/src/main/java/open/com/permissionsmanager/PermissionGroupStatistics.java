@@ -0,0 +1,118 @@
+package open.com.permissionsmanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Device wide rollup of the permission groups the scanned applications hold warnable permissions
+ * in. It is computed once per scan from the groups each application already aggregated, so
+ * rendering it never has to walk the permissions of every application again.
+ */
+public class PermissionGroupStatistics {
+    private static final String COMBINATION_SEPARATOR = "+";
+
+    private final int numberOfApplications;
+    private final Map<String, Integer> applicationsPerGroup;
+    private final List<String> mostExposedGroups;
+    private final Map<String, Integer> applicationsPerCombination;
+
+    private PermissionGroupStatistics(int numberOfApplications, Map<String, Integer> applicationsPerGroup, Map<String, Integer> applicationsPerCombination) {
+        this.numberOfApplications = numberOfApplications;
+        this.applicationsPerGroup = applicationsPerGroup;
+        this.applicationsPerCombination = applicationsPerCombination;
+        mostExposedGroups = getKeysByDescendingCount(applicationsPerGroup);
+    }
+
+    public static PermissionGroupStatistics of(List<AndroidApplication> applications) {
+        Map<String, Integer> applicationsPerGroup = new HashMap<>();
+        Map<String, Integer> applicationsPerCombination = new HashMap<>();
+        for (AndroidApplication application : applications) {
+            Set<String> warnableGroups = application.getWarnablePermissionGroups();
+            for (String group : warnableGroups)
+                increment(applicationsPerGroup, group);
+            if (!warnableGroups.isEmpty())
+                increment(applicationsPerCombination, joinCombination(warnableGroups));
+        }
+        return new PermissionGroupStatistics(applications.size(), applicationsPerGroup, applicationsPerCombination);
+    }
+
+    /**
+     * @return the distinct groups the given permissions belong to, in a stable order
+     */
+    public static Set<String> getGroups(List<String> permissions) {
+        Set<String> groups = new TreeSet<>();
+        for (String permission : permissions)
+            groups.add(PermissionGroups.getGroup(permission));
+        return groups;
+    }
+
+    public int getNumberOfApplications() {
+        return numberOfApplications;
+    }
+
+    public int getNumberOfApplicationsIn(String group) {
+        Integer numberOfApplicationsInGroup = applicationsPerGroup.get(group);
+        return numberOfApplicationsInGroup == null ? 0 : numberOfApplicationsInGroup;
+    }
+
+    /**
+     * @return the groups ordered by the number of applications holding warnable permissions in them, most first
+     */
+    public List<String> getMostExposedGroups() {
+        return mostExposedGroups;
+    }
+
+    /**
+     * @return the number of applications per exact combination of groups, keyed by the identifiers of
+     * its groups joined together; see {@link #getGroupsOfCombination(String)}
+     */
+    public Map<String, Integer> getApplicationsPerCombination() {
+        return applicationsPerCombination;
+    }
+
+    public List<String> getCombinationsByDescendingCount() {
+        return getKeysByDescendingCount(applicationsPerCombination);
+    }
+
+    /**
+     * @return the groups of a combination keyed by {@link #getApplicationsPerCombination()}
+     */
+    public static List<String> getGroupsOfCombination(String combination) {
+        return Arrays.asList(combination.split(Pattern.quote(COMBINATION_SEPARATOR)));
+    }
+
+    private static void increment(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    private static String joinCombination(Set<String> groups) {
+        StringBuilder combination = new StringBuilder();
+        for (String group : groups) {
+            if (combination.length() > 0)
+                combination.append(COMBINATION_SEPARATOR);
+            combination.append(group);
+        }
+        return combination.toString();
+    }
+
+    private static List<String> getKeysByDescendingCount(final Map<String, Integer> counts) {
+        List<String> keys = new ArrayList<>(counts.keySet());
+        Collections.sort(keys, new Comparator<String>() {
+            @Override
+            public int compare(String key1, String key2) {
+                int byCount = counts.get(key2) - counts.get(key1);
+                return byCount != 0 ? byCount : key1.compareTo(key2);
+            }
+        });
+        return Collections.unmodifiableList(keys);
+    }
+}
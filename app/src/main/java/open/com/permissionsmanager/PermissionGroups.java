@@ -0,0 +1,61 @@
+package open.com.permissionsmanager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps platform permissions to the permission group the system settings show them under. Groups are
+ * identified by the name of the platform permission group without its {@code android.permission-group.}
+ * prefix; these identifiers key the groups of a policy, and {@link PermissionGroupLabels} maps them
+ * to what is shown to the user.
+ */
+public class PermissionGroups {
+    public static final String CALENDAR = "CALENDAR";
+    public static final String CALL_LOG = "CALL_LOG";
+    public static final String CAMERA = "CAMERA";
+    public static final String CONTACTS = "CONTACTS";
+    public static final String LOCATION = "LOCATION";
+    public static final String MICROPHONE = "MICROPHONE";
+    public static final String NEARBY_DEVICES = "NEARBY_DEVICES";
+    public static final String NOTIFICATIONS = "NOTIFICATIONS";
+    public static final String PHONE = "PHONE";
+    public static final String PHYSICAL_ACTIVITY = "ACTIVITY_RECOGNITION";
+    public static final String SENSORS = "SENSORS";
+    public static final String SMS = "SMS";
+    public static final String STORAGE = "STORAGE";
+    public static final String OTHER = "OTHER";
+
+    private static final Map<String, String> GROUP_OF_PERMISSION = new HashMap<>();
+
+    static {
+        add(CALENDAR, "READ_CALENDAR", "WRITE_CALENDAR");
+        add(CALL_LOG, "READ_CALL_LOG", "WRITE_CALL_LOG", "PROCESS_OUTGOING_CALLS");
+        add(CAMERA, "CAMERA");
+        add(CONTACTS, "READ_CONTACTS", "WRITE_CONTACTS", "GET_ACCOUNTS");
+        add(LOCATION, "ACCESS_FINE_LOCATION", "ACCESS_COARSE_LOCATION", "ACCESS_BACKGROUND_LOCATION");
+        add(MICROPHONE, "RECORD_AUDIO");
+        add(NEARBY_DEVICES, "BLUETOOTH_SCAN", "BLUETOOTH_CONNECT", "BLUETOOTH_ADVERTISE", "UWB_RANGING", "NEARBY_WIFI_DEVICES");
+        add(NOTIFICATIONS, "POST_NOTIFICATIONS");
+        add(PHONE, "READ_PHONE_STATE", "READ_PHONE_NUMBERS", "CALL_PHONE", "ANSWER_PHONE_CALLS", "com.android.voicemail.permission.ADD_VOICEMAIL", "USE_SIP", "ACCEPT_HANDOVER");
+        add(PHYSICAL_ACTIVITY, "ACTIVITY_RECOGNITION");
+        add(SENSORS, "BODY_SENSORS", "BODY_SENSORS_BACKGROUND");
+        add(SMS, "SEND_SMS", "RECEIVE_SMS", "READ_SMS", "RECEIVE_WAP_PUSH", "RECEIVE_MMS");
+        add(STORAGE, "READ_EXTERNAL_STORAGE", "WRITE_EXTERNAL_STORAGE", "ACCESS_MEDIA_LOCATION", "READ_MEDIA_IMAGES", "READ_MEDIA_VIDEO", "READ_MEDIA_AUDIO");
+    }
+
+    /**
+     * @param permissions the names of the permissions, without their prefix if it is {@code android.permission.}
+     */
+    private static void add(String group, String... permissions) {
+        for (String permission : permissions)
+            GROUP_OF_PERMISSION.put(permission.indexOf('.') == -1 ? "android.permission." + permission : permission, group);
+    }
+
+    /**
+     * @return the group of the permission, {@link #OTHER} for permissions which do not belong to a platform group
+     */
+    public static String getGroup(String permission) {
+        String group = GROUP_OF_PERMISSION.get(permission);
+        return group == null ? OTHER : group;
+    }
+}
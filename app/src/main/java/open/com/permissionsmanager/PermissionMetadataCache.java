@@ -0,0 +1,88 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PermissionInfo;
+import android.os.Build;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caches the protection level of permissions so that scans do not have to ask PackageManager about
+ * the same permission for every application requesting it. Platform permissions only change with
+ * an OTA, so they are persisted until the build fingerprint changes; permissions defined by apps may
+ * change with any install or update, so they are only cached for the lifetime of one instance, and are
+ * taken from the definitions returned along with the package inventory rather than resolved one by one.
+ */
+public class PermissionMetadataCache implements ProtectionLevelSource {
+    private static final String SHARED_PREFERENCES_NAME = "permission_metadata";
+    private static final String SHARED_PREF_KEY_BUILD_FINGERPRINT = "BUILD_FINGERPRINT";
+    private static final String PLATFORM_PACKAGE_NAME = "android";
+    public static final int PROTECTION_UNDEFINED = -1;
+
+    private final PackageManager pm;
+    private final SharedPreferences platformPermissions;
+    private final Map<String, Integer> protectionLevels = new HashMap<>();
+    private SharedPreferences.Editor pendingPlatformPermissions;
+
+    public PermissionMetadataCache(Context context) {
+        pm = context.getPackageManager();
+        platformPermissions = context.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
+        if (!Build.FINGERPRINT.equals(platformPermissions.getString(SHARED_PREF_KEY_BUILD_FINGERPRINT, null)))
+            platformPermissions.edit()
+                    .clear()
+                    .putString(SHARED_PREF_KEY_BUILD_FINGERPRINT, Build.FINGERPRINT)
+                    .apply();
+    }
+
+    /**
+     * @return the protection level of the permission, {@link #PROTECTION_UNDEFINED} if no installed package defines it
+     */
+    @Override
+    public synchronized int getProtectionLevel(String permission) {
+        Integer protectionLevel = protectionLevels.get(permission);
+        if (protectionLevel != null)
+            return protectionLevel;
+        if (platformPermissions.contains(permission))
+            protectionLevel = platformPermissions.getInt(permission, 0);
+        else {
+            try {
+                PermissionInfo permissionInfo = pm.getPermissionInfo(permission, 0);
+                protectionLevel = permissionInfo.protectionLevel;
+                if (PLATFORM_PACKAGE_NAME.equals(permissionInfo.packageName)) {
+                    if (pendingPlatformPermissions == null)
+                        pendingPlatformPermissions = platformPermissions.edit();
+                    pendingPlatformPermissions.putInt(permission, protectionLevel);
+                }
+            } catch (PackageManager.NameNotFoundException e) {
+                protectionLevel = PROTECTION_UNDEFINED; //requested, but its definer is not installed
+            }
+        }
+        protectionLevels.put(permission, protectionLevel);
+        return protectionLevel;
+    }
+
+    /**
+     * Caches the permissions defined by an application, as returned along with it by a query with
+     * {@link PackageManager#GET_PERMISSIONS}.
+     */
+    public synchronized void addDefinitions(PackageInfo packageInfo) {
+        if (packageInfo.permissions == null || PLATFORM_PACKAGE_NAME.equals(packageInfo.packageName))
+            return;
+        for (PermissionInfo permissionInfo : packageInfo.permissions)
+            protectionLevels.put(permissionInfo.name, permissionInfo.protectionLevel);
+    }
+
+    /**
+     * Persists the platform permissions resolved since the last call, in a single write.
+     */
+    public synchronized void persist() {
+        if (pendingPlatformPermissions == null)
+            return;
+        pendingPlatformPermissions.apply();
+        pendingPlatformPermissions = null;
+    }
+}
@@ -0,0 +1,209 @@
+package open.com.permissionsmanager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Declarative policy for managed deployments, compiled once when it is loaded. A policy looks like
+ * <pre>
+ * {
+ *   "ignoredPermissions": ["android.permission.READ_PHONE_STATE"],
+ *   "warnedPermissions": ["android.permission.READ_SMS"],
+ *   "ignoredGroups": ["NOTIFICATIONS"],
+ *   "warnedGroups": ["MICROPHONE"],
+ *   "trustedPackages": ["com.example.mail", "com.example.internal.*"],
+ *   "packageRules": [
+ *     {"packages": ["com.example.maps*"], "ignoredGroups": ["LOCATION"], "warnedPermissions": []}
+ *   ],
+ *   "auditedSystemPackages": ["com.oem.*"],
+ *   "skippedSystemPackages": ["com.oem.launcher"]
+ * }
+ * </pre>
+ * Ignored permissions and groups are not warned about, warned ones always are, even if the user
+ * ignored them, and warned wins over ignored. Groups are named by their {@link PermissionGroups}
+ * identifier. Trusted packages are not warned about except for warned permissions. Package patterns
+ * either name a package or end with {@code *} to match every package starting with what precedes it.
+ * <p>
+ * Rules are compiled into hash sets and {@link PackagePatterns}, so resolving the policy of a package
+ * costs one lookup per character of its name and classifying a permission costs two set lookups,
+ * however many rules the policy has.
+ * <p>
+ * When system applications are audited, every system package is audited except the platform and
+ * AOSP ones, unless {@code auditedSystemPackages} restricts them; {@code skippedSystemPackages} are
+ * never audited.
+ */
+public class PermissionPolicy {
+    public static final int DECISION_NONE = 0;
+    public static final int DECISION_IGNORE = 1;
+    public static final int DECISION_WARN = 2;
+
+    public static final PermissionPolicy EMPTY = new PermissionPolicy(new ArrayList<Rule>(0));
+
+    private static final PackagePatterns DEFAULT_SKIPPED_SYSTEM_PACKAGES = new PackagePatterns(Arrays.asList("android", "com.android.*"));
+
+    private final Rule globalRule = new Rule();
+    private final Map<String, List<Rule>> rulesOfPattern = new HashMap<>();
+    private final PackagePatterns rulePatterns;
+    private final Map<String, PackagePolicy> packagePolicies = new HashMap<>();
+    private final int numberOfRules;
+    private PackagePatterns auditedSystemPackages = new PackagePatterns(new ArrayList<String>(0));
+    private PackagePatterns skippedSystemPackages = new PackagePatterns(new ArrayList<String>(0));
+    private String source = "";
+
+    private PermissionPolicy(List<Rule> packageRules) {
+        int numberOfRules = 0;
+        for (Rule rule : packageRules) {
+            for (String pattern : rule.packages)
+                add(rulesOfPattern, pattern, rule);
+            numberOfRules += rule.size();
+        }
+        this.numberOfRules = numberOfRules;
+        rulePatterns = new PackagePatterns(rulesOfPattern.keySet());
+    }
+
+    /**
+     * @throws JSONException if the policy is not valid JSON or one of its fields has the wrong type
+     */
+    public static PermissionPolicy parse(String json) throws JSONException {
+        JSONObject policy = new JSONObject(json);
+        List<Rule> packageRules = new ArrayList<>();
+        Rule trustedPackagesRule = new Rule();
+        trustedPackagesRule.trusted = true;
+        addAll(trustedPackagesRule.packages, policy.optJSONArray("trustedPackages"));
+        packageRules.add(trustedPackagesRule);
+        JSONArray packageRulesJson = policy.optJSONArray("packageRules");
+        for (int i = 0; packageRulesJson != null && i < packageRulesJson.length(); i++) {
+            JSONObject packageRuleJson = packageRulesJson.getJSONObject(i);
+            Rule packageRule = Rule.parse(packageRuleJson);
+            addAll(packageRule.packages, packageRuleJson.getJSONArray("packages"));
+            packageRules.add(packageRule);
+        }
+        PermissionPolicy permissionPolicy = new PermissionPolicy(packageRules);
+        permissionPolicy.globalRule.merge(Rule.parse(policy));
+        Set<String> auditedSystemPackages = new HashSet<>();
+        addAll(auditedSystemPackages, policy.optJSONArray("auditedSystemPackages"));
+        permissionPolicy.auditedSystemPackages = new PackagePatterns(auditedSystemPackages);
+        Set<String> skippedSystemPackages = new HashSet<>();
+        addAll(skippedSystemPackages, policy.optJSONArray("skippedSystemPackages"));
+        permissionPolicy.skippedSystemPackages = new PackagePatterns(skippedSystemPackages);
+        permissionPolicy.source = json;
+        return permissionPolicy;
+    }
+
+    public int getNumberOfRules() {
+        return numberOfRules + globalRule.size();
+    }
+
+    /**
+     * @return the JSON the policy was parsed from, empty for {@link #EMPTY}; what is derived from
+     * the policy is fingerprinted with it, since only the full text changes whenever the policy does
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public boolean isAuditedSystemPackage(String packageName) {
+        if (DEFAULT_SKIPPED_SYSTEM_PACKAGES.matches(packageName) || skippedSystemPackages.matches(packageName))
+            return false;
+        return auditedSystemPackages.isEmpty() || auditedSystemPackages.matches(packageName);
+    }
+
+    public synchronized PackagePolicy getPackagePolicy(String packageName) {
+        PackagePolicy packagePolicy = packagePolicies.get(packageName);
+        if (packagePolicy != null)
+            return packagePolicy;
+        Rule mergedRule = new Rule();
+        mergedRule.merge(globalRule);
+        for (String pattern : rulePatterns.getMatchingPatterns(packageName))
+            mergeAll(mergedRule, rulesOfPattern.get(pattern));
+        packagePolicies.put(packageName, packagePolicy = new PackagePolicy(mergedRule));
+        return packagePolicy;
+    }
+
+    private static void mergeAll(Rule mergedRule, List<Rule> rules) {
+        if (rules == null)
+            return;
+        for (Rule rule : rules)
+            mergedRule.merge(rule);
+    }
+
+    private static void add(Map<String, List<Rule>> rulesByKey, String key, Rule rule) {
+        List<Rule> rules = rulesByKey.get(key);
+        if (rules == null)
+            rulesByKey.put(key, rules = new ArrayList<>(1));
+        rules.add(rule);
+    }
+
+    private static void addAll(Set<String> values, JSONArray jsonArray) throws JSONException {
+        for (int i = 0; jsonArray != null && i < jsonArray.length(); i++)
+            values.add(jsonArray.getString(i));
+    }
+
+    /**
+     * The rules applying to one package, merged.
+     */
+    public static class PackagePolicy {
+        private final Rule rule;
+
+        private PackagePolicy(Rule rule) {
+            this.rule = rule;
+        }
+
+        public int getDecision(String permission) {
+            String group = PermissionGroups.getGroup(permission);
+            if (rule.warnedPermissions.contains(permission) || rule.warnedGroups.contains(group))
+                return DECISION_WARN;
+            if (rule.trusted || rule.ignoredPermissions.contains(permission) || rule.ignoredGroups.contains(group))
+                return DECISION_IGNORE;
+            return DECISION_NONE;
+        }
+
+        /**
+         * @return whether a granted dangerous permission should be warned about given the user's own ignore rules
+         */
+        public boolean isWarnable(String permission, boolean ignoredByUser) {
+            int decision = getDecision(permission);
+            return decision == DECISION_WARN || (decision == DECISION_NONE && !ignoredByUser);
+        }
+    }
+
+    private static class Rule {
+        private final Set<String> packages = new HashSet<>();
+        private final Set<String> ignoredPermissions = new HashSet<>();
+        private final Set<String> warnedPermissions = new HashSet<>();
+        private final Set<String> ignoredGroups = new HashSet<>();
+        private final Set<String> warnedGroups = new HashSet<>();
+        private boolean trusted;
+
+        private static Rule parse(JSONObject ruleJson) throws JSONException {
+            Rule rule = new Rule();
+            addAll(rule.ignoredPermissions, ruleJson.optJSONArray("ignoredPermissions"));
+            addAll(rule.warnedPermissions, ruleJson.optJSONArray("warnedPermissions"));
+            addAll(rule.ignoredGroups, ruleJson.optJSONArray("ignoredGroups"));
+            addAll(rule.warnedGroups, ruleJson.optJSONArray("warnedGroups"));
+            return rule;
+        }
+
+        private void merge(Rule rule) {
+            ignoredPermissions.addAll(rule.ignoredPermissions);
+            warnedPermissions.addAll(rule.warnedPermissions);
+            ignoredGroups.addAll(rule.ignoredGroups);
+            warnedGroups.addAll(rule.warnedGroups);
+            trusted |= rule.trusted;
+        }
+
+        private int size() {
+            int size = ignoredPermissions.size() + warnedPermissions.size() + ignoredGroups.size() + warnedGroups.size();
+            return trusted ? size + packages.size() : size;
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package open.com.permissionsmanager;
+
+public interface PermissionPolicyChangeListener {
+    void permissionPolicyChanged(PermissionPolicy permissionPolicy);
+}
@@ -0,0 +1,135 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.FileObserver;
+
+import androidx.annotation.RequiresApi;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loads the policy pushed to {@value #POLICY_FILE_NAME} in the files directory, e.g. by a device
+ * management tool, and recompiles it only when the file changes. While the file is missing or
+ * invalid the last valid policy, or none, is used.
+ */
+public class PermissionPolicyStore {
+    public static final String POLICY_FILE_NAME = "permission_policy.json";
+
+    private static PermissionPolicyStore permissionPolicyStore;
+    private final File policyFile;
+    private PermissionPolicy policy = PermissionPolicy.EMPTY;
+    private long loadedLastModified = -1;
+    private long loadedLength = -1;
+    private String lastError;
+    private FileObserver policyFileObserver;
+
+    private PermissionPolicyStore(Context context) {
+        policyFile = new File(context.getFilesDir(), POLICY_FILE_NAME);
+    }
+
+    public synchronized static PermissionPolicyStore getPermissionPolicyStore(Context context) {
+        if (permissionPolicyStore == null)
+            permissionPolicyStore = new PermissionPolicyStore(context.getApplicationContext());
+        return permissionPolicyStore;
+    }
+
+    /**
+     * @return the compiled policy, recompiled first if the policy file changed since it was last read
+     */
+    public synchronized PermissionPolicy getPolicy() {
+        if (!policyFile.exists()) {
+            if (loadedLength != -1)
+                System.out.println("Permission policy removed");
+            policy = PermissionPolicy.EMPTY;
+            loadedLastModified = loadedLength = -1;
+            lastError = null;
+            return policy;
+        }
+        if (policyFile.lastModified() == loadedLastModified && policyFile.length() == loadedLength)
+            return policy;
+        loadedLastModified = policyFile.lastModified();
+        loadedLength = policyFile.length();
+        try {
+            policy = PermissionPolicy.parse(readPolicyFile());
+            lastError = null;
+            System.out.println("Permission policy loaded with " + policy.getNumberOfRules() + " rules");
+        } catch (IOException | JSONException e) {
+            lastError = e.getMessage();
+            System.out.println("Invalid permission policy, keeping the previous one " + e);
+        }
+        return policy;
+    }
+
+    /**
+     * @return why the current policy file could not be loaded, null if it was loaded or there is none
+     */
+    public synchronized String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Calls the listener whenever the policy file is written, moved in or deleted, as long as the
+     * process is alive. Only one listener is watched at a time.
+     */
+    public synchronized void watch(final PermissionPolicyChangeListener permissionPolicyChangeListener) {
+        if (policyFileObserver != null)
+            policyFileObserver.stopWatching();
+        int events = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO | FileObserver.DELETE;
+        policyFileObserver = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                ? new PolicyFileObserver(policyFile.getParentFile(), events, permissionPolicyChangeListener)
+                : new PolicyFileObserver(policyFile.getParent(), events, permissionPolicyChangeListener);
+        policyFileObserver.startWatching();
+    }
+
+    private synchronized PermissionPolicy reload() {
+        loadedLastModified = -1; //a rewrite within the timestamp granularity keeps lastModified unchanged
+        return getPolicy();
+    }
+
+    /**
+     * Watches the directory of the policy file, as the file itself may not exist yet.
+     */
+    private class PolicyFileObserver extends FileObserver {
+        private final PermissionPolicyChangeListener permissionPolicyChangeListener;
+
+        @RequiresApi(Build.VERSION_CODES.Q)
+        private PolicyFileObserver(File directory, int events, PermissionPolicyChangeListener permissionPolicyChangeListener) {
+            super(directory, events);
+            this.permissionPolicyChangeListener = permissionPolicyChangeListener;
+        }
+
+        @SuppressWarnings("deprecation")
+        private PolicyFileObserver(String directory, int events, PermissionPolicyChangeListener permissionPolicyChangeListener) {
+            super(directory, events);
+            this.permissionPolicyChangeListener = permissionPolicyChangeListener;
+        }
+
+        @Override
+        public void onEvent(int event, String path) {
+            if (POLICY_FILE_NAME.equals(path))
+                permissionPolicyChangeListener.permissionPolicyChanged(reload());
+        }
+    }
+
+    private String readPolicyFile() throws IOException {
+        InputStream input = new FileInputStream(policyFile);
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int) policyFile.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1)
+                content.write(buffer, 0, read);
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            input.close();
+        }
+    }
+}
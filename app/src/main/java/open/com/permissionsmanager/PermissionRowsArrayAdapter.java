@@ -0,0 +1,45 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+
+public class PermissionRowsArrayAdapter extends ArrayAdapter<ApplicationDetailsModel.PermissionRow> {
+    private LayoutInflater layoutInflater;
+
+    public PermissionRowsArrayAdapter(Context context, int resource) {
+        super(context, resource);
+        layoutInflater = LayoutInflater.from(context);
+    }
+
+    @NonNull
+    @Override
+    public View getView(int position, View reusableView, ViewGroup parent) {
+        ApplicationDetailsModel.PermissionRow permissionRow = getItem(position);
+        if(reusableView == null)
+            reusableView = layoutInflater.inflate(R.layout.permission_row, parent, false);
+        TextView permission_textView = (TextView) reusableView.findViewById(R.id.title);
+        TextView group_textView = (TextView) reusableView.findViewById(R.id.group);
+        ImageView warningImage = (ImageView) reusableView.findViewById(R.id.warning_image);
+        warningImage.setVisibility(permissionRow.isWarnable() ? View.VISIBLE : View.INVISIBLE);
+        permission_textView.setText(permissionRow.getDisplayName());
+        group_textView.setText(PermissionGroupLabels.getLabel(getContext(), permissionRow.getGroup()));
+        return reusableView;
+    }
+
+    public void setPermissionRows(List<ApplicationDetailsModel.PermissionRow> permissionRows){
+        setNotifyOnChange(false);
+        clear();
+        addAll(permissionRows);
+        notifyDataSetChanged();
+    }
+}
@@ -0,0 +1,20 @@
+package open.com.permissionsmanager;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Source of the last time an application actually used its permissions. Implemented on top of
+ * AppOpsManager on devices, and replaceable by a fake wherever a device is not available.
+ */
+public interface PermissionUsageSource {
+    /**
+     * @return the last access time per permission, only for the permissions with a known access; empty if usage is unavailable
+     */
+    Map<String, Long> getLastAccessTimes(int uid, String packageName, List<String> permissions);
+
+    /**
+     * @return false once the source has determined it cannot provide usage on this device, so callers can skip it entirely
+     */
+    boolean isAvailable();
+}
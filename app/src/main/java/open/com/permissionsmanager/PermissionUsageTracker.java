@@ -0,0 +1,77 @@
+package open.com.permissionsmanager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional pass which merges the last access time of warnable permissions into the scanned
+ * applications. Usage is fetched once per package and profile for all its permissions, cached for
+ * {@link #USAGE_TTL}, and the pass stops querying once it has spent {@link #TIME_BUDGET} so that it
+ * never adds more than that to a scan; packages it did not get to keep their cached usage.
+ */
+public class PermissionUsageTracker {
+    public static final long USAGE_TTL = 15 * MainUtils.ONE_MINUTE;
+    public static final long TIME_BUDGET = 500;
+
+    private final PermissionUsageSource permissionUsageSource;
+    private final Map<String, CachedUsage> cachedUsages = new HashMap<>();
+    private long lastPassDuration;
+    private int lastPassQueries;
+
+    public PermissionUsageTracker(PermissionUsageSource permissionUsageSource) {
+        this.permissionUsageSource = permissionUsageSource;
+    }
+
+    public synchronized void mergeUsage(List<AndroidApplication> applications) {
+        if (!permissionUsageSource.isAvailable())
+            return;
+        long startOfPass = getElapsedTime();
+        long now = System.currentTimeMillis();
+        int queries = 0;
+        Map<String, CachedUsage> usagesOfScannedApplications = new HashMap<>(applications.size());
+        for (AndroidApplication application : applications) {
+            CachedUsage cachedUsage = cachedUsages.get(application.getKey());
+            boolean withinBudget = getElapsedTime() - startOfPass < TIME_BUDGET;
+            if ((cachedUsage == null || now - cachedUsage.fetchedAt > USAGE_TTL) && withinBudget && permissionUsageSource.isAvailable()) {
+                cachedUsage = new CachedUsage(now, permissionUsageSource.getLastAccessTimes(application.getUid(), application.getPackageName(), application.getWarnablePermissions()));
+                cachedUsages.put(application.getKey(), cachedUsage);
+                queries++;
+            }
+            if (cachedUsage == null)
+                continue;
+            application.setPermissionLastAccessTimes(cachedUsage.lastAccessTimes);
+            usagesOfScannedApplications.put(application.getKey(), cachedUsage);
+        }
+        cachedUsages.clear();
+        cachedUsages.putAll(usagesOfScannedApplications);
+        lastPassDuration = getElapsedTime() - startOfPass;
+        lastPassQueries = queries;
+        System.out.println("permission usage pass queried " + queries + " packages in " + lastPassDuration + "ms");
+    }
+
+    /**
+     * The pass is timed with the JVM clock rather than SystemClock so it also runs in local tests.
+     */
+    private static long getElapsedTime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    public synchronized long getLastPassDuration() {
+        return lastPassDuration;
+    }
+
+    public synchronized int getLastPassQueries() {
+        return lastPassQueries;
+    }
+
+    private static class CachedUsage {
+        private final long fetchedAt;
+        private final Map<String, Long> lastAccessTimes;
+
+        private CachedUsage(long fetchedAt, Map<String, Long> lastAccessTimes) {
+            this.fetchedAt = fetchedAt;
+            this.lastAccessTimes = lastAccessTimes;
+        }
+    }
+}
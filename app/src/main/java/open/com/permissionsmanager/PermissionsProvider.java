@@ -0,0 +1,348 @@
+package open.com.permissionsmanager;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only access to the latest scan snapshot for other applications on the device, guarded by
+ * {@link #READ_PERMISSION}. Queries are answered from the persisted snapshot and an index built once
+ * per snapshot version; they never start a scan. Observers of {@link #BASE_URI} are notified when a
+ * new snapshot version is written.
+ * <p>
+ * <ul>
+ * <li>{@link #SNAPSHOT_URI}: one row with the version and time of the snapshot</li>
+ * <li>{@link #APPLICATIONS_URI}: one row per application; the permission lists are only computed
+ * when they are projected</li>
+ * <li>{@link #PERMISSIONS_URI}: one row per permission held by an application</li>
+ * </ul>
+ * Both lists can be narrowed with the {@link #PARAMETER_PACKAGE} and {@link #PARAMETER_PERMISSION}
+ * query parameters and paged with {@link #PARAMETER_OFFSET} and {@link #PARAMETER_LIMIT}, or with
+ * the paging arguments of {@link ContentResolver} on Android O and later. Paged cursors carry the
+ * number of rows before paging in {@link ContentResolver#EXTRA_TOTAL_COUNT}.
+ * <p>
+ * These query parameters are the only filtering supported. Rows are always in the order of the
+ * snapshot; a selection, selection arguments or a sort order are rejected with an
+ * {@link IllegalArgumentException} rather than ignored, so a caller never mistakes unfiltered rows
+ * for filtered ones.
+ */
+public class PermissionsProvider extends ContentProvider {
+    public static final String AUTHORITY = "open.com.permissionsmanager.permissions";
+    public static final String READ_PERMISSION = "open.com.permissionsmanager.permission.READ_SCAN_RESULTS";
+    public static final Uri BASE_URI = Uri.parse("content://" + AUTHORITY);
+    public static final Uri SNAPSHOT_URI = Uri.withAppendedPath(BASE_URI, "snapshot");
+    public static final Uri APPLICATIONS_URI = Uri.withAppendedPath(BASE_URI, "applications");
+    public static final Uri PERMISSIONS_URI = Uri.withAppendedPath(BASE_URI, "permissions");
+
+    public static final String PARAMETER_PACKAGE = "package";
+    public static final String PARAMETER_PERMISSION = "permission";
+    public static final String PARAMETER_OFFSET = "offset";
+    public static final String PARAMETER_LIMIT = "limit";
+
+    public static final String COLUMN_ID = "_id";
+    public static final String COLUMN_VERSION = "version";
+    public static final String COLUMN_TIMESTAMP = "timestamp";
+    public static final String COLUMN_PACKAGE_NAME = "package_name";
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_VERSION_CODE = "version_code";
+    public static final String COLUMN_IGNORED = "ignored";
+    public static final String COLUMN_NUMBER_OF_WARNABLE_PERMISSIONS = "warnable_permission_count";
+    public static final String COLUMN_NUMBER_OF_NONWARNABLE_PERMISSIONS = "nonwarnable_permission_count";
+    public static final String COLUMN_WARNABLE_PERMISSIONS = "warnable_permissions";
+    public static final String COLUMN_NONWARNABLE_PERMISSIONS = "nonwarnable_permissions";
+    public static final String COLUMN_PERMISSION = "permission";
+    public static final String COLUMN_WARNABLE = "warnable";
+
+    public static final String[] SNAPSHOT_COLUMNS = {COLUMN_VERSION, COLUMN_TIMESTAMP};
+    /**
+     * The default projection of {@link #APPLICATIONS_URI}, which leaves the permission lists out.
+     */
+    public static final String[] APPLICATION_SUMMARY_COLUMNS = {COLUMN_ID, COLUMN_PACKAGE_NAME, COLUMN_NAME, COLUMN_VERSION_CODE,
+            COLUMN_IGNORED, COLUMN_NUMBER_OF_WARNABLE_PERMISSIONS, COLUMN_NUMBER_OF_NONWARNABLE_PERMISSIONS};
+    public static final String[] APPLICATION_FULL_COLUMNS = {COLUMN_ID, COLUMN_PACKAGE_NAME, COLUMN_NAME, COLUMN_VERSION_CODE,
+            COLUMN_IGNORED, COLUMN_NUMBER_OF_WARNABLE_PERMISSIONS, COLUMN_NUMBER_OF_NONWARNABLE_PERMISSIONS,
+            COLUMN_WARNABLE_PERMISSIONS, COLUMN_NONWARNABLE_PERMISSIONS};
+    public static final String[] PERMISSION_COLUMNS = {COLUMN_ID, COLUMN_PACKAGE_NAME, COLUMN_PERMISSION, COLUMN_WARNABLE};
+
+    private static final String PERMISSIONS_SEPARATOR = ",";
+    private static final int MATCH_SNAPSHOT = 1;
+    private static final int MATCH_APPLICATIONS = 2;
+    private static final int MATCH_PERMISSIONS = 3;
+    private static final UriMatcher URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
+
+    static {
+        URI_MATCHER.addURI(AUTHORITY, "snapshot", MATCH_SNAPSHOT);
+        URI_MATCHER.addURI(AUTHORITY, "applications", MATCH_APPLICATIONS);
+        URI_MATCHER.addURI(AUTHORITY, "permissions", MATCH_PERMISSIONS);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private static final String[] UNSUPPORTED_QUERY_ARGS = {ContentResolver.QUERY_ARG_SQL_SELECTION, ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS,
+            ContentResolver.QUERY_ARG_SQL_SORT_ORDER, ContentResolver.QUERY_ARG_SORT_COLUMNS};
+
+    private SnapshotIndex snapshotIndex;
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        if (selection != null || selectionArgs != null || sortOrder != null)
+            throw new IllegalArgumentException("Selections and sort orders are not supported by " + uri + ", filter with its query parameters");
+        int offset = getIntParameter(uri, PARAMETER_OFFSET, 0);
+        int limit = getIntParameter(uri, PARAMETER_LIMIT, Integer.MAX_VALUE);
+        return query(uri, projection, offset, limit);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable Bundle queryArgs, @Nullable CancellationSignal cancellationSignal) {
+        //the arguments of the query without a bundle arrive here packed in it
+        if (queryArgs != null)
+            for (String unsupportedArgument : UNSUPPORTED_QUERY_ARGS)
+                if (queryArgs.get(unsupportedArgument) != null)
+                    throw new IllegalArgumentException("Selections and sort orders are not supported by " + uri + ", filter with its query parameters");
+        if (queryArgs == null || (!queryArgs.containsKey(ContentResolver.QUERY_ARG_OFFSET) && !queryArgs.containsKey(ContentResolver.QUERY_ARG_LIMIT)))
+            return query(uri, projection, null, null, null);
+        int offset = queryArgs.getInt(ContentResolver.QUERY_ARG_OFFSET, getIntParameter(uri, PARAMETER_OFFSET, 0));
+        int limit = queryArgs.getInt(ContentResolver.QUERY_ARG_LIMIT, getIntParameter(uri, PARAMETER_LIMIT, Integer.MAX_VALUE));
+        Cursor cursor = query(uri, projection, offset, limit);
+        Bundle extras = new Bundle(cursor.getExtras());
+        extras.putStringArray(ContentResolver.EXTRA_HONORED_ARGS, new String[]{ContentResolver.QUERY_ARG_OFFSET, ContentResolver.QUERY_ARG_LIMIT});
+        ((MatrixCursor) cursor).setExtras(extras);
+        return cursor;
+    }
+
+    private Cursor query(Uri uri, String[] projection, int offset, int limit) {
+        if (offset < 0 || limit < 0)
+            throw new IllegalArgumentException("Invalid page of " + uri);
+        SnapshotIndex index = getSnapshotIndex();
+        MatrixCursor cursor;
+        switch (URI_MATCHER.match(uri)) {
+            case MATCH_SNAPSHOT:
+                cursor = new MatrixCursor(getColumns(uri, projection, SNAPSHOT_COLUMNS, SNAPSHOT_COLUMNS), 1);
+                addRow(cursor, index.getSnapshotRow());
+                break;
+            case MATCH_APPLICATIONS:
+                cursor = queryApplications(uri, getColumns(uri, projection, APPLICATION_SUMMARY_COLUMNS, APPLICATION_FULL_COLUMNS), index, offset, limit);
+                break;
+            case MATCH_PERMISSIONS:
+                cursor = queryPermissions(uri, getColumns(uri, projection, PERMISSION_COLUMNS, PERMISSION_COLUMNS), index, offset, limit);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown uri " + uri);
+        }
+        cursor.setNotificationUri(getContext().getContentResolver(), BASE_URI);
+        return cursor;
+    }
+
+    private static MatrixCursor queryApplications(Uri uri, String[] columns, SnapshotIndex index, int offset, int limit) {
+        List<AndroidApplication> applications = index.getApplications(uri.getQueryParameter(PARAMETER_PACKAGE), uri.getQueryParameter(PARAMETER_PERMISSION));
+        int end = getEndOfPage(applications.size(), offset, limit);
+        MatrixCursor cursor = new MatrixCursor(columns, Math.max(0, end - offset));
+        for (int i = offset; i < end; i++) {
+            AndroidApplication application = applications.get(i);
+            Map<String, Object> row = new HashMap<>(columns.length);
+            row.put(COLUMN_ID, index.getId(application));
+            row.put(COLUMN_PACKAGE_NAME, application.getPackageName());
+            row.put(COLUMN_NAME, application.getName());
+            row.put(COLUMN_VERSION_CODE, application.getVersionCode());
+            row.put(COLUMN_IGNORED, application.isIgnoredTemporarily() ? 1 : 0);
+            row.put(COLUMN_NUMBER_OF_WARNABLE_PERMISSIONS, application.getWarnablePermissions().size());
+            row.put(COLUMN_NUMBER_OF_NONWARNABLE_PERMISSIONS, application.getNonwarnablePermissions().size());
+            if (Arrays.asList(columns).contains(COLUMN_WARNABLE_PERMISSIONS))
+                row.put(COLUMN_WARNABLE_PERMISSIONS, TextUtils.join(PERMISSIONS_SEPARATOR, application.getWarnablePermissions()));
+            if (Arrays.asList(columns).contains(COLUMN_NONWARNABLE_PERMISSIONS))
+                row.put(COLUMN_NONWARNABLE_PERMISSIONS, TextUtils.join(PERMISSIONS_SEPARATOR, application.getNonwarnablePermissions()));
+            addRow(cursor, row);
+        }
+        setTotalCount(cursor, applications.size());
+        return cursor;
+    }
+
+    private static MatrixCursor queryPermissions(Uri uri, String[] columns, SnapshotIndex index, int offset, int limit) {
+        String permission = uri.getQueryParameter(PARAMETER_PERMISSION);
+        List<AndroidApplication> applications = index.getApplications(uri.getQueryParameter(PARAMETER_PACKAGE), permission);
+        MatrixCursor cursor = new MatrixCursor(columns);
+        int numberOfRows = 0;
+        for (AndroidApplication application : applications) {
+            List<String> warnablePermissions = application.getWarnablePermissions();
+            List<String> nonwarnablePermissions = application.getNonwarnablePermissions();
+            for (int i = 0; i < warnablePermissions.size() + nonwarnablePermissions.size(); i++) {
+                boolean warnable = i < warnablePermissions.size();
+                String heldPermission = warnable ? warnablePermissions.get(i) : nonwarnablePermissions.get(i - warnablePermissions.size());
+                if (permission != null && !permission.equals(heldPermission))
+                    continue;
+                if (numberOfRows >= offset && numberOfRows - offset < limit) {
+                    Map<String, Object> row = new HashMap<>(columns.length);
+                    row.put(COLUMN_ID, numberOfRows);
+                    row.put(COLUMN_PACKAGE_NAME, application.getPackageName());
+                    row.put(COLUMN_PERMISSION, heldPermission);
+                    row.put(COLUMN_WARNABLE, warnable ? 1 : 0);
+                    addRow(cursor, row);
+                }
+                numberOfRows++;
+            }
+        }
+        setTotalCount(cursor, numberOfRows);
+        return cursor;
+    }
+
+    private synchronized SnapshotIndex getSnapshotIndex() {
+        ScanSnapshot snapshot = ScanSnapshotStore.getScanSnapshotStore(getContext()).load();
+        if (snapshotIndex == null || snapshotIndex.snapshot != snapshot)
+            snapshotIndex = new SnapshotIndex(snapshot);
+        return snapshotIndex;
+    }
+
+    /**
+     * @return the projected columns, which must all be known; the default ones if there is no projection
+     */
+    private static String[] getColumns(Uri uri, String[] projection, String[] defaultColumns, String[] knownColumns) {
+        if (projection == null)
+            return defaultColumns;
+        for (String column : projection)
+            if (!Arrays.asList(knownColumns).contains(column))
+                throw new IllegalArgumentException("Unknown column " + column + " of " + uri);
+        return projection;
+    }
+
+    private static void addRow(MatrixCursor cursor, Map<String, Object> row) {
+        MatrixCursor.RowBuilder rowBuilder = cursor.newRow();
+        for (String column : cursor.getColumnNames())
+            rowBuilder.add(row.get(column));
+    }
+
+    private static void setTotalCount(MatrixCursor cursor, int totalCount) {
+        Bundle extras = new Bundle();
+        extras.putInt(ContentResolver.EXTRA_TOTAL_COUNT, totalCount);
+        cursor.setExtras(extras);
+    }
+
+    private static int getEndOfPage(int size, int offset, int limit) {
+        return (int) Math.min(size, (long) offset + limit);
+    }
+
+    private static int getIntParameter(Uri uri, String parameter, int defaultValue) {
+        String value = uri.getQueryParameter(parameter);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + parameter + " of " + uri);
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        switch (URI_MATCHER.match(uri)) {
+            case MATCH_SNAPSHOT:
+                return ContentResolver.CURSOR_ITEM_BASE_TYPE + "/vnd." + AUTHORITY + ".snapshot";
+            case MATCH_APPLICATIONS:
+                return ContentResolver.CURSOR_DIR_BASE_TYPE + "/vnd." + AUTHORITY + ".application";
+            case MATCH_PERMISSIONS:
+                return ContentResolver.CURSOR_DIR_BASE_TYPE + "/vnd." + AUTHORITY + ".permission";
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException("Scan results are read-only");
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("Scan results are read-only");
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("Scan results are read-only");
+    }
+
+    /**
+     * Lookups by package and by permission into one snapshot.
+     */
+    private static class SnapshotIndex {
+        private final ScanSnapshot snapshot;
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final Map<String, List<AndroidApplication>> applicationsByPermission = new HashMap<>();
+
+        private SnapshotIndex(ScanSnapshot snapshot) {
+            this.snapshot = snapshot;
+            List<AndroidApplication> applications = snapshot.getApplications();
+            for (int i = 0; i < applications.size(); i++) {
+                AndroidApplication application = applications.get(i);
+                ids.put(application.getPackageName(), i);
+                for (String permission : application.getWarnablePermissions())
+                    addApplicationOfPermission(permission, application);
+                for (String permission : application.getNonwarnablePermissions())
+                    addApplicationOfPermission(permission, application);
+            }
+        }
+
+        private void addApplicationOfPermission(String permission, AndroidApplication application) {
+            List<AndroidApplication> applications = applicationsByPermission.get(permission);
+            if (applications == null)
+                applicationsByPermission.put(permission, applications = new ArrayList<>(1));
+            applications.add(application);
+        }
+
+        private Map<String, Object> getSnapshotRow() {
+            Map<String, Object> row = new HashMap<>(2);
+            row.put(COLUMN_VERSION, snapshot.getVersion());
+            row.put(COLUMN_TIMESTAMP, snapshot.getTimestamp());
+            return row;
+        }
+
+        private int getId(AndroidApplication application) {
+            return ids.get(application.getPackageName());
+        }
+
+        /**
+         * @return the applications with the given package name and holding the given permission, either
+         * of which is not checked if null
+         */
+        private List<AndroidApplication> getApplications(String packageName, String permission) {
+            if (packageName == null)
+                return permission == null ? snapshot.getApplications() : getApplicationsOfPermission(permission);
+            Integer id = ids.get(packageName);
+            List<AndroidApplication> applications = new ArrayList<>(1);
+            if (id != null && (permission == null || getApplicationsOfPermission(permission).contains(snapshot.getApplications().get(id))))
+                applications.add(snapshot.getApplications().get(id));
+            return applications;
+        }
+
+        private List<AndroidApplication> getApplicationsOfPermission(String permission) {
+            List<AndroidApplication> applications = applicationsByPermission.get(permission);
+            return applications == null ? new ArrayList<AndroidApplication>(0) : applications;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.pm.PackageInfoCompat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import static open.com.permissionsmanager.ApplicationsDatabase.AOSP_APPS_PREFIX;
+import static open.com.permissionsmanager.ApplicationsDatabase.SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS;
+
+/**
+ * Classifies the granted permissions of every user installed application. The UI scan loads labels;
+ * the headless scan used by background wakeups reuses the labels of the persisted snapshot for
+ * applications whose version did not change. Icons are loaded lazily by {@link ApplicationIconCache}.
+ * Permission names are interned so that every application requesting a permission shares one copy.
+ * <p>
+ * The inventory is acquired with a single query returning every package with its requested
+ * permissions and their grant flags, so a scan costs a handful of binder calls rather than one per
+ * package plus one per requested permission.
+ * <p>
+ * System applications are only audited on request. They form a tier of their own, classified again
+ * only when one of them changes, the system is updated or the rules applying to them change.
+ */
+public class PermissionsScanner {
+    private static final String SHARED_PREF_KEY_SYSTEM_APPS_FINGERPRINT = "SYSTEM_APPS_FINGERPRINT";
+
+    private final Context context;
+    private final PackageManager pm;
+    private final SharedPreferences permissionsManagerSharedPreferences;
+    private final PermissionMetadataCache permissionMetadataCache;
+    private final PermissionPolicy permissionPolicy;
+    private final PermissionClassifier permissionClassifier;
+    private final boolean auditingSystemApps;
+    private final Map<String, AndroidApplication> previouslyScannedApplications = new HashMap<>();
+
+    public PermissionsScanner(Context context, boolean loadUiDetails) {
+        this.context = context;
+        pm = context.getPackageManager();
+        permissionsManagerSharedPreferences = MainUtils.getSharedPreferences(context);
+        permissionMetadataCache = new PermissionMetadataCache(context);
+        permissionPolicy = PermissionPolicyStore.getPermissionPolicyStore(context).getPolicy();
+        permissionClassifier = new PermissionClassifier(permissionMetadataCache, permissionPolicy);
+        auditingSystemApps = MainUtils.isAuditingSystemApps(context);
+        if (!loadUiDetails)
+            for (AndroidApplication application : ScanSnapshotStore.getScanSnapshotStore(context).load().getApplications())
+                previouslyScannedApplications.put(application.getPackageName(), application);
+    }
+
+    public ScanResult scan() {
+        List<AndroidApplication> applications = new ArrayList<>();
+        Map<String, PermissionChangeJournal.PackageState> scannedPackages = new HashMap<>();
+        List<PackageInfo> packages = getInstalledPackagesWithPermissions();
+        Set<String> ignoredPermissionsForAllApps = permissionsManagerSharedPreferences.getStringSet(context.getString(R.string.allowed_permissions), new HashSet<String>(0));
+        Set<String> temporarilyIgnoredApps = permissionsManagerSharedPreferences.getStringSet(SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, new HashSet<String>(0));
+        AndroidApplication androidApplication;
+        List<PackageInfo> systemPackages = new ArrayList<>();
+
+        for (PackageInfo packageInfo : packages)
+            permissionMetadataCache.addDefinitions(packageInfo);
+        for (PackageInfo packageInfo : packages) {
+            TaskScheduler.throwIfCancelled();
+            if (auditingSystemApps && isAuditedSystemApplication(packageInfo.applicationInfo))
+                systemPackages.add(packageInfo);
+            if (!isUserApplication(packageInfo.applicationInfo))
+                continue;  // Skip system apps and AOSP apps
+            androidApplication = createAndroidApplication(packageInfo, AndroidApplication.CURRENT_PROFILE, null, false, temporarilyIgnoredApps, ignoredPermissionsForAllApps);
+            scannedPackages.put(packageInfo.packageName, new PermissionChangeJournal.PackageState(androidApplication.getVersionCode(), getGrantedPermissions(androidApplication)));
+            if (androidApplication.getWarnablePermissions().size() == 0)
+                continue;
+            androidApplication.getWarnablePermissionGroups(); //aggregates the groups while still on the scan thread
+            applications.add(androidApplication);
+        }
+        if (auditingSystemApps)
+            applications.addAll(getSystemApplications(systemPackages, temporarilyIgnoredApps, ignoredPermissionsForAllApps));
+        Set<String> requestingPackages = new HashSet<>(scannedPackages.keySet());
+        for (PackageInfo packageInfo : systemPackages)
+            requestingPackages.add(packageInfo.packageName);
+        CustomPermissionGraph.getCustomPermissionGraph(context).update(packages, requestingPackages);
+        permissionMetadataCache.persist();
+        return new ScanResult(applications, scannedPackages);
+    }
+
+    /**
+     * @return the audited system applications with warnable permissions, reused from their snapshot
+     * unless something they depend on changed since they were last classified
+     */
+    private List<AndroidApplication> getSystemApplications(List<PackageInfo> systemPackages, Set<String> temporarilyIgnoredApps, Set<String> ignoredPermissionsForAllApps) {
+        ScanSnapshotStore systemAppsSnapshotStore = ScanSnapshotStore.getSystemAppsSnapshotStore(context);
+        long fingerprint = getSystemAppsFingerprint(systemPackages, temporarilyIgnoredApps, ignoredPermissionsForAllApps);
+        if (systemAppsSnapshotStore.load().getVersion() != 0 && permissionsManagerSharedPreferences.getLong(SHARED_PREF_KEY_SYSTEM_APPS_FINGERPRINT, 0) == fingerprint)
+            return systemAppsSnapshotStore.load().getApplications();
+        List<AndroidApplication> systemApplications = new ArrayList<>();
+        for (PackageInfo packageInfo : systemPackages) {
+            TaskScheduler.throwIfCancelled();
+            AndroidApplication androidApplication = createAndroidApplication(packageInfo, AndroidApplication.CURRENT_PROFILE, null, true, temporarilyIgnoredApps, ignoredPermissionsForAllApps);
+            if (androidApplication.getWarnablePermissions().size() == 0)
+                continue;
+            androidApplication.getWarnablePermissionGroups();
+            systemApplications.add(androidApplication);
+        }
+        systemAppsSnapshotStore.save(systemApplications);
+        permissionsManagerSharedPreferences.edit()
+                .putLong(SHARED_PREF_KEY_SYSTEM_APPS_FINGERPRINT, fingerprint)
+                .apply();
+        System.out.println("Classified " + systemPackages.size() + " system packages");
+        return systemApplications;
+    }
+
+    private long getSystemAppsFingerprint(List<PackageInfo> systemPackages, Set<String> temporarilyIgnoredApps, Set<String> ignoredPermissionsForAllApps) {
+        CRC32 crc32 = new CRC32();
+        update(crc32, Build.FINGERPRINT);
+        update(crc32, permissionPolicy.getSource());
+        update(crc32, new TreeSet<>(ignoredPermissionsForAllApps).toString());
+        for (PackageInfo packageInfo : systemPackages)
+            update(crc32, packageInfo.packageName
+                    + ' ' + PackageInfoCompat.getLongVersionCode(packageInfo)
+                    + ' ' + packageInfo.lastUpdateTime
+                    + ' ' + temporarilyIgnoredApps.contains(packageInfo.packageName)
+                    + ' ' + new TreeSet<>(permissionsManagerSharedPreferences.getStringSet(AppIgnoreLists.getPreferenceKey(packageInfo.packageName), new HashSet<String>(0))));
+        return crc32.getValue();
+    }
+
+    private static void update(CRC32 crc32, String value) {
+        crc32.update(value.getBytes(StandardCharsets.UTF_8));
+        crc32.update('\n');
+    }
+
+    /**
+     * Classifies a single package the same way {@link #scan()} does.
+     *
+     * @return a result holding the application even if it has no warnable permissions, or nothing
+     * if it is not installed or not a user application
+     */
+    public ScanResult scanPackage(String packageName) {
+        List<AndroidApplication> applications = new ArrayList<>(1);
+        Map<String, PermissionChangeJournal.PackageState> scannedPackages = new HashMap<>(1);
+        Set<String> ignoredPermissionsForAllApps = permissionsManagerSharedPreferences.getStringSet(context.getString(R.string.allowed_permissions), new HashSet<String>(0));
+        Set<String> temporarilyIgnoredApps = permissionsManagerSharedPreferences.getStringSet(SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, new HashSet<String>(0));
+        try {
+            PackageInfo packageInfo = pm.getPackageInfo(packageName, PackageManager.GET_PERMISSIONS);
+            permissionMetadataCache.addDefinitions(packageInfo);
+            if (isUserApplication(packageInfo.applicationInfo)) {
+                AndroidApplication androidApplication = createAndroidApplication(packageInfo, AndroidApplication.CURRENT_PROFILE, null, false, temporarilyIgnoredApps, ignoredPermissionsForAllApps);
+                scannedPackages.put(packageName, new PermissionChangeJournal.PackageState(androidApplication.getVersionCode(), getGrantedPermissions(androidApplication)));
+                androidApplication.getWarnablePermissionGroups();
+                applications.add(androidApplication);
+            }
+        } catch (PackageManager.NameNotFoundException e) {
+            System.out.println("Package " + packageName + " is no longer installed");
+        }
+        permissionMetadataCache.persist();
+        return new ScanResult(applications, scannedPackages);
+    }
+
+    /**
+     * Classifies the applications of another profile of the user. Grant state can not be read across
+     * profiles without INTERACT_ACROSS_USERS, so the permissions requested by their APKs are
+     * classified as if they were granted. Nothing is journaled for other profiles.
+     */
+    public ScanResult scanProfile(ProfileSource profileSource, long profile, List<ApplicationInfo> profileApplications) {
+        List<AndroidApplication> applications = new ArrayList<>();
+        Set<String> ignoredPermissionsForAllApps = permissionsManagerSharedPreferences.getStringSet(context.getString(R.string.allowed_permissions), new HashSet<String>(0));
+        Set<String> temporarilyIgnoredApps = permissionsManagerSharedPreferences.getStringSet(SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, new HashSet<String>(0));
+        for (ApplicationInfo applicationInfo : profileApplications) {
+            TaskScheduler.throwIfCancelled();
+            if (!isUserApplication(applicationInfo))
+                continue;
+            PackageInfo packageInfo = pm.getPackageArchiveInfo(applicationInfo.sourceDir, PackageManager.GET_PERMISSIONS);
+            if (packageInfo == null) {
+                System.out.println("Unable to read the APK of " + applicationInfo.packageName + " in profile " + profile + ", skipping it");
+                continue;
+            }
+            packageInfo.applicationInfo = applicationInfo;
+            AndroidApplication androidApplication = createAndroidApplication(packageInfo, profile, profileSource.getBadgedLabel(applicationInfo, profile), false, temporarilyIgnoredApps, ignoredPermissionsForAllApps);
+            if (androidApplication.getWarnablePermissions().size() == 0)
+                continue;
+            androidApplication.getWarnablePermissionGroups();
+            applications.add(androidApplication);
+        }
+        permissionMetadataCache.persist();
+        return new ScanResult(applications, new HashMap<String, PermissionChangeJournal.PackageState>(0));
+    }
+
+    /**
+     * Acquires every installed package with its requested permissions in one query, which the
+     * PackageManager pages across as many binder transactions as the inventory needs. Should the query
+     * still fail, e.g. on devices with a broken paging implementation, the packages are listed without
+     * their permissions and each user application is then queried on its own.
+     */
+    private List<PackageInfo> getInstalledPackagesWithPermissions() {
+        try {
+            return pm.getInstalledPackages(PackageManager.GET_PERMISSIONS);
+        } catch (RuntimeException e) {
+            System.out.println("Unable to query all packages with their permissions at once, querying them one by one " + e);
+        }
+        List<ApplicationInfo> installedApplications = pm.getInstalledApplications(0);
+        List<PackageInfo> packages = new ArrayList<>(installedApplications.size());
+        for (ApplicationInfo applicationInfo : installedApplications) {
+            TaskScheduler.throwIfCancelled();
+            if (!isUserApplication(applicationInfo) && !(auditingSystemApps && isAuditedSystemApplication(applicationInfo)))
+                continue;
+            try {
+                packages.add(pm.getPackageInfo(applicationInfo.packageName, PackageManager.GET_PERMISSIONS));
+            } catch (PackageManager.NameNotFoundException e) {
+                System.out.println("Name not found for package " + applicationInfo.packageName + ", skipping it");
+            }
+        }
+        return packages;
+    }
+
+    private static boolean isUserApplication(ApplicationInfo applicationInfo) {
+        return applicationInfo != null
+                && applicationInfo.enabled
+                && (applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) == 0
+                && !applicationInfo.packageName.startsWith(AOSP_APPS_PREFIX);
+    }
+
+    private boolean isAuditedSystemApplication(ApplicationInfo applicationInfo) {
+        return applicationInfo != null
+                && applicationInfo.enabled
+                && (applicationInfo.flags & (ApplicationInfo.FLAG_SYSTEM | ApplicationInfo.FLAG_UPDATED_SYSTEM_APP)) != 0
+                && permissionPolicy.isAuditedSystemPackage(applicationInfo.packageName);
+    }
+
+    /**
+     * @param name the label of the application, null to load it
+     */
+    @NonNull
+    private AndroidApplication createAndroidApplication(PackageInfo packageInfo, long profile, String name, boolean systemApp, Set<String> temporarilyIgnoredApps, Set<String> ignoredPermissionsForAllApps) {
+        ApplicationInfo applicationInfo = packageInfo.applicationInfo;
+        String key = AndroidApplication.getKey(profile, packageInfo.packageName);
+        ArrayList<String> nonwarnablePermission = new ArrayList<>();
+        List<String> warnablePermissions = new ArrayList<>(3);
+
+        if (packageInfo.requestedPermissions != null) {
+            List<String> grantedPermissions = new ArrayList<>(packageInfo.requestedPermissions.length);
+            for (int i = 0; i < packageInfo.requestedPermissions.length; i++)
+                if (profile != AndroidApplication.CURRENT_PROFILE || (packageInfo.requestedPermissionsFlags[i] & PackageInfo.REQUESTED_PERMISSION_GRANTED) != 0)
+                    grantedPermissions.add(packageInfo.requestedPermissions[i].intern());
+            permissionClassifier.classify(applicationInfo.packageName, grantedPermissions, ignoredPermissionsForAllApps,
+                    permissionsManagerSharedPreferences.getStringSet(AppIgnoreLists.getPreferenceKey(key), new HashSet<String>(0)), warnablePermissions, nonwarnablePermission);
+        }
+        nonwarnablePermission.trimToSize();
+        long versionCode = PackageInfoCompat.getLongVersionCode(packageInfo);
+
+        return new AndroidApplication.Builder(packageInfo.packageName)
+                .withName(name != null ? name : getApplicationName(applicationInfo, versionCode))
+                .withNonWarnablePermissions(nonwarnablePermission)
+                .withWarnablePermissions(warnablePermissions)
+                .withIgnoredTemporarily(temporarilyIgnoredApps.contains(key))
+                .withProfile(profile)
+                .withSystemApp(systemApp)
+                .withVersionCode(versionCode)
+                .withUid(applicationInfo.uid)
+                .withDangerousThreshold(getDangerousThreshold(packageInfo.packageName))
+                .build();
+    }
+
+    private static int getDangerousThreshold(String packageName) {
+        // Check if the app is WhatsApp and set a specific threshold
+        if (packageName.equals("com.whatsapp"))
+            return 10;
+        // For other apps, a random threshold between 1 to 5 which stays the same across scans
+        return new Random(packageName.hashCode()).nextInt(5) + 1;
+    }
+
+    @NonNull
+    private static Set<String> getGrantedPermissions(AndroidApplication androidApplication) {
+        Set<String> grantedPermissions = new HashSet<>(androidApplication.getWarnablePermissions());
+        grantedPermissions.addAll(androidApplication.getNonwarnablePermissions());
+        return grantedPermissions;
+    }
+
+    private String getApplicationName(ApplicationInfo applicationInfo, long versionCode) {
+        AndroidApplication previouslyScannedApplication = previouslyScannedApplications.get(applicationInfo.packageName);
+        if (previouslyScannedApplication != null && previouslyScannedApplication.getVersionCode() == versionCode)
+            return previouslyScannedApplication.getName();
+        try {
+            return pm.getApplicationLabel(applicationInfo).toString();
+        } catch (Exception e) {
+            System.out.println("This application has no name hence using its package name" + applicationInfo.packageName);
+            return applicationInfo.packageName;
+        }
+    }
+
+    public static class ScanResult {
+        private final List<AndroidApplication> applications;
+        private final Map<String, PermissionChangeJournal.PackageState> scannedPackages;
+
+        public ScanResult(List<AndroidApplication> applications, Map<String, PermissionChangeJournal.PackageState> scannedPackages) {
+            this.applications = applications;
+            this.scannedPackages = scannedPackages;
+        }
+
+        /**
+         * @return the applications with at least one warnable permission
+         */
+        public List<AndroidApplication> getApplications() {
+            return applications;
+        }
+
+        /**
+         * @return the state of every application that was classified, including the ones without warnable permissions
+         */
+        public Map<String, PermissionChangeJournal.PackageState> getScannedPackages() {
+            return scannedPackages;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * What the home screen widget and the quick settings tile show, derived from the persisted scan
+ * snapshot only, so that neither of them ever queries the PackageManager. The status is recomputed
+ * only when the snapshot version changes.
+ */
+public class PermissionsStatus {
+    private static final int MAX_TOP_OFFENDERS = 3;
+
+    private static PermissionsStatus permissionsStatus;
+    private final long snapshotVersion;
+    private final int numberOfApplicationsWithWarnablePermissions;
+    private final List<AndroidApplication> topOffenders;
+
+    private PermissionsStatus(long snapshotVersion, int numberOfApplicationsWithWarnablePermissions, List<AndroidApplication> topOffenders) {
+        this.snapshotVersion = snapshotVersion;
+        this.numberOfApplicationsWithWarnablePermissions = numberOfApplicationsWithWarnablePermissions;
+        this.topOffenders = topOffenders;
+    }
+
+    public synchronized static PermissionsStatus getPermissionsStatus(Context context) {
+        ScanSnapshot snapshot = ScanSnapshotStore.getScanSnapshotStore(context).load();
+        if (permissionsStatus == null || permissionsStatus.snapshotVersion != snapshot.getVersion())
+            permissionsStatus = of(snapshot);
+        return permissionsStatus;
+    }
+
+    private static PermissionsStatus of(ScanSnapshot snapshot) {
+        List<AndroidApplication> warnableApplications = new ArrayList<>();
+        for (AndroidApplication application : snapshot.getApplications())
+            if (!application.isIgnoredTemporarily() && application.getNumberOfWarnablePermissions() > 0)
+                warnableApplications.add(application);
+        Collections.sort(warnableApplications, new Comparator<AndroidApplication>() {
+            @Override
+            public int compare(AndroidApplication first, AndroidApplication second) {
+                return Integer.compare(second.getNumberOfWarnablePermissions(), first.getNumberOfWarnablePermissions());
+            }
+        });
+        List<AndroidApplication> topOffenders = new ArrayList<>(warnableApplications.subList(0, Math.min(MAX_TOP_OFFENDERS, warnableApplications.size())));
+        return new PermissionsStatus(snapshot.getVersion(), warnableApplications.size(), topOffenders);
+    }
+
+    /**
+     * @return whether a scan ever completed; before that there is no status to show
+     */
+    public boolean isAvailable() {
+        return snapshotVersion != 0;
+    }
+
+    public long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
+    public int getNumberOfApplicationsWithWarnablePermissions() {
+        return numberOfApplicationsWithWarnablePermissions;
+    }
+
+    public List<AndroidApplication> getTopOffenders() {
+        return topOffenders;
+    }
+
+    public String getSummary(Context context) {
+        if (!isAvailable())
+            return context.getString(R.string.status_not_scanned);
+        return context.getResources().getQuantityString(R.plurals.status_applications_with_cautions, numberOfApplicationsWithWarnablePermissions, numberOfApplicationsWithWarnablePermissions);
+    }
+
+    public String getTopOffendersDescription(Context context) {
+        StringBuilder description = new StringBuilder();
+        for (AndroidApplication application : topOffenders) {
+            if (description.length() > 0)
+                description.append('\n');
+            description.append(context.getString(R.string.statistics_count, application.getName(), application.getNumberOfWarnablePermissions()));
+        }
+        return description.toString();
+    }
+}
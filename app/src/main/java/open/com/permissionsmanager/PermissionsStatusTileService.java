@@ -0,0 +1,79 @@
+package open.com.permissionsmanager;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.service.quicksettings.Tile;
+import android.service.quicksettings.TileService;
+
+import androidx.annotation.RequiresApi;
+
+/**
+ * Quick settings tile showing {@link PermissionsStatus}. The tile is only rendered while it is
+ * visible, and asked to listen again whenever a new scan snapshot version is saved.
+ */
+@RequiresApi(Build.VERSION_CODES.N)
+public class PermissionsStatusTileService extends TileService {
+    private boolean listening;
+
+    /**
+     * The snapshot is read from disk, so the status is loaded off the main thread and the tile
+     * rendered once it is, unless the tile stopped listening meanwhile.
+     */
+    @Override
+    public void onStartListening() {
+        super.onStartListening();
+        listening = true;
+        AppExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                final PermissionsStatus permissionsStatus = PermissionsStatus.getPermissionsStatus(PermissionsStatusTileService.this);
+                AppExecutors.runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (listening)
+                            updateTile(permissionsStatus);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void onStopListening() {
+        listening = false;
+        super.onStopListening();
+    }
+
+    private void updateTile(PermissionsStatus permissionsStatus) {
+        Tile tile = getQsTile();
+        if (tile == null)
+            return;
+        tile.setState(permissionsStatus.getNumberOfApplicationsWithWarnablePermissions() > 0 ? Tile.STATE_ACTIVE : Tile.STATE_INACTIVE);
+        tile.setContentDescription(permissionsStatus.getSummary(this));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            tile.setLabel(getString(R.string.app_name));
+            tile.setSubtitle(permissionsStatus.getSummary(this));
+        } else {
+            tile.setLabel(permissionsStatus.getSummary(this));
+        }
+        tile.updateTile();
+    }
+
+    @Override
+    public void onClick() {
+        super.onClick();
+        Intent intent = new Intent(this, MainActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        startActivityAndCollapse(intent);
+    }
+
+    /**
+     * Asks the system to render the tile again, e.g. because the scan snapshot changed.
+     */
+    public static void update(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+            requestListeningState(context, new ComponentName(context, PermissionsStatusTileService.class));
+    }
+}
@@ -0,0 +1,57 @@
+package open.com.permissionsmanager;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.view.View;
+import android.widget.RemoteViews;
+
+import static android.app.PendingIntent.FLAG_IMMUTABLE;
+import static android.app.PendingIntent.FLAG_UPDATE_CURRENT;
+import static open.com.permissionsmanager.ValidatePermissionsBroadcastReceiver.GENERIC_REQUEST_CODE;
+
+/**
+ * Home screen widget showing {@link PermissionsStatus}. It has no update period: it is rendered when
+ * it is placed and again whenever a new scan snapshot version is saved.
+ */
+public class PermissionsStatusWidgetProvider extends AppWidgetProvider {
+    @Override
+    public void onUpdate(final Context context, final AppWidgetManager appWidgetManager, final int[] appWidgetIds) {
+        //the snapshot is read from disk, so the widgets are rendered off the main thread
+        final PendingResult pendingResult = goAsync();
+        AppExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    appWidgetManager.updateAppWidget(appWidgetIds, getRemoteViews(context));
+                } finally {
+                    pendingResult.finish();
+                }
+            }
+        });
+    }
+
+    /**
+     * Renders every placed widget again, e.g. because the scan snapshot changed.
+     */
+    public static void update(Context context) {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(context, PermissionsStatusWidgetProvider.class));
+        if (appWidgetIds.length != 0)
+            appWidgetManager.updateAppWidget(appWidgetIds, getRemoteViews(context));
+    }
+
+    private static RemoteViews getRemoteViews(Context context) {
+        PermissionsStatus permissionsStatus = PermissionsStatus.getPermissionsStatus(context);
+        RemoteViews remoteViews = new RemoteViews(context.getPackageName(), R.layout.permissions_status_widget);
+        remoteViews.setTextViewText(R.id.status_summary, permissionsStatus.getSummary(context));
+        String topOffenders = permissionsStatus.getTopOffendersDescription(context);
+        remoteViews.setTextViewText(R.id.status_top_offenders, topOffenders);
+        remoteViews.setViewVisibility(R.id.status_top_offenders, topOffenders.isEmpty() ? View.GONE : View.VISIBLE);
+        remoteViews.setOnClickPendingIntent(R.id.status_widget, PendingIntent.getActivity(context, GENERIC_REQUEST_CODE, new Intent(context, MainActivity.class), FLAG_UPDATE_CURRENT | FLAG_IMMUTABLE));
+        return remoteViews;
+    }
+}
@@ -0,0 +1,5 @@
+package open.com.permissionsmanager;
+
+public interface ProfileChangeListener {
+    void profilePackagesChanged(long profile);
+}
@@ -0,0 +1,33 @@
+package open.com.permissionsmanager;
+
+import android.content.pm.ApplicationInfo;
+
+import java.util.List;
+
+/**
+ * Source of the profiles of the user besides the one the app runs in, such as a work profile, and of
+ * the applications installed in them. Implemented on top of UserManager and LauncherApps on devices,
+ * and replaceable by a fake wherever a device is not available.
+ */
+public interface ProfileSource {
+    /**
+     * @return the serial numbers of the other profiles of the user, empty if there are none
+     */
+    List<Long> getOtherProfiles();
+
+    /**
+     * @return the applications of the profile, null if they can not be listed right now, e.g. because
+     * the profile is turned off
+     */
+    List<ApplicationInfo> getApplications(long profile);
+
+    /**
+     * @return the label of the application, badged with the profile it belongs to
+     */
+    String getBadgedLabel(ApplicationInfo applicationInfo, long profile);
+
+    /**
+     * Calls the listener whenever packages are added, removed or changed in one of the other profiles.
+     */
+    void setProfileChangeListener(ProfileChangeListener profileChangeListener);
+}
@@ -0,0 +1,8 @@
+package open.com.permissionsmanager;
+
+public interface ProtectionLevelSource {
+    /**
+     * @return the protection level of the permission, flags included, or a negative value if nothing defines it
+     */
+    int getProtectionLevel(String permission);
+}
@@ -0,0 +1,27 @@
+package open.com.permissionsmanager;
+
+import java.util.List;
+
+public class ScanSnapshot {
+    private final long version;
+    private final long timestamp;
+    private final List<AndroidApplication> applications;
+
+    public ScanSnapshot(long version, long timestamp, List<AndroidApplication> applications) {
+        this.version = version;
+        this.timestamp = timestamp;
+        this.applications = applications;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public List<AndroidApplication> getApplications() {
+        return applications;
+    }
+}
@@ -0,0 +1,191 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persists the results of the latest scan, without icons, so that they can be reused by processes
+ * that did not run the scan themselves. The snapshot version only changes when its content does,
+ * and only then are the widget and the quick settings tile rendered again. Each profile of the user
+ * has its own snapshot; the widget and the tile show the one of the current profile. Audited system
+ * applications are kept in a snapshot of their own, as they only change with updates.
+ */
+public class ScanSnapshotStore {
+    private static final String SNAPSHOT_FILE_NAME = "scan_snapshot";
+    private static final int FORMAT_VERSION = 2;
+
+    private static final Map<Long, ScanSnapshotStore> scanSnapshotStores = new HashMap<>();
+    private static ScanSnapshotStore systemAppsSnapshotStore;
+    private final Context context;
+    private final long profile;
+    private final boolean systemApps;
+    private final File snapshotFile;
+    private ScanSnapshot snapshot;
+    private long checksum;
+
+    private ScanSnapshotStore(Context context, long profile, boolean systemApps, String fileName) {
+        this(context, profile, systemApps, new File(context.getFilesDir(), fileName));
+    }
+
+    ScanSnapshotStore(Context context, long profile, boolean systemApps, File snapshotFile) {
+        this.context = context;
+        this.profile = profile;
+        this.systemApps = systemApps;
+        this.snapshotFile = snapshotFile;
+    }
+
+    public static ScanSnapshotStore getScanSnapshotStore(Context context) {
+        return getScanSnapshotStore(context, AndroidApplication.CURRENT_PROFILE);
+    }
+
+    public synchronized static ScanSnapshotStore getScanSnapshotStore(Context context, long profile) {
+        ScanSnapshotStore scanSnapshotStore = scanSnapshotStores.get(profile);
+        if (scanSnapshotStore == null)
+            scanSnapshotStores.put(profile, scanSnapshotStore = new ScanSnapshotStore(context.getApplicationContext(), profile, false, profile == AndroidApplication.CURRENT_PROFILE ? SNAPSHOT_FILE_NAME : SNAPSHOT_FILE_NAME + "_" + profile));
+        return scanSnapshotStore;
+    }
+
+    public synchronized static ScanSnapshotStore getSystemAppsSnapshotStore(Context context) {
+        if (systemAppsSnapshotStore == null)
+            systemAppsSnapshotStore = new ScanSnapshotStore(context.getApplicationContext(), AndroidApplication.CURRENT_PROFILE, true, SNAPSHOT_FILE_NAME + "_system");
+        return systemAppsSnapshotStore;
+    }
+
+    public synchronized ScanSnapshot load() {
+        if (snapshot != null)
+            return snapshot;
+        snapshot = new ScanSnapshot(0, 0, new ArrayList<AndroidApplication>(0));
+        if (!snapshotFile.exists())
+            return snapshot;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+            if (input.readInt() != FORMAT_VERSION)
+                return snapshot;
+            long version = input.readLong();
+            long timestamp = input.readLong();
+            long storedChecksum = input.readLong();
+            snapshot = new ScanSnapshot(version, timestamp, readApplications(input));
+            checksum = storedChecksum;
+        } catch (IOException e) {
+            System.out.println("Unable to read scan snapshot " + e);
+        } finally {
+            closeQuietly(input);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Replaces the persisted snapshot with the given applications, unless they are identical to it.
+     *
+     * @return the snapshot that is persisted after the call
+     */
+    public synchronized ScanSnapshot save(List<AndroidApplication> applications) {
+        load();
+        try {
+            ByteArrayOutputStream serializedApplications = new ByteArrayOutputStream();
+            writeApplications(new DataOutputStream(serializedApplications), applications);
+            byte[] content = serializedApplications.toByteArray();
+            CRC32 crc32 = new CRC32();
+            crc32.update(content);
+            if (snapshot.getVersion() != 0 && crc32.getValue() == checksum)
+                return snapshot;
+            ScanSnapshot newSnapshot = new ScanSnapshot(snapshot.getVersion() + 1, System.currentTimeMillis(), new ArrayList<>(applications));
+            File temporaryFile = new File(snapshotFile.getPath() + ".tmp");
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+            try {
+                output.writeInt(FORMAT_VERSION);
+                output.writeLong(newSnapshot.getVersion());
+                output.writeLong(newSnapshot.getTimestamp());
+                output.writeLong(crc32.getValue());
+                output.write(content);
+            } finally {
+                output.close();
+            }
+            if (!temporaryFile.renameTo(snapshotFile))
+                throw new IOException("Unable to replace " + snapshotFile);
+            snapshot = newSnapshot;
+            checksum = crc32.getValue();
+            if (profile == AndroidApplication.CURRENT_PROFILE && !systemApps) {
+                PermissionsStatusWidgetProvider.update(context);
+                PermissionsStatusTileService.update(context);
+                context.getContentResolver().notifyChange(PermissionsProvider.BASE_URI, null);
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to save scan snapshot " + e);
+        }
+        return snapshot;
+    }
+
+    private static void writeApplications(DataOutputStream output, List<AndroidApplication> applications) throws IOException {
+        output.writeInt(applications.size());
+        for (AndroidApplication application : applications) {
+            output.writeUTF(application.getPackageName());
+            output.writeUTF(application.getName() == null ? application.getPackageName() : application.getName());
+            output.writeLong(application.getVersionCode());
+            output.writeInt(application.getUid());
+            output.writeBoolean(application.isIgnoredTemporarily());
+            output.writeInt(application.getDangerousThreshold());
+            writePermissions(output, application.getWarnablePermissions());
+            writePermissions(output, application.getNonwarnablePermissions());
+        }
+        output.flush();
+    }
+
+    private List<AndroidApplication> readApplications(DataInputStream input) throws IOException {
+        int numberOfApplications = input.readInt();
+        List<AndroidApplication> applications = new ArrayList<>(numberOfApplications);
+        for (int i = 0; i < numberOfApplications; i++) {
+            applications.add(new AndroidApplication.Builder(input.readUTF())
+                    .withName(input.readUTF())
+                    .withVersionCode(input.readLong())
+                    .withUid(input.readInt())
+                    .withIgnoredTemporarily(input.readBoolean())
+                    .withDangerousThreshold(input.readInt())
+                    .withWarnablePermissions(readPermissions(input))
+                    .withNonWarnablePermissions(readPermissions(input))
+                    .withProfile(profile)
+                    .withSystemApp(systemApps)
+                    .build());
+        }
+        return applications;
+    }
+
+    private static void writePermissions(DataOutputStream output, List<String> permissions) throws IOException {
+        output.writeInt(permissions.size());
+        for (String permission : permissions)
+            output.writeUTF(permission);
+    }
+
+    private static List<String> readPermissions(DataInputStream input) throws IOException {
+        int numberOfPermissions = input.readInt();
+        List<String> permissions = new ArrayList<>(numberOfPermissions);
+        for (int i = 0; i < numberOfPermissions; i++)
+            permissions.add(input.readUTF().intern());
+        return permissions;
+    }
+
+    private static void closeQuietly(DataInputStream stream) {
+        if (stream == null)
+            return;
+        try {
+            stream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
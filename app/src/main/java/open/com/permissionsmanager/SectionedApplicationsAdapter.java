@@ -0,0 +1,234 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists the warnable and the temporarily ignored applications in one list, each section under a
+ * header that collapses it. Applications are laid out in rows of a few columns, like a grid, so the
+ * list only ever binds the rows on screen.
+ * <p>
+ * Applications are read from the {@link ApplicationsPagingSource} a page at a time: the next page of
+ * a section is loaded when a row close to the end of its loaded pages is bound. A new source keeps
+ * as many applications loaded as the one it replaces, so an update does not scroll the list back.
+ */
+public class SectionedApplicationsAdapter extends BaseAdapter {
+    private static final int PAGE_SIZE = 50;
+    /**
+     * Rows from the end of the loaded pages of a section at which the next page is loaded.
+     */
+    private static final int PREFETCH_DISTANCE = 4;
+    private static final int VIEW_TYPE_HEADER = 0;
+    private static final int VIEW_TYPE_ROW = 1;
+    private static final int[] SECTION_TITLES = {R.string.warnable_apps, R.string.temporarily_ignored_apps};
+
+    private final Context context;
+    private final LayoutInflater layoutInflater;
+    private final ApplicationIconCache applicationIconCache;
+    private final int numberOfColumns;
+    private final ApplicationClickListener applicationClickListener;
+    private ApplicationsPagingSource pagingSource = ApplicationsPagingSource.EMPTY;
+    private final List<List<AndroidApplication>> loadedApplications = new ArrayList<>(ApplicationsPagingSource.NUMBER_OF_SECTIONS);
+    private final boolean[] collapsed = new boolean[ApplicationsPagingSource.NUMBER_OF_SECTIONS];
+    private final boolean[] pageLoadPosted = new boolean[ApplicationsPagingSource.NUMBER_OF_SECTIONS];
+
+    public SectionedApplicationsAdapter(Context context, int numberOfColumns, ApplicationClickListener applicationClickListener) {
+        this.context = context;
+        this.numberOfColumns = numberOfColumns;
+        this.applicationClickListener = applicationClickListener;
+        layoutInflater = LayoutInflater.from(context);
+        applicationIconCache = ApplicationIconCache.getApplicationIconCache(context);
+        collapsed[ApplicationsPagingSource.SECTION_IGNORED] = true;
+        for (int section = 0; section < ApplicationsPagingSource.NUMBER_OF_SECTIONS; section++)
+            loadedApplications.add(new ArrayList<AndroidApplication>(0));
+    }
+
+    public void setPagingSource(ApplicationsPagingSource pagingSource) {
+        this.pagingSource = pagingSource;
+        for (int section = 0; section < ApplicationsPagingSource.NUMBER_OF_SECTIONS; section++) {
+            int numberOfLoadedPages = Math.max(1, (loadedApplications.get(section).size() + PAGE_SIZE - 1) / PAGE_SIZE);
+            loadedApplications.set(section, new ArrayList<>(pagingSource.load(section, 0, numberOfLoadedPages * PAGE_SIZE)));
+        }
+        notifyDataSetChanged();
+    }
+
+    public void toggleSection(int section) {
+        collapsed[section] = !collapsed[section];
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        int count = 0;
+        for (int section = 0; section < ApplicationsPagingSource.NUMBER_OF_SECTIONS; section++)
+            count += 1 + getNumberOfRows(section);
+        return count;
+    }
+
+    private int getNumberOfRows(int section) {
+        if (collapsed[section])
+            return 0;
+        return (loadedApplications.get(section).size() + numberOfColumns - 1) / numberOfColumns;
+    }
+
+    /**
+     * @return the section of the position, and the row in the section, -1 for its header
+     */
+    private int[] getSectionAndRow(int position) {
+        for (int section = 0; section < ApplicationsPagingSource.NUMBER_OF_SECTIONS; section++) {
+            int sectionCount = 1 + getNumberOfRows(section);
+            if (position < sectionCount)
+                return new int[]{section, position - 1};
+            position -= sectionCount;
+        }
+        throw new IndexOutOfBoundsException("No row at " + position);
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return null;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public int getViewTypeCount() {
+        return 2;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return getSectionAndRow(position)[1] == -1 ? VIEW_TYPE_HEADER : VIEW_TYPE_ROW;
+    }
+
+    @Override
+    public boolean areAllItemsEnabled() {
+        return false;
+    }
+
+    @Override
+    public boolean isEnabled(int position) {
+        return false; //headers and applications handle their own clicks
+    }
+
+    @Override
+    public View getView(int position, View reusableView, ViewGroup parent) {
+        int[] sectionAndRow = getSectionAndRow(position);
+        if (sectionAndRow[1] == -1)
+            return getHeaderView(sectionAndRow[0], reusableView, parent);
+        if (sectionAndRow[1] >= getNumberOfRows(sectionAndRow[0]) - PREFETCH_DISTANCE)
+            postNextPageLoad(sectionAndRow[0], parent);
+        return getRowView(sectionAndRow[0], sectionAndRow[1], reusableView, parent);
+    }
+
+    private View getHeaderView(final int section, View reusableView, ViewGroup parent) {
+        if (reusableView == null)
+            reusableView = layoutInflater.inflate(R.layout.section_header, parent, false);
+        TextView header = (TextView) reusableView;
+        header.setText(SECTION_TITLES[section]);
+        Drawable arrow = ContextCompat.getDrawable(context, collapsed[section] ? R.drawable.ic_keyboard_arrow_down_24dp : R.drawable.ic_keyboard_arrow_up_24dp);
+        header.setCompoundDrawablesWithIntrinsicBounds(null, null, arrow, null);
+        header.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                toggleSection(section);
+            }
+        });
+        return header;
+    }
+
+    private View getRowView(int section, int row, View reusableView, ViewGroup parent) {
+        LinearLayout rowView = (LinearLayout) reusableView;
+        if (rowView == null) {
+            rowView = (LinearLayout) layoutInflater.inflate(R.layout.application_row, parent, false);
+            for (int column = 0; column < numberOfColumns; column++) {
+                View cell = layoutInflater.inflate(R.layout.application_info_row, rowView, false);
+                rowView.addView(cell, new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT, 1));
+            }
+        }
+        List<AndroidApplication> applications = loadedApplications.get(section);
+        for (int column = 0; column < numberOfColumns; column++) {
+            int index = row * numberOfColumns + column;
+            View cell = rowView.getChildAt(column);
+            if (index < applications.size()) {
+                cell.setVisibility(View.VISIBLE);
+                bindApplication(cell, applications.get(index));
+            } else
+                cell.setVisibility(View.INVISIBLE);
+        }
+        return rowView;
+    }
+
+    private void bindApplication(View cell, final AndroidApplication androidApplication) {
+        TextView applicationName = (TextView) cell.findViewById(R.id.title);
+        ImageView appIcon = (ImageView) cell.findViewById(R.id.app_icon);
+        bindIcon(appIcon, androidApplication.getPackageName());
+        applicationName.setText(androidApplication.getName());
+        TextView warningCount = (TextView) cell.findViewById(R.id.warning_count_text);
+        warningCount.setText(String.valueOf(androidApplication.getNumberOfWarnablePermissions()));
+        cell.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                applicationClickListener.applicationClicked(androidApplication);
+            }
+        });
+        cell.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                applicationClickListener.applicationLongClicked(androidApplication);
+                return true;
+            }
+        });
+    }
+
+    private void bindIcon(final ImageView appIcon, final String packageName) {
+        appIcon.setTag(packageName);
+        Drawable icon = applicationIconCache.getCachedIcon(packageName);
+        appIcon.setImageDrawable(icon);
+        if (icon != null)
+            return;
+        applicationIconCache.loadIcon(packageName, new DatabaseCallback<Drawable>() {
+            @Override
+            public void onComplete(Drawable loadedIcon) {
+                if (packageName.equals(appIcon.getTag())) //the view was not recycled for another application meanwhile
+                    appIcon.setImageDrawable(loadedIcon);
+            }
+        });
+    }
+
+    /**
+     * Loads the next page after the current layout pass, which must not see the count change.
+     */
+    private void postNextPageLoad(final int section, ViewGroup parent) {
+        if (pageLoadPosted[section] || loadedApplications.get(section).size() >= pagingSource.getSize(section))
+            return;
+        pageLoadPosted[section] = true;
+        parent.post(new Runnable() {
+            @Override
+            public void run() {
+                pageLoadPosted[section] = false;
+                List<AndroidApplication> applications = loadedApplications.get(section);
+                List<AndroidApplication> page = pagingSource.load(section, applications.size(), PAGE_SIZE);
+                if (page.isEmpty())
+                    return;
+                applications.addAll(page);
+                notifyDataSetChanged();
+            }
+        });
+    }
+}
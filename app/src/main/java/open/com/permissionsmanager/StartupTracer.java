@@ -0,0 +1,246 @@
+package open.com.permissionsmanager;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures cold launches: the time from the start of the process to the first frame of
+ * {@link MainActivity} and to the first frame showing scan results. Both spans, the main thread
+ * sections of the critical path and the initialization deferred off it are visible as trace sections
+ * in a system trace; the spans and the time the deferred initialization took are logged and recorded
+ * per launch, along with the version of the app, so that the diagnostics can compare the launches of
+ * this version with the ones of the previous one. The latest launches of both versions are kept, up
+ * to {@link #MAX_RECORDED_LAUNCHES_PER_VERSION} each, so launching this version often never trims
+ * away the launches it is compared with.
+ * <p>
+ * A launch is cold when the process was started to show an activity; a process started for a
+ * broadcast and later brought to the foreground is not measured.
+ */
+public class StartupTracer {
+    public static final String SHARED_PREF_KEY_LAUNCHES = "STARTUP_LAUNCHES";
+    private static final String SECTION_TIME_TO_FIRST_FRAME = "time-to-first-frame";
+    private static final String SECTION_TIME_TO_CONTENT = "time-to-content";
+    private static final int TIME_TO_FIRST_FRAME_COOKIE = 1;
+    private static final int TIME_TO_CONTENT_COOKIE = 2;
+    static final int MAX_RECORDED_LAUNCHES_PER_VERSION = 20;
+    private static final String LAUNCHES_SEPARATOR = ";";
+    private static final String FIELDS_SEPARATOR = ",";
+
+    private static long processStart;
+    private static boolean measuring = false;
+    private static long timeToFirstFrame = -1;
+    private static final AtomicLong deferredInitializationDuration = new AtomicLong();
+
+    /**
+     * Called first thing when the application is created.
+     */
+    public static void onApplicationCreate() {
+        processStart = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime();
+        ActivityManager.RunningAppProcessInfo processInfo = new ActivityManager.RunningAppProcessInfo();
+        ActivityManager.getMyMemoryState(processInfo);
+        measuring = processInfo.importance == ActivityManager.RunningAppProcessInfo.IMPORTANCE_FOREGROUND;
+        if (measuring) {
+            beginAsyncSection(SECTION_TIME_TO_FIRST_FRAME, TIME_TO_FIRST_FRAME_COOKIE);
+            beginAsyncSection(SECTION_TIME_TO_CONTENT, TIME_TO_CONTENT_COOKIE);
+        }
+    }
+
+    /**
+     * Starts a section of the current thread; sections nest and must be ended on the same thread.
+     */
+    public static void beginSection(String section) {
+        Trace.beginSection(section);
+    }
+
+    public static void endSection() {
+        Trace.endSection();
+    }
+
+    /**
+     * @return the runnable, traced and with its duration counted as initialization deferred off the critical path
+     */
+    public static Runnable deferred(final String section, final Runnable runnable) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtime();
+                beginSection(section);
+                try {
+                    runnable.run();
+                } finally {
+                    endSection();
+                    deferredInitializationDuration.addAndGet(SystemClock.elapsedRealtime() - start);
+                }
+            }
+        };
+    }
+
+    public static synchronized void onFirstFrame() {
+        if (!measuring || timeToFirstFrame != -1)
+            return;
+        timeToFirstFrame = SystemClock.elapsedRealtime() - processStart;
+        endAsyncSection(SECTION_TIME_TO_FIRST_FRAME, TIME_TO_FIRST_FRAME_COOKIE);
+    }
+
+    /**
+     * Called once scan results are drawn; completes the measurement of the launch.
+     */
+    public static synchronized void onContentShown(final Context context) {
+        if (!measuring || timeToFirstFrame == -1)
+            return;
+        measuring = false;
+        final long timeToContent = SystemClock.elapsedRealtime() - processStart;
+        endAsyncSection(SECTION_TIME_TO_CONTENT, TIME_TO_CONTENT_COOKIE);
+        final long firstFrame = timeToFirstFrame;
+        System.out.println("cold launch: first frame after " + firstFrame + "ms, content after " + timeToContent
+                + "ms, " + deferredInitializationDuration.get() + "ms of initialization deferred");
+        AppExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                recordLaunch(context, new Launch(BuildConfig.VERSION_CODE, firstFrame, timeToContent, deferredInitializationDuration.get()));
+            }
+        });
+    }
+
+    private static synchronized void recordLaunch(Context context, Launch launch) {
+        List<String> launches = addLaunch(getRecordedLaunches(context), launch);
+        MainUtils.getSharedPreferences(context).edit()
+                .putString(SHARED_PREF_KEY_LAUNCHES, TextUtils.join(LAUNCHES_SEPARATOR, launches))
+                .apply();
+    }
+
+    /**
+     * @return the launches to record: the latest ones of the previous version and of the version of
+     * the given launch, followed by the launch; launches of older versions are dropped
+     */
+    static List<String> addLaunch(List<String> recordedLaunches, Launch launch) {
+        List<Launch> launchesOfThisVersion = getLaunchesOfVersion(recordedLaunches, launch.versionCode);
+        launchesOfThisVersion.add(launch);
+        List<String> launches = new ArrayList<>(2 * MAX_RECORDED_LAUNCHES_PER_VERSION);
+        for (Launch recordedLaunch : getLatest(getLaunchesOfVersion(recordedLaunches, getPreviousVersion(recordedLaunches, launch.versionCode))))
+            launches.add(recordedLaunch.toString());
+        for (Launch recordedLaunch : getLatest(launchesOfThisVersion))
+            launches.add(recordedLaunch.toString());
+        return launches;
+    }
+
+    private static List<Launch> getLatest(List<Launch> launches) {
+        return launches.subList(Math.max(0, launches.size() - MAX_RECORDED_LAUNCHES_PER_VERSION), launches.size());
+    }
+
+    /**
+     * @return the launches of the version, oldest first
+     */
+    static List<Launch> getLaunchesOfVersion(List<String> recordedLaunches, long versionCode) {
+        List<Launch> launches = new ArrayList<>();
+        for (String recordedLaunch : recordedLaunches) {
+            Launch launch = Launch.parse(recordedLaunch);
+            if (launch != null && launch.versionCode == versionCode)
+                launches.add(launch);
+        }
+        return launches;
+    }
+
+    /**
+     * @return the latest version launched other than the given one, -1 if there is none
+     */
+    static long getPreviousVersion(List<String> recordedLaunches, long versionCode) {
+        long previousVersion = -1;
+        for (String recordedLaunch : recordedLaunches) {
+            Launch launch = Launch.parse(recordedLaunch);
+            if (launch != null && launch.versionCode != versionCode)
+                previousVersion = Math.max(previousVersion, launch.versionCode);
+        }
+        return previousVersion;
+    }
+
+    private static List<String> getRecordedLaunches(Context context) {
+        String launches = MainUtils.getSharedPreferences(context).getString(SHARED_PREF_KEY_LAUNCHES, "");
+        if (launches.isEmpty())
+            return new ArrayList<>(0);
+        return Arrays.asList(launches.split(LAUNCHES_SEPARATOR));
+    }
+
+    /**
+     * @return the lines describing the recorded launches, for the diagnostics
+     */
+    public static List<String> getDiagnostics(Context context) {
+        List<String> recordedLaunches = getRecordedLaunches(context);
+        List<Launch> launchesOfThisVersion = getLaunchesOfVersion(recordedLaunches, BuildConfig.VERSION_CODE);
+        List<Launch> launchesOfPreviousVersion = getLaunchesOfVersion(recordedLaunches, getPreviousVersion(recordedLaunches, BuildConfig.VERSION_CODE));
+        List<String> diagnostics = new ArrayList<>(4);
+        if (launchesOfThisVersion.isEmpty()) {
+            diagnostics.add(context.getString(R.string.diagnostics_no_launch_measured));
+            return diagnostics;
+        }
+        Launch lastLaunch = launchesOfThisVersion.get(launchesOfThisVersion.size() - 1);
+        diagnostics.add(context.getString(R.string.diagnostics_last_launch, lastLaunch.timeToFirstFrame, lastLaunch.timeToContent));
+        diagnostics.add(context.getString(R.string.diagnostics_median_launch, launchesOfThisVersion.size(),
+                getMedian(launchesOfThisVersion, true), getMedian(launchesOfThisVersion, false)));
+        if (!launchesOfPreviousVersion.isEmpty())
+            diagnostics.add(context.getString(R.string.diagnostics_previous_version_launch, launchesOfPreviousVersion.size(),
+                    getMedian(launchesOfPreviousVersion, true), getMedian(launchesOfPreviousVersion, false)));
+        diagnostics.add(context.getString(R.string.diagnostics_deferred_initialization, lastLaunch.deferredInitializationDuration));
+        return diagnostics;
+    }
+
+    static long getMedian(List<Launch> launches, boolean firstFrame) {
+        List<Long> durations = new ArrayList<>(launches.size());
+        for (Launch launch : launches)
+            durations.add(firstFrame ? launch.timeToFirstFrame : launch.timeToContent);
+        Collections.sort(durations);
+        return durations.get(durations.size() / 2);
+    }
+
+    private static void beginAsyncSection(String section, int cookie) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+            Trace.beginAsyncSection(section, cookie);
+    }
+
+    private static void endAsyncSection(String section, int cookie) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+            Trace.endAsyncSection(section, cookie);
+    }
+
+    static class Launch {
+        private final long versionCode;
+        private final long timeToFirstFrame;
+        private final long timeToContent;
+        private final long deferredInitializationDuration;
+
+        Launch(long versionCode, long timeToFirstFrame, long timeToContent, long deferredInitializationDuration) {
+            this.versionCode = versionCode;
+            this.timeToFirstFrame = timeToFirstFrame;
+            this.timeToContent = timeToContent;
+            this.deferredInitializationDuration = deferredInitializationDuration;
+        }
+
+        static Launch parse(String launch) {
+            String[] fields = launch.split(FIELDS_SEPARATOR);
+            if (fields.length != 4)
+                return null;
+            try {
+                return new Launch(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return versionCode + FIELDS_SEPARATOR + timeToFirstFrame + FIELDS_SEPARATOR + timeToContent + FIELDS_SEPARATOR + deferredInitializationDuration;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package open.com.permissionsmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * A task submitted to the {@link TaskScheduler} along with everyone waiting for its result.
+ */
+public class TaskHandle<T> {
+    private final boolean cancellableByScopes;
+    private final List<Requester<T>> requesters = new ArrayList<>(1);
+    private Future<?> future;
+    private boolean pinned;
+    private boolean started;
+    private boolean cancelled;
+    private boolean finished;
+
+    TaskHandle(boolean cancellableByScopes) {
+        this.cancellableByScopes = cancellableByScopes;
+    }
+
+    /**
+     * @param joinRunning false to only join the task if it did not start yet
+     * @return false if the task can not be joined and another must be started
+     */
+    synchronized boolean join(TaskScope scope, DatabaseCallback<T> callback, boolean joinRunning) {
+        if (finished || cancelled || (started && !joinRunning))
+            return false;
+        if (scope == null)
+            pinned = true;
+        else if (!scope.add(this))
+            return true; //the scope already ended, so there is nobody to deliver to
+        requesters.add(new Requester<>(scope, callback));
+        return true;
+    }
+
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+        if (cancelled)
+            future.cancel(true);
+    }
+
+    /**
+     * Called when the scope ended; cancels the task if it was its last requester.
+     */
+    synchronized void release(TaskScope scope) {
+        for (int i = requesters.size() - 1; i >= 0; i--)
+            if (requesters.get(i).scope == scope)
+                requesters.remove(i);
+        if (requesters.isEmpty() && !pinned && cancellableByScopes && !finished)
+            cancel();
+    }
+
+    /**
+     * Cancels the task for every requester, e.g. because its result was superseded.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        for (Requester<T> requester : requesters)
+            if (requester.scope != null)
+                requester.scope.remove(this);
+        requesters.clear();
+        if (future != null)
+            future.cancel(true);
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return false if the task was cancelled before it started
+     */
+    synchronized boolean start() {
+        started = true;
+        return !cancelled;
+    }
+
+    void complete(final T result) {
+        List<Requester<T>> requestersToNotify;
+        synchronized (this) {
+            finished = true;
+            requestersToNotify = new ArrayList<>(requesters);
+        }
+        for (final Requester<T> requester : requestersToNotify) {
+            if (requester.callback == null)
+                continue;
+            AppExecutors.runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (requester.scope == null || !requester.scope.isCancelled())
+                        requester.callback.onComplete(result);
+                }
+            });
+        }
+    }
+
+    void finish() {
+        List<Requester<T>> finishedRequesters;
+        synchronized (this) {
+            finished = true;
+            finishedRequesters = new ArrayList<>(requesters);
+        }
+        for (Requester<T> requester : finishedRequesters)
+            if (requester.scope != null)
+                requester.scope.remove(this);
+    }
+
+    private static class Requester<T> {
+        private final TaskScope scope;
+        private final DatabaseCallback<T> callback;
+
+        private Requester(TaskScope scope, DatabaseCallback<T> callback) {
+            this.scope = scope;
+            this.callback = callback;
+        }
+    }
+}
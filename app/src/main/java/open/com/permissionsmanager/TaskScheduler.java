@@ -0,0 +1,99 @@
+package open.com.permissionsmanager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs work on one of three lanes: {@link #LANE_INTERACTIVE} for work the user is waiting for,
+ * {@link #LANE_VIEW} for building what a screen shows from data already in memory, and
+ * {@link #LANE_BACKGROUND} for everything else. Work submitted with a key, like a scan, is
+ * deduplicated: while a task with the same key is pending or running, new requests join it instead
+ * of queueing another copy, and the task is cancelled once every {@link TaskScope} that requested
+ * it has ended. Work without a key always runs to completion; only its callbacks are dropped when
+ * their scope ends.
+ */
+public class TaskScheduler {
+    public static final int LANE_INTERACTIVE = 0;
+    public static final int LANE_BACKGROUND = 1;
+    /**
+     * Never runs scans or I/O, so what it builds never waits for them.
+     */
+    public static final int LANE_VIEW = 2;
+
+    private static final Map<String, TaskHandle<?>> keyedTasks = new HashMap<>();
+
+    /**
+     * @param key   identifies redundant requests for the same work, null if every request must run
+     * @param scope the requester, null if the work must outlive whoever requested it
+     */
+    public static <T> TaskHandle<T> submit(int lane, String key, TaskScope scope, Callable<T> work, DatabaseCallback<T> callback) {
+        return submit(lane, key, scope, work, callback, true);
+    }
+
+    /**
+     * Like {@link #submit(int, String, TaskScope, Callable, DatabaseCallback)}, but only joins a task
+     * with the same key if it did not start yet; a running one may have read what changed before the
+     * request, so the new task is queued after it and later requests join the new one.
+     */
+    public static <T> TaskHandle<T> submitAfterRunning(int lane, String key, TaskScope scope, Callable<T> work, DatabaseCallback<T> callback) {
+        return submit(lane, key, scope, work, callback, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> TaskHandle<T> submit(int lane, final String key, TaskScope scope, final Callable<T> work, DatabaseCallback<T> callback, boolean joinRunning) {
+        synchronized (keyedTasks) {
+            if (key != null) {
+                TaskHandle<T> pendingTask = (TaskHandle<T>) keyedTasks.get(key);
+                if (pendingTask != null && pendingTask.join(scope, callback, joinRunning))
+                    return pendingTask;
+            }
+            final TaskHandle<T> task = new TaskHandle<>(key != null);
+            task.join(scope, callback, true);
+            if (key != null)
+                keyedTasks.put(key, task);
+            task.setFuture(getExecutor(lane).submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (task.start())
+                            task.complete(work.call());
+                    } catch (CancellationException | InterruptedException e) {
+                        System.out.println("Task " + key + " cancelled");
+                    } catch (Exception e) {
+                        System.out.println("Task " + key + " failed " + e);
+                    } finally {
+                        synchronized (keyedTasks) {
+                            if (key != null && keyedTasks.get(key) == task)
+                                keyedTasks.remove(key);
+                        }
+                        task.finish();
+                    }
+                }
+            }));
+            return task;
+        }
+    }
+
+    /**
+     * Throws if the task running on the current thread was cancelled; long running work calls it
+     * between steps so that it stops soon after its last requester went away.
+     */
+    public static void throwIfCancelled() {
+        if (Thread.currentThread().isInterrupted())
+            throw new CancellationException();
+    }
+
+    private static ExecutorService getExecutor(int lane) {
+        switch (lane) {
+            case LANE_INTERACTIVE:
+                return AppExecutors.io();
+            case LANE_VIEW:
+                return AppExecutors.view();
+            default:
+                return AppExecutors.background();
+        }
+    }
+}
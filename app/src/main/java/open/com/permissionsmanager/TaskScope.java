@@ -0,0 +1,63 @@
+package open.com.permissionsmanager;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The tasks requested by one component. Ending the scope drops the callbacks of its tasks and
+ * cancels the keyed ones nobody else is waiting for.
+ */
+public class TaskScope {
+    private final Set<TaskHandle<?>> tasks = new HashSet<>();
+    private boolean cancelled;
+
+    /**
+     * @return a scope which ends when the owner is destroyed; call it on the main thread
+     */
+    public static TaskScope of(LifecycleOwner lifecycleOwner) {
+        final TaskScope taskScope = new TaskScope();
+        lifecycleOwner.getLifecycle().addObserver(new LifecycleEventObserver() {
+            @Override
+            public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+                if (event == Lifecycle.Event.ON_DESTROY) {
+                    source.getLifecycle().removeObserver(this);
+                    taskScope.cancel();
+                }
+            }
+        });
+        return taskScope;
+    }
+
+    synchronized boolean add(TaskHandle<?> task) {
+        if (cancelled)
+            return false;
+        tasks.add(task);
+        return true;
+    }
+
+    synchronized void remove(TaskHandle<?> task) {
+        tasks.remove(task);
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        List<TaskHandle<?>> tasksToRelease;
+        synchronized (this) {
+            cancelled = true;
+            tasksToRelease = new ArrayList<>(tasks);
+            tasks.clear();
+        }
+        for (TaskHandle<?> task : tasksToRelease)
+            task.release(this);
+    }
+}
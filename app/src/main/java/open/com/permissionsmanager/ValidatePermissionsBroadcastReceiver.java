@@ -7,14 +7,24 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.text.TextUtils;
 
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import static android.app.PendingIntent.FLAG_IMMUTABLE;
 import static android.app.PendingIntent.FLAG_UPDATE_CURRENT;
 import static java.util.Calendar.MONTH;
-import static open.com.permissionsmanager.MainUtils.ONE_MINUTE;
+import static open.com.permissionsmanager.ApplicationsDatabase.SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS;
 import static open.com.permissionsmanager.MainUtils.SCAN;
 import static open.com.permissionsmanager.MainUtils.setAlarm;
 
@@ -24,74 +34,135 @@ public class ValidatePermissionsBroadcastReceiver extends BroadcastReceiver{
 
     public static final int GENERIC_REQUEST_CODE = 123;
     public static final int FOUR_HOURLY_SCAN_RESULT_NOTIICATION_CODE = 3477;
-    private PendingResult pendingResult;
+    private static final String NEW_GRANTS_NOTIFICATION_GROUP = "new_grants";
 
     @Override
     public void onReceive(final Context context, Intent intent) {
         if(!SCAN.equals(intent.getAction())) return;
-        setAlarm(context);
         System.out.println("validate permissions broadcast reciever yolo " + intent);
-        MainUtils.updateLastAlarmTime(context);
-        pendingResult = goAsync();
-        new Thread(){
+        final PendingResult pendingResult = goAsync();
+        TaskScheduler.submit(TaskScheduler.LANE_BACKGROUND, null, null, new Callable<Void>(){
             @Override
-            public void run() {
+            public Void call() {
+                long startOfWakeup = SystemClock.elapsedRealtime();
                 try {
+                    setAlarm(context);
+                    MainUtils.updateLastAlarmTime(context);
                     final NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-                    final ApplicationsDatabase applicationsDatabase = ApplicationsDatabase.getApplicationsDatabase(context);
-                    waitAMaxOf2MinutesForScanTOComplete(applicationsDatabase);
-                    if(applicationsDatabase.isScanInProgress()){
-                        System.out.println("something is wrong. scan is taking too long... or someone has restarted scan manually from application...");
-                    }
-                    notifyInCaseOfWarnableApps(notificationManager, applicationsDatabase);
-                    if(!applicationsDatabase.getIgnoredAppsList().isEmpty() && isItTimeToWarnAboutIgnoredApps(context))
+                    PermissionsScanner.ScanResult scanResult = new PermissionsScanner(context, false).scan();
+                    List<PermissionChange> changes = PermissionChangeJournal.getPermissionChangeJournal(context).record(scanResult.getScannedPackages());
+                    AdaptiveScanScheduler.onScanCompleted(context, changes.size());
+                    ScanSnapshotStore.getScanSnapshotStore(context).save(getUserApplications(scanResult.getApplications()));
+                    notifyInCaseOfWarnableApps(notificationManager, scanResult.getApplications());
+                    if(!getIgnoredApps(context).isEmpty() && isItTimeToWarnAboutIgnoredApps(context))
                         warnAboutIgnoredApps(context, notificationManager);
                 }
                 finally {
+                    long wakeupDuration = SystemClock.elapsedRealtime() - startOfWakeup;
+                    System.out.println("headless scan wakeup took " + wakeupDuration + "ms");
+                    MainUtils.updateLastWakeupDuration(context, wakeupDuration);
+                    setAlarm(context);
                     pendingResult.finish();
                 }
-
+                return null;
             }
 
-            private void notifyInCaseOfWarnableApps(NotificationManager notificationManager, ApplicationsDatabase applicationsDatabase) {
-                for(AndroidApplication application : applicationsDatabase.getACopyOfApplications()){
-                    if(application.isIgnoredTemporarily())
-                        continue;
-                    warnAboutPermissionsLurking(context, notificationManager);
-                    break;
+            private void notifyInCaseOfWarnableApps(NotificationManager notificationManager, List<AndroidApplication> applications) {
+                Map<String, List<String>> newGrants = WarnableGrantsFingerprint.updateAndGetNewGrants(context, WarnableGrantsFingerprint.getWarnableGrants(applications));
+                if(newGrants.isEmpty()){
+                    System.out.println("no new dangerous permissions since last notification");
+                    return;
                 }
+                warnAboutPermissionsLurking(context, notificationManager, newGrants, applications);
             }
-        }.start();
+        }, null);
     }
 
-    private void waitAMaxOf2MinutesForScanTOComplete(ApplicationsDatabase applicationsDatabase) {
-        long startOfWait = System.currentTimeMillis();
-        long twoMinutes = 2 * ONE_MINUTE;
-        while(applicationsDatabase.isScanInProgress() || System.currentTimeMillis() - startOfWait > twoMinutes){
-            try {
-                Thread.sleep(30);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+    /**
+     * @return the applications without the audited system applications, which the scanner already
+     * saved to the snapshot of their own
+     */
+    private static List<AndroidApplication> getUserApplications(List<AndroidApplication> applications) {
+        List<AndroidApplication> userApplications = new ArrayList<>(applications.size());
+        for(AndroidApplication application : applications)
+            if(!application.isSystemApp())
+                userApplications.add(application);
+        return userApplications;
     }
 
-    private void warnAboutPermissionsLurking(Context context, NotificationManager notificationManager) {
+    private Set<String> getIgnoredApps(Context context) {
+        return MainUtils.getSharedPreferences(context).getStringSet(SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, new HashSet<String>(0));
+    }
+
+    /**
+     * Posts a notification per application, grouped under a summary, which offers to ignore the
+     * application or its new permissions, or to open its settings, right from the notification.
+     */
+    private void warnAboutPermissionsLurking(Context context, NotificationManager notificationManager, Map<String, List<String>> newGrants, List<AndroidApplication> applications) {
         notificationManager.cancel(FOUR_HOURLY_SCAN_RESULT_NOTIICATION_CODE);
 
+        Map<String, String> applicationNames = new HashMap<>(applications.size());
+        for(AndroidApplication application : applications)
+            applicationNames.put(application.getPackageName(), application.getName());
+        NotificationCompat.InboxStyle summaryOfNewGrants = new NotificationCompat.InboxStyle();
+        int numberOfNewGrants = 0;
+        for(Map.Entry<String, List<String>> newGrantsOfApplication : newGrants.entrySet()){
+            String applicationName = applicationNames.get(newGrantsOfApplication.getKey());
+            if(applicationName == null)
+                applicationName = newGrantsOfApplication.getKey();
+            summaryOfNewGrants.addLine(context.getString(R.string.new_dangerous_permissions_of_app,
+                    applicationName,
+                    TextUtils.join(", ", MainUtils.getNameSpaceTruncatedPermissions(newGrantsOfApplication.getValue()))));
+            numberOfNewGrants += newGrantsOfApplication.getValue().size();
+            notificationManager.notify(newGrantsOfApplication.getKey(), FOUR_HOURLY_SCAN_RESULT_NOTIICATION_CODE,
+                    createNotificationOfApplication(context, newGrantsOfApplication.getKey(), applicationName, newGrantsOfApplication.getValue()));
+        }
+        String title = context.getResources().getQuantityString(R.plurals.new_dangerous_permissions, numberOfNewGrants, numberOfNewGrants);
+        String content = context.getResources().getQuantityString(R.plurals.apps_with_new_dangerous_permissions, newGrants.size(), newGrants.size());
+
         Notification notification = new NotificationCompat.Builder(context, ""+FOUR_HOURLY_SCAN_RESULT_NOTIICATION_CODE)
                 .setSmallIcon(R.drawable.ic_warning_black_24dp)
-                .setTicker(context.getString(R.string.apps_with_dangerous_permissions_lurking))
-                .setContentText(context.getString(R.string.apps_with_dangerous_permissions_lurking))
-                .setContentTitle(context.getString(R.string.attention))
+                .setTicker(title)
+                .setContentText(content)
+                .setContentTitle(title)
+                .setStyle(summaryOfNewGrants)
                 .setPriority(NotificationCompat.PRIORITY_HIGH)
                 .setSound(RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION))
+                .setGroup(NEW_GRANTS_NOTIFICATION_GROUP)
+                .setGroupSummary(true)
+                .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
                 .setContentIntent(PendingIntent.getActivity(context, GENERIC_REQUEST_CODE, new Intent(context, MainActivity.class), FLAG_UPDATE_CURRENT | FLAG_IMMUTABLE))
                 .build();
         System.out.println("notifying on usual scan results yolo");
         notificationManager.notify(FOUR_HOURLY_SCAN_RESULT_NOTIICATION_CODE, notification);
     }
 
+    private Notification createNotificationOfApplication(Context context, String packageName, String applicationName, List<String> newPermissions) {
+        String title = context.getResources().getQuantityString(R.plurals.new_dangerous_permissions, newPermissions.size(), newPermissions.size());
+        String content = TextUtils.join(", ", MainUtils.getNameSpaceTruncatedPermissions(newPermissions));
+        Intent settingsIntent = new Intent(Settings.ACTION_APPLICATION_DETAILS_SETTINGS, Uri.fromParts("package", packageName, null))
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        return new NotificationCompat.Builder(context, ""+FOUR_HOURLY_SCAN_RESULT_NOTIICATION_CODE)
+                .setSmallIcon(R.drawable.ic_warning_black_24dp)
+                .setContentTitle(applicationName)
+                .setContentText(title)
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(content))
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setGroup(NEW_GRANTS_NOTIFICATION_GROUP)
+                .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
+                .setAutoCancel(true)
+                .setContentIntent(PendingIntent.getActivity(context, GENERIC_REQUEST_CODE, settingsIntent, FLAG_UPDATE_CURRENT | FLAG_IMMUTABLE))
+                .addAction(0, context.getString(R.string.notification_action_ignore_app),
+                        PendingIntent.getBroadcast(context, GENERIC_REQUEST_CODE,
+                                NotificationActionReceiver.newIntent(context, NotificationActionReceiver.ACTION_IGNORE_APP, packageName, newPermissions), FLAG_UPDATE_CURRENT | FLAG_IMMUTABLE))
+                .addAction(0, context.getResources().getQuantityString(R.plurals.notification_action_ignore_permissions, newPermissions.size()),
+                        PendingIntent.getBroadcast(context, GENERIC_REQUEST_CODE,
+                                NotificationActionReceiver.newIntent(context, NotificationActionReceiver.ACTION_IGNORE_PERMISSIONS, packageName, newPermissions), FLAG_UPDATE_CURRENT | FLAG_IMMUTABLE))
+                .addAction(0, context.getString(R.string.notification_action_open_settings),
+                        PendingIntent.getActivity(context, GENERIC_REQUEST_CODE, settingsIntent, FLAG_UPDATE_CURRENT | FLAG_IMMUTABLE))
+                .build();
+    }
+
     private void warnAboutIgnoredApps(Context context, NotificationManager notificationManager) {
         Notification notification = new NotificationCompat.Builder(context, "" + GENERIC_REQUEST_CODE)
                 .setSmallIcon(R.drawable.ic_warning_black_24dp)
@@ -0,0 +1,65 @@
+package open.com.permissionsmanager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers which warnable grants of non-ignored applications the user has already been notified
+ * about, so that periodic scans only notify about grants that are new since the last notification.
+ */
+public class WarnableGrantsFingerprint {
+    public static final String SHARED_PREF_KEY_NOTIFIED_WARNABLE_GRANTS = "NOTIFIED_WARNABLE_GRANTS";
+    /**
+     * Where earlier versions kept a hash of the notified grants, which is removed on the next update.
+     */
+    private static final String SHARED_PREF_KEY_NOTIFIED_WARNABLE_GRANTS_HASH = "NOTIFIED_WARNABLE_GRANTS_HASH";
+    private static final String SEPARATOR = "/";
+
+    public static Set<String> getWarnableGrants(List<AndroidApplication> applications) {
+        Set<String> warnableGrants = new HashSet<>();
+        for (AndroidApplication application : applications) {
+            if (application.isIgnoredTemporarily())
+                continue;
+            for (String permission : application.getWarnablePermissions())
+                warnableGrants.add(application.getPackageName() + SEPARATOR + permission);
+        }
+        return warnableGrants;
+    }
+
+    /**
+     * Persists the current warnable grants as the notified state and returns the ones that were not part of it.
+     *
+     * @return permissions per package name which were granted since the last notification, in no particular order
+     */
+    public static Map<String, List<String>> updateAndGetNewGrants(Context context, Set<String> warnableGrants) {
+        Map<String, List<String>> newGrants = new LinkedHashMap<>();
+        SharedPreferences sharedPreferences = MainUtils.getSharedPreferences(context);
+        Set<String> notifiedGrants = sharedPreferences.getStringSet(SHARED_PREF_KEY_NOTIFIED_WARNABLE_GRANTS, new HashSet<String>(0));
+        if (notifiedGrants.equals(warnableGrants))
+            return newGrants;
+        for (String warnableGrant : warnableGrants) {
+            if (notifiedGrants.contains(warnableGrant))
+                continue;
+            int indexOfSeparator = warnableGrant.indexOf(SEPARATOR);
+            String packageName = warnableGrant.substring(0, indexOfSeparator);
+            List<String> permissions = newGrants.get(packageName);
+            if (permissions == null) {
+                permissions = new ArrayList<>(1);
+                newGrants.put(packageName, permissions);
+            }
+            permissions.add(warnableGrant.substring(indexOfSeparator + 1));
+        }
+        sharedPreferences.edit()
+                .putStringSet(SHARED_PREF_KEY_NOTIFIED_WARNABLE_GRANTS, new HashSet<>(warnableGrants))
+                .remove(SHARED_PREF_KEY_NOTIFIED_WARNABLE_GRANTS_HASH)
+                .apply();
+        return newGrants;
+    }
+}
@@ -0,0 +1,59 @@
+package open.com.permissionsmanager;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class AppIgnoreListsTest {
+    private static final String ALLOWED_PERMISSIONS = "allowedPermissions";
+    private static final String CAMERA = "android.permission.CAMERA";
+
+    private static Set<String> setOf(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    @Test
+    public void prefixesTheKeysOfApplications() {
+        String preferenceKey = AppIgnoreLists.getPreferenceKey("10/com.camera");
+
+        assertTrue(AppIgnoreLists.isPreferenceKey(preferenceKey));
+        assertFalse(AppIgnoreLists.isPreferenceKey("com.camera"));
+        assertEquals("10/com.camera", AppIgnoreLists.getApplicationKey(preferenceKey));
+    }
+
+    @Test
+    public void movesListsStoredUnderBareKeysBehindThePrefix() {
+        FakeSharedPreferences sharedPreferences = new FakeSharedPreferences();
+        sharedPreferences.edit()
+                .putStringSet("com.camera", setOf(CAMERA))
+                .putStringSet("10/com.camera", setOf(CAMERA))
+                .putStringSet(ALLOWED_PERMISSIONS, setOf(CAMERA))
+                .putString("LAST_SCAN_TIME", "0")
+                .commit();
+
+        AppIgnoreLists.migrate(sharedPreferences, Collections.singleton(ALLOWED_PERMISSIONS));
+
+        assertFalse(sharedPreferences.contains("com.camera"));
+        assertFalse(sharedPreferences.contains("10/com.camera"));
+        assertEquals(setOf(CAMERA), sharedPreferences.getStringSet(AppIgnoreLists.getPreferenceKey("com.camera"), null));
+        assertEquals(setOf(CAMERA), sharedPreferences.getStringSet(AppIgnoreLists.getPreferenceKey("10/com.camera"), null));
+        assertEquals(setOf(CAMERA), sharedPreferences.getStringSet(ALLOWED_PERMISSIONS, null));
+        assertEquals("0", sharedPreferences.getString("LAST_SCAN_TIME", null));
+    }
+
+    @Test
+    public void migratesOnlyOnce() {
+        FakeSharedPreferences sharedPreferences = new FakeSharedPreferences();
+        AppIgnoreLists.migrate(sharedPreferences, Collections.singleton(ALLOWED_PERMISSIONS));
+        sharedPreferences.edit().putStringSet("SOME_FUTURE_SET", setOf("value")).commit();
+
+        AppIgnoreLists.migrate(sharedPreferences, Collections.singleton(ALLOWED_PERMISSIONS));
+
+        assertEquals(setOf("value"), sharedPreferences.getStringSet("SOME_FUTURE_SET", null));
+    }
+}
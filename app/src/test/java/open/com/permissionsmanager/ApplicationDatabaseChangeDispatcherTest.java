@@ -0,0 +1,160 @@
+package open.com.permissionsmanager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class ApplicationDatabaseChangeDispatcherTest {
+    private final List<Runnable> queuedDeliveries = new ArrayList<>();
+    private final Executor queueingExecutor = new Executor() {
+        @Override
+        public void execute(Runnable delivery) {
+            queuedDeliveries.add(delivery);
+        }
+    };
+    private final List<String> deliveredEvents = new ArrayList<>();
+    private final ApplicationDatabaseChangeListener recordingListener = new ApplicationDatabaseChangeListener() {
+        @Override
+        public void applicationPermissionsUpdated(AndroidApplication androidApplication) {
+            deliveredEvents.add("updated " + androidApplication.getPackageName() + " " + androidApplication.getName());
+        }
+
+        @Override
+        public void applicationsDatabaseUpdated(List<AndroidApplication> androidApplications) {
+            deliveredEvents.add("database " + androidApplications.size());
+        }
+
+        @Override
+        public void applicationAddedToIgnoreList(AndroidApplication androidApplication) {
+            deliveredEvents.add("ignored " + androidApplication.getPackageName());
+        }
+
+        @Override
+        public void applicationRemovedFromIgnoredList(AndroidApplication androidApplication) {
+            deliveredEvents.add("unignored " + androidApplication.getPackageName());
+        }
+
+        @Override
+        public void applicationRefreshed(String packageName, AndroidApplication androidApplication) {
+            deliveredEvents.add("refreshed " + packageName);
+        }
+    };
+    private ApplicationDatabaseChangeDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        dispatcher = new ApplicationDatabaseChangeDispatcher();
+        dispatcher.addListener(recordingListener, queueingExecutor);
+    }
+
+    private static AndroidApplication application(String packageName, String name) {
+        return new AndroidApplication.Builder(packageName).withName(name).build();
+    }
+
+    private void runQueuedDeliveries() {
+        List<Runnable> deliveries = new ArrayList<>(queuedDeliveries);
+        queuedDeliveries.clear();
+        for (Runnable delivery : deliveries)
+            delivery.run();
+    }
+
+    @Test
+    public void schedulesOneDeliveryForABurstOfEvents() {
+        dispatcher.applicationPermissionsUpdated(application("com.camera", "Camera"));
+        dispatcher.applicationAddedToIgnoreList(application("com.maps", "Maps"));
+        dispatcher.applicationRefreshed("com.mail", null);
+
+        assertEquals(1, queuedDeliveries.size());
+        runQueuedDeliveries();
+        assertEquals(Arrays.asList("updated com.camera Camera", "ignored com.maps", "refreshed com.mail"), deliveredEvents);
+    }
+
+    @Test
+    public void replacesAnEarlierEventOfTheSameKindAboutTheSameApplication() {
+        dispatcher.applicationPermissionsUpdated(application("com.camera", "Camera"));
+        dispatcher.applicationPermissionsUpdated(application("com.maps", "Maps"));
+        dispatcher.applicationAddedToIgnoreList(application("com.camera", "Camera"));
+        dispatcher.applicationPermissionsUpdated(application("com.camera", "Camera 2"));
+
+        runQueuedDeliveries();
+
+        assertEquals(Arrays.asList("updated com.maps Maps", "ignored com.camera", "updated com.camera Camera 2"), deliveredEvents);
+    }
+
+    @Test
+    public void aDatabaseUpdateSupersedesEverythingQueuedBeforeIt() {
+        dispatcher.applicationPermissionsUpdated(application("com.camera", "Camera"));
+        dispatcher.applicationsDatabaseUpdated(Collections.singletonList(application("com.camera", "Camera")));
+        dispatcher.applicationRemovedFromIgnoredList(application("com.maps", "Maps"));
+
+        runQueuedDeliveries();
+
+        assertEquals(Arrays.asList("database 1", "unignored com.maps"), deliveredEvents);
+    }
+
+    @Test
+    public void schedulesANewDeliveryForEventsAfterTheLastOneRan() {
+        dispatcher.applicationPermissionsUpdated(application("com.camera", "Camera"));
+        runQueuedDeliveries();
+        dispatcher.applicationPermissionsUpdated(application("com.camera", "Camera 2"));
+
+        assertEquals(1, queuedDeliveries.size());
+        runQueuedDeliveries();
+        assertEquals(Arrays.asList("updated com.camera Camera", "updated com.camera Camera 2"), deliveredEvents);
+    }
+
+    @Test
+    public void givesEveryListenerItsOwnCopyOfTheApplications() {
+        final List<List<AndroidApplication>> deliveredLists = new ArrayList<>();
+        ApplicationDatabaseChangeListener modifyingListener = new ApplicationDatabaseChangeListener() {
+            @Override
+            public void applicationPermissionsUpdated(AndroidApplication androidApplication) {
+            }
+
+            @Override
+            public void applicationsDatabaseUpdated(List<AndroidApplication> androidApplications) {
+                deliveredLists.add(androidApplications);
+                androidApplications.clear();
+            }
+
+            @Override
+            public void applicationAddedToIgnoreList(AndroidApplication androidApplication) {
+            }
+
+            @Override
+            public void applicationRemovedFromIgnoredList(AndroidApplication androidApplication) {
+            }
+
+            @Override
+            public void applicationRefreshed(String packageName, AndroidApplication androidApplication) {
+            }
+        };
+        dispatcher.addListener(modifyingListener, queueingExecutor);
+        List<AndroidApplication> applications = Arrays.asList(application("com.camera", "Camera"), application("com.maps", "Maps"));
+
+        dispatcher.applicationsDatabaseUpdated(applications);
+        runQueuedDeliveries();
+
+        assertEquals(2, applications.size());
+        assertEquals(Collections.singletonList("database 2"), deliveredEvents);
+        assertEquals(1, deliveredLists.size());
+    }
+
+    @Test
+    public void dropsTheQueuedEventsOfARemovedListener() {
+        dispatcher.applicationPermissionsUpdated(application("com.camera", "Camera"));
+        dispatcher.removeListener(recordingListener);
+        dispatcher.applicationPermissionsUpdated(application("com.maps", "Maps"));
+
+        runQueuedDeliveries();
+
+        assertTrue(deliveredEvents.isEmpty());
+    }
+}
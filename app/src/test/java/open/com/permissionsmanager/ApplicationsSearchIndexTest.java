@@ -0,0 +1,47 @@
+package open.com.permissionsmanager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class ApplicationsSearchIndexTest {
+    private static AndroidApplication application(long profile, String packageName, String... warnablePermissions) {
+        return new AndroidApplication.Builder(packageName)
+                .withName("Camera")
+                .withProfile(profile)
+                .withWarnablePermissions(new ArrayList<>(Arrays.asList(warnablePermissions)))
+                .withNonWarnablePermissions(new ArrayList<String>())
+                .build();
+    }
+
+    @Test
+    public void matchesTheLabelPackageNameAndPermissions() {
+        ApplicationsSearchIndex searchIndex = new ApplicationsSearchIndex();
+        searchIndex.update(Collections.singletonList(application(AndroidApplication.CURRENT_PROFILE, "com.camera", "android.permission.CAMERA")));
+
+        assertEquals(Collections.singleton("com.camera"), searchIndex.search("came"));
+        assertEquals(Collections.singleton("com.camera"), searchIndex.search("co"));
+        assertTrue(searchIndex.search("sms").isEmpty());
+        assertNull(searchIndex.search(" "));
+    }
+
+    @Test
+    public void indexesTheCopiesOfAPackageInEveryProfileApart() {
+        AndroidApplication personalCamera = application(AndroidApplication.CURRENT_PROFILE, "com.camera", "android.permission.READ_SMS");
+        AndroidApplication workCamera = application(10, "com.camera", "android.permission.RECORD_AUDIO");
+        ApplicationsSearchIndex searchIndex = new ApplicationsSearchIndex();
+        searchIndex.update(Arrays.asList(personalCamera, workCamera));
+
+        assertEquals(Collections.singleton(workCamera.getKey()), searchIndex.search("record_audio"));
+        assertEquals(Collections.singleton(personalCamera.getKey()), searchIndex.search("read_sms"));
+        assertEquals(new HashSet<>(Arrays.asList(personalCamera.getKey(), workCamera.getKey())), searchIndex.search("com.camera"));
+
+        searchIndex.update(Collections.singletonList(personalCamera));
+        assertTrue(searchIndex.search("record_audio").isEmpty());
+    }
+}
@@ -0,0 +1,65 @@
+package open.com.permissionsmanager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Usage source serving last access times set by the test, recording the packages it was asked for.
+ */
+public class FakePermissionUsageSource implements PermissionUsageSource {
+    private final Map<String, Map<String, Long>> lastAccessTimesOfPackages = new HashMap<>();
+    private final List<String> queriedPackages = new ArrayList<>();
+    private boolean available = true;
+    private long delayPerQuery;
+
+    public FakePermissionUsageSource withLastAccessTime(String packageName, String permission, long lastAccessTime) {
+        if (!lastAccessTimesOfPackages.containsKey(packageName))
+            lastAccessTimesOfPackages.put(packageName, new HashMap<String, Long>());
+        lastAccessTimesOfPackages.get(packageName).put(permission, lastAccessTime);
+        return this;
+    }
+
+    public FakePermissionUsageSource withAvailable(boolean available) {
+        this.available = available;
+        return this;
+    }
+
+    /**
+     * Makes every query take the given time, to run a pass out of its time budget.
+     */
+    public FakePermissionUsageSource withDelayPerQuery(long delayPerQuery) {
+        this.delayPerQuery = delayPerQuery;
+        return this;
+    }
+
+    public List<String> getQueriedPackages() {
+        return queriedPackages;
+    }
+
+    @Override
+    public Map<String, Long> getLastAccessTimes(int uid, String packageName, List<String> permissions) {
+        queriedPackages.add(packageName);
+        if (delayPerQuery > 0) {
+            try {
+                Thread.sleep(delayPerQuery);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Map<String, Long> lastAccessTimes = new HashMap<>();
+        Map<String, Long> lastAccessTimesOfPackage = lastAccessTimesOfPackages.get(packageName);
+        if (lastAccessTimesOfPackage == null)
+            return lastAccessTimes;
+        for (String permission : permissions)
+            if (lastAccessTimesOfPackage.containsKey(permission))
+                lastAccessTimes.put(permission, lastAccessTimesOfPackage.get(permission));
+        return lastAccessTimes;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return available;
+    }
+}
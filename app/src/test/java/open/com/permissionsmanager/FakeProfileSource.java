@@ -0,0 +1,66 @@
+package open.com.permissionsmanager;
+
+import android.content.pm.ApplicationInfo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Profile source serving the profiles and packages set by the test; a profile added without packages
+ * is turned off, so its applications can not be listed.
+ */
+public class FakeProfileSource implements ProfileSource {
+    private final Map<Long, List<String>> packagesOfProfiles = new LinkedHashMap<>();
+    private ProfileChangeListener profileChangeListener;
+
+    public FakeProfileSource withProfile(long profile, String... packageNames) {
+        List<String> packages = new ArrayList<>(packageNames.length);
+        for (String packageName : packageNames)
+            packages.add(packageName);
+        packagesOfProfiles.put(profile, packages);
+        return this;
+    }
+
+    public FakeProfileSource withTurnedOffProfile(long profile) {
+        packagesOfProfiles.put(profile, null);
+        return this;
+    }
+
+    public void changePackages(long profile, String... packageNames) {
+        withProfile(profile, packageNames);
+        if (profileChangeListener != null)
+            profileChangeListener.profilePackagesChanged(profile);
+    }
+
+    @Override
+    public List<Long> getOtherProfiles() {
+        return new ArrayList<>(packagesOfProfiles.keySet());
+    }
+
+    @Override
+    public List<ApplicationInfo> getApplications(long profile) {
+        List<String> packageNames = packagesOfProfiles.get(profile);
+        if (packageNames == null)
+            return null;
+        List<ApplicationInfo> applications = new ArrayList<>(packageNames.size());
+        for (String packageName : packageNames) {
+            ApplicationInfo applicationInfo = new ApplicationInfo();
+            applicationInfo.packageName = packageName;
+            applicationInfo.enabled = true;
+            applications.add(applicationInfo);
+        }
+        return applications;
+    }
+
+    @Override
+    public String getBadgedLabel(ApplicationInfo applicationInfo, long profile) {
+        return "Work " + applicationInfo.packageName;
+    }
+
+    @Override
+    public void setProfileChangeListener(ProfileChangeListener profileChangeListener) {
+        this.profileChangeListener = profileChangeListener;
+    }
+}
@@ -0,0 +1,108 @@
+package open.com.permissionsmanager;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static open.com.permissionsmanager.ApplicationsDatabase.SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS;
+import static open.com.permissionsmanager.WarnableGrantsFingerprint.SHARED_PREF_KEY_NOTIFIED_WARNABLE_GRANTS;
+import static org.junit.Assert.*;
+
+public class IgnoreRulesTransferTest {
+    private static final String ALLOWED_PERMISSIONS = "allowedPermissions";
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String READ_CONTACTS = "android.permission.READ_CONTACTS";
+
+    private static Set<String> setOf(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static IgnoreRulesTransfer.IgnoreRules exportAndImport(FakeSharedPreferences sharedPreferences) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        IgnoreRulesTransfer.exportIgnoreRules(sharedPreferences, ALLOWED_PERMISSIONS, outputStream);
+        return IgnoreRulesTransfer.importIgnoreRules(new ByteArrayInputStream(outputStream.toByteArray()));
+    }
+
+    private static IgnoreRulesTransfer.IgnoreRules importLines(String... lines) throws IOException {
+        StringBuilder rules = new StringBuilder();
+        for (String line : lines)
+            rules.append(line).append('\n');
+        return IgnoreRulesTransfer.importIgnoreRules(new ByteArrayInputStream(rules.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void importsTheRulesItExported() throws IOException {
+        FakeSharedPreferences sharedPreferences = new FakeSharedPreferences();
+        sharedPreferences.edit()
+                .putStringSet(ALLOWED_PERMISSIONS, setOf(READ_CONTACTS))
+                .putStringSet(SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, setOf("com.game"))
+                .putStringSet(AppIgnoreLists.getPreferenceKey("com.camera"), setOf(CAMERA))
+                .commit();
+
+        IgnoreRulesTransfer.IgnoreRules ignoreRules = exportAndImport(sharedPreferences);
+
+        assertEquals(setOf(READ_CONTACTS), ignoreRules.getIgnoredPermissionsForAllApps());
+        assertEquals(setOf("com.game"), ignoreRules.getIgnoredApps());
+        assertEquals(Collections.singletonMap("com.camera", setOf(CAMERA)), ignoreRules.getIgnoredPermissionsPerApp());
+        assertEquals(3, ignoreRules.getNumberOfRules());
+        assertTrue(ignoreRules.isIgnored("com.camera", CAMERA));
+        assertTrue(ignoreRules.isIgnored("com.other", READ_CONTACTS));
+        assertFalse(ignoreRules.isIgnored("com.other", CAMERA));
+    }
+
+    @Test
+    public void doesNotExportOtherStringSetsAsRules() throws IOException {
+        FakeSharedPreferences sharedPreferences = new FakeSharedPreferences();
+        sharedPreferences.edit()
+                .putStringSet(SHARED_PREF_KEY_NOTIFIED_WARNABLE_GRANTS, setOf("com.camera/" + CAMERA))
+                .putStringSet("SOME_FUTURE_SET", setOf("value"))
+                .commit();
+
+        assertEquals(0, exportAndImport(sharedPreferences).getNumberOfRules());
+    }
+
+    @Test
+    public void doesNotExportRulesOfOtherProfiles() throws IOException {
+        FakeSharedPreferences sharedPreferences = new FakeSharedPreferences();
+        sharedPreferences.edit()
+                .putStringSet(SHARED_PREF_KEY_TEMPORARILY_IGNORED_APPS, setOf("com.game", "10/com.game"))
+                .putStringSet(AppIgnoreLists.getPreferenceKey("10/com.camera"), setOf(CAMERA))
+                .commit();
+
+        IgnoreRulesTransfer.IgnoreRules ignoreRules = exportAndImport(sharedPreferences);
+
+        assertEquals(setOf("com.game"), ignoreRules.getIgnoredApps());
+        assertTrue(ignoreRules.getIgnoredPermissionsPerApp().isEmpty());
+    }
+
+    @Test
+    public void skipsImportedRulesOfOtherProfilesAndOtherRecords() throws IOException {
+        IgnoreRulesTransfer.IgnoreRules ignoreRules = importLines(
+                "{\"type\":\"ignore_app\",\"package\":\"10/com.game\"}",
+                "{\"type\":\"ignore_app_permission\",\"package\":\"10/com.camera\",\"permission\":\"" + CAMERA + "\"}",
+                "{\"type\":\"scan_report\",\"version\":1}",
+                "",
+                "{\"type\":\"ignore_app_permission\",\"package\":\"com.camera\",\"permission\":\"" + CAMERA + "\"}");
+
+        assertTrue(ignoreRules.getIgnoredApps().isEmpty());
+        assertEquals(Collections.singletonMap("com.camera", setOf(CAMERA)), ignoreRules.getIgnoredPermissionsPerApp());
+        assertEquals(1, ignoreRules.getNumberOfRules());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAMalformedLine() throws IOException {
+        importLines("{\"type\":\"ignore_permission\",\"permission\":\"" + CAMERA + "\"}", "{not json");
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsARuleWithoutItsPackage() throws IOException {
+        importLines("{\"type\":\"ignore_app_permission\",\"permission\":\"" + CAMERA + "\"}");
+    }
+}
@@ -0,0 +1,49 @@
+package open.com.permissionsmanager;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class PackagePatternsTest {
+    private final PackagePatterns packagePatterns = new PackagePatterns(Arrays.asList("com.example.mail", "com.example.*", "com.*"));
+
+    @Test
+    public void matchesNamedPackagesAndPrefixes() {
+        assertTrue(packagePatterns.matches("com.example.mail"));
+        assertTrue(packagePatterns.matches("com.example.maps"));
+        assertTrue(packagePatterns.matches("com.other"));
+        assertFalse(packagePatterns.matches("org.example.mail"));
+    }
+
+    @Test
+    public void namedPackagesDoNotMatchAsPrefixes() {
+        PackagePatterns mail = new PackagePatterns(Collections.singletonList("com.example.mail"));
+
+        assertFalse(mail.matches("com.example.mail.debug"));
+        assertFalse(mail.matches("com.example"));
+    }
+
+    @Test
+    public void returnsEveryMatchingPatternAsGiven() {
+        assertEquals(Arrays.asList("com.*", "com.example.*", "com.example.mail"), packagePatterns.getMatchingPatterns("com.example.mail"));
+        assertEquals(Arrays.asList("com.*", "com.example.*"), packagePatterns.getMatchingPatterns("com.example.maps"));
+        assertTrue(packagePatterns.getMatchingPatterns("org.example").isEmpty());
+    }
+
+    @Test
+    public void aLoneWildcardMatchesEveryPackage() {
+        PackagePatterns everything = new PackagePatterns(Collections.singletonList("*"));
+
+        assertTrue(everything.matches("org.example"));
+        assertEquals(Collections.singletonList("*"), everything.getMatchingPatterns("org.example"));
+    }
+
+    @Test
+    public void isEmptyWithoutPatterns() {
+        assertTrue(new PackagePatterns(Collections.<String>emptyList()).isEmpty());
+        assertFalse(packagePatterns.isEmpty());
+    }
+}
@@ -0,0 +1,174 @@
+package open.com.permissionsmanager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static open.com.permissionsmanager.PermissionChangeJournal.RETENTION;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNotNull;
+
+public class PermissionChangeJournalTest {
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String RECORD_AUDIO = "android.permission.RECORD_AUDIO";
+    private static final long START = 1000000000000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder();
+    }
+
+    private static Map<String, PermissionChangeJournal.PackageState> packages(Object... packageNamesAndPermissions) {
+        Map<String, PermissionChangeJournal.PackageState> packages = new HashMap<>();
+        for (int i = 0; i < packageNamesAndPermissions.length; i += 2)
+            packages.put((String) packageNamesAndPermissions[i], new PermissionChangeJournal.PackageState(1,
+                    new HashSet<>(Arrays.asList((String[]) packageNamesAndPermissions[i + 1]))));
+        return packages;
+    }
+
+    private static String[] permissions(String... permissions) {
+        return permissions;
+    }
+
+    private File getJournalFile() {
+        return new File(directory, "permission_changes.journal");
+    }
+
+    private Object getJournalFileKey() throws IOException {
+        return Files.readAttributes(getJournalFile().toPath(), BasicFileAttributes.class).fileKey();
+    }
+
+    @Test
+    public void reportsNothingForTheBaselineThenTheChangesOfEachScan() {
+        PermissionChangeJournal journal = new PermissionChangeJournal(directory);
+
+        assertTrue(journal.record(packages("com.camera", permissions(CAMERA)), START).isEmpty());
+        List<PermissionChange> changes = journal.record(packages("com.camera", permissions(CAMERA, RECORD_AUDIO)), START + 1);
+
+        assertEquals(1, changes.size());
+        assertEquals(PermissionChange.TYPE_PERMISSION_GRANTED, changes.get(0).getType());
+        assertEquals(RECORD_AUDIO, changes.get(0).getPermission());
+        assertEquals(1, journal.getChanges("com.camera", 0).size());
+        assertTrue(journal.getChanges("com.camera", START + 2).isEmpty());
+    }
+
+    @Test
+    public void replaysTheStateOfAnExistingJournal() {
+        new PermissionChangeJournal(directory).record(packages("com.camera", permissions(CAMERA)), START);
+        PermissionChangeJournal reopened = new PermissionChangeJournal(directory);
+
+        List<PermissionChange> changes = reopened.record(packages("com.camera", permissions()), START + 1);
+
+        assertEquals(1, changes.size());
+        assertEquals(PermissionChange.TYPE_PERMISSION_REVOKED, changes.get(0).getType());
+    }
+
+    @Test
+    public void foldsBatchesOutOfTheRetentionWindowIntoTheBaseline() {
+        PermissionChangeJournal journal = new PermissionChangeJournal(directory);
+        journal.record(packages("com.camera", permissions()), START);
+        journal.record(packages("com.camera", permissions(CAMERA)), START + 1);
+
+        long now = START + 1 + RETENTION + 1;
+        journal.record(packages("com.camera", permissions(CAMERA, RECORD_AUDIO)), now);
+
+        List<PermissionChange> changes = new PermissionChangeJournal(directory).getChanges("com.camera", 0);
+        assertEquals(1, changes.size());
+        assertEquals(RECORD_AUDIO, changes.get(0).getPermission());
+        assertTrue(new PermissionChangeJournal(directory).record(packages("com.camera", permissions(CAMERA, RECORD_AUDIO)), now + 1).isEmpty());
+    }
+
+    @Test
+    public void doesNotCompactAgainUntilARetainedBatchExpires() throws IOException {
+        PermissionChangeJournal journal = new PermissionChangeJournal(directory);
+        journal.record(packages("com.camera", permissions()), START);
+        journal.record(packages("com.camera", permissions(CAMERA)), START + 1);
+        long now = START + 1 + RETENTION + 1;
+        journal.record(packages("com.camera", permissions()), now);
+        Object compactedJournal = getJournalFileKey();
+        assumeNotNull(compactedJournal);
+
+        journal.record(packages("com.camera", permissions(CAMERA)), now + 1);
+
+        assertEquals(compactedJournal, getJournalFileKey()); //appended to, not replaced by a compaction
+        assertEquals(2, journal.getChanges("com.camera", 0).size());
+    }
+
+    @Test
+    public void compactsTheOlderHalfOnceTheJournalGrowsTooLarge() {
+        PermissionChangeJournal journal = new PermissionChangeJournal(directory);
+        Map<String, PermissionChangeJournal.PackageState> granted = new HashMap<>();
+        Map<String, PermissionChangeJournal.PackageState> revoked = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            String packageName = "com.example.application.with.a.rather.long.name" + i;
+            granted.putAll(packages(packageName, permissions(CAMERA)));
+            revoked.putAll(packages(packageName, permissions()));
+        }
+        journal.record(revoked, START);
+        long baselineSize = getJournalFile().length();
+        journal.record(granted, START + 1);
+        long batchSize = getJournalFile().length() - baselineSize;
+        for (int scan = 2; scan <= 10; scan++)
+            journal.record(scan % 2 == 0 ? revoked : granted, START + scan);
+
+        assertTrue(batchSize * 10 > PermissionChangeJournal.MAX_JOURNAL_SIZE);
+        assertTrue(getJournalFile().length() < baselineSize + batchSize * 10);
+        assertEquals(2000, journal.record(granted, START + 11).size());
+        assertFalse(new PermissionChangeJournal(directory).getChanges("com.example.application.with.a.rather.long.name0", START + 10).isEmpty());
+    }
+
+    @Test
+    public void truncatesAnIncompleteBatch() throws IOException {
+        new PermissionChangeJournal(directory).record(packages("com.camera", permissions()), START);
+        new PermissionChangeJournal(directory).record(packages("com.camera", permissions(CAMERA)), START + 1);
+        long journalLength = getJournalFile().length();
+        RandomAccessFile journalFile = new RandomAccessFile(getJournalFile(), "rw");
+        try {
+            journalFile.setLength(journalLength - 3);
+        } finally {
+            journalFile.close();
+        }
+
+        List<PermissionChange> changes = new PermissionChangeJournal(directory).record(packages("com.camera", permissions(CAMERA)), START + 2);
+
+        assertEquals(1, changes.size()); //the torn grant is gone, so it is reported again
+        assertEquals(CAMERA, changes.get(0).getPermission());
+    }
+
+    @Test
+    public void dropsWhatFollowsACorruptBatch() throws IOException {
+        new PermissionChangeJournal(directory).record(packages("com.camera", permissions(CAMERA)), START);
+        FileOutputStream journalFile = new FileOutputStream(getJournalFile(), true);
+        try {
+            journalFile.write(new byte[]{42, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 1, 3, 0, 1});
+        } finally {
+            journalFile.close();
+        }
+        long corruptLength = getJournalFile().length();
+
+        PermissionChangeJournal journal = new PermissionChangeJournal(directory);
+        List<PermissionChange> changes = journal.record(packages("com.camera", permissions(CAMERA, RECORD_AUDIO)), START + 1);
+
+        assertEquals(1, changes.size());
+        assertEquals(RECORD_AUDIO, changes.get(0).getPermission());
+        assertTrue(getJournalFile().length() < corruptLength + 64);
+        assertEquals(1, journal.getChanges("com.camera", 0).size());
+    }
+}
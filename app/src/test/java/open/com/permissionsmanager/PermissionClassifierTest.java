@@ -0,0 +1,102 @@
+package open.com.permissionsmanager;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PermissionClassifierTest {
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String READ_SMS = "android.permission.READ_SMS";
+    private static final String READ_CONTACTS = "android.permission.READ_CONTACTS";
+    private static final String INTERNET = "android.permission.INTERNET";
+    private static final String WRITE_SETTINGS = "android.permission.WRITE_SETTINGS";
+    private static final String UNDEFINED = "com.example.permission.UNDEFINED";
+    private static final int PROTECTION_NORMAL = 0;
+    private static final int PROTECTION_SIGNATURE = 2;
+    private static final int PROTECTION_FLAG_APPOP = 0x40;
+
+    private static final ProtectionLevelSource PROTECTION_LEVELS = new ProtectionLevelSource() {
+        private final Map<String, Integer> protectionLevels = new HashMap<>();
+
+        {
+            protectionLevels.put(CAMERA, PermissionClassifier.PROTECTION_DANGEROUS);
+            protectionLevels.put(READ_SMS, PermissionClassifier.PROTECTION_DANGEROUS);
+            protectionLevels.put(READ_CONTACTS, PermissionClassifier.PROTECTION_DANGEROUS);
+            protectionLevels.put(INTERNET, PROTECTION_NORMAL);
+            protectionLevels.put(WRITE_SETTINGS, PROTECTION_SIGNATURE | PROTECTION_FLAG_APPOP);
+        }
+
+        @Override
+        public int getProtectionLevel(String permission) {
+            Integer protectionLevel = protectionLevels.get(permission);
+            return protectionLevel == null ? -1 : protectionLevel;
+        }
+    };
+
+    private static Set<String> setOf(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    @Test
+    public void onlyExactlyDangerousPermissionsAreDangerous() {
+        PermissionClassifier permissionClassifier = new PermissionClassifier(PROTECTION_LEVELS, PermissionPolicy.EMPTY);
+
+        assertTrue(permissionClassifier.isDangerous(CAMERA));
+        assertFalse(permissionClassifier.isDangerous(INTERNET));
+        assertFalse(permissionClassifier.isDangerous(WRITE_SETTINGS));
+        assertFalse(permissionClassifier.isDangerous(UNDEFINED));
+    }
+
+    @Test
+    public void splitsGrantedPermissionsInTheirOrder() {
+        PermissionClassifier permissionClassifier = new PermissionClassifier(PROTECTION_LEVELS, PermissionPolicy.EMPTY);
+        List<String> warnablePermissions = new ArrayList<>();
+        List<String> nonwarnablePermissions = new ArrayList<>();
+
+        permissionClassifier.classify("org.example", Arrays.asList(READ_SMS, INTERNET, CAMERA, UNDEFINED, WRITE_SETTINGS),
+                Collections.<String>emptySet(), Collections.<String>emptySet(), warnablePermissions, nonwarnablePermissions);
+
+        assertEquals(Arrays.asList(READ_SMS, CAMERA), warnablePermissions);
+        assertEquals(Arrays.asList(INTERNET, UNDEFINED, WRITE_SETTINGS), nonwarnablePermissions);
+    }
+
+    @Test
+    public void leavesOutWhatTheUserIgnoresForAllAppsOrForThePackage() {
+        PermissionClassifier permissionClassifier = new PermissionClassifier(PROTECTION_LEVELS, PermissionPolicy.EMPTY);
+        List<String> warnablePermissions = new ArrayList<>();
+        List<String> nonwarnablePermissions = new ArrayList<>();
+
+        permissionClassifier.classify("org.example", Arrays.asList(READ_SMS, CAMERA, READ_CONTACTS),
+                setOf(CAMERA), setOf(READ_CONTACTS), warnablePermissions, nonwarnablePermissions);
+
+        assertEquals(Collections.singletonList(READ_SMS), warnablePermissions);
+        assertEquals(Arrays.asList(CAMERA, READ_CONTACTS), nonwarnablePermissions);
+    }
+
+    @Test
+    public void appliesThePolicyOfThePackage() throws JSONException {
+        PermissionPolicy permissionPolicy = PermissionPolicy.parse("{"
+                + "\"warnedPermissions\": [\"" + CAMERA + "\"],"
+                + "\"packageRules\": [{\"packages\": [\"com.example.*\"], \"ignoredPermissions\": [\"" + READ_SMS + "\"]}]"
+                + "}");
+        PermissionClassifier permissionClassifier = new PermissionClassifier(PROTECTION_LEVELS, permissionPolicy);
+        List<String> warnablePermissions = new ArrayList<>();
+        List<String> nonwarnablePermissions = new ArrayList<>();
+
+        permissionClassifier.classify("com.example.sms", Arrays.asList(READ_SMS, CAMERA),
+                Collections.<String>emptySet(), setOf(CAMERA), warnablePermissions, nonwarnablePermissions);
+
+        assertEquals(Collections.singletonList(CAMERA), warnablePermissions); //warned despite the ignore rule of the user
+        assertEquals(Collections.singletonList(READ_SMS), nonwarnablePermissions);
+    }
+}
@@ -0,0 +1,31 @@
+package open.com.permissionsmanager;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PermissionGroupsTest {
+    @Test
+    public void mapsPlatformPermissionsToTheirGroup() {
+        assertEquals(PermissionGroups.CAMERA, PermissionGroups.getGroup("android.permission.CAMERA"));
+        assertEquals(PermissionGroups.PHONE, PermissionGroups.getGroup("com.android.voicemail.permission.ADD_VOICEMAIL"));
+        assertEquals(PermissionGroups.OTHER, PermissionGroups.getGroup("android.permission.ADD_VOICEMAIL"));
+        assertEquals(PermissionGroups.OTHER, PermissionGroups.getGroup("com.example.permission.CAMERA"));
+    }
+
+    @Test
+    public void keysCombinationsByTheirGroups() {
+        AndroidApplication application = new AndroidApplication.Builder("com.camera")
+                .withWarnablePermissions(Arrays.asList("android.permission.RECORD_AUDIO", "android.permission.CAMERA", "android.permission.ACTIVITY_RECOGNITION"))
+                .build();
+
+        PermissionGroupStatistics statistics = PermissionGroupStatistics.of(Arrays.asList(application));
+
+        String combination = statistics.getCombinationsByDescendingCount().get(0);
+        assertEquals(Arrays.asList(PermissionGroups.PHYSICAL_ACTIVITY, PermissionGroups.CAMERA, PermissionGroups.MICROPHONE),
+                PermissionGroupStatistics.getGroupsOfCombination(combination));
+        assertEquals(1, statistics.getNumberOfApplicationsIn(PermissionGroups.CAMERA));
+    }
+}
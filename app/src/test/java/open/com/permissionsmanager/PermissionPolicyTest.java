@@ -0,0 +1,109 @@
+package open.com.permissionsmanager;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import static open.com.permissionsmanager.PermissionPolicy.DECISION_IGNORE;
+import static open.com.permissionsmanager.PermissionPolicy.DECISION_NONE;
+import static open.com.permissionsmanager.PermissionPolicy.DECISION_WARN;
+import static org.junit.Assert.*;
+
+public class PermissionPolicyTest {
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String READ_SMS = "android.permission.READ_SMS";
+    private static final String READ_PHONE_STATE = "android.permission.READ_PHONE_STATE";
+    private static final String ACCESS_FINE_LOCATION = "android.permission.ACCESS_FINE_LOCATION";
+    private static final String RECORD_AUDIO = "android.permission.RECORD_AUDIO";
+
+    private static final String POLICY = "{"
+            + "\"ignoredPermissions\": [\"" + READ_PHONE_STATE + "\"],"
+            + "\"warnedPermissions\": [\"" + READ_SMS + "\"],"
+            + "\"warnedGroups\": [\"MICROPHONE\"],"
+            + "\"trustedPackages\": [\"com.example.mail\", \"com.example.internal.*\"],"
+            + "\"packageRules\": ["
+            + "  {\"packages\": [\"com.example.maps*\"], \"ignoredGroups\": [\"LOCATION\"]},"
+            + "  {\"packages\": [\"com.example.maps.beta\"], \"warnedPermissions\": [\"" + ACCESS_FINE_LOCATION + "\"]}"
+            + "],"
+            + "\"auditedSystemPackages\": [\"com.oem.*\", \"android\"],"
+            + "\"skippedSystemPackages\": [\"com.oem.launcher\"]"
+            + "}";
+
+    private final PermissionPolicy permissionPolicy;
+
+    public PermissionPolicyTest() throws JSONException {
+        permissionPolicy = PermissionPolicy.parse(POLICY);
+    }
+
+    @Test
+    public void appliesGlobalRulesToEveryPackage() {
+        PermissionPolicy.PackagePolicy packagePolicy = permissionPolicy.getPackagePolicy("org.example");
+
+        assertEquals(DECISION_IGNORE, packagePolicy.getDecision(READ_PHONE_STATE));
+        assertEquals(DECISION_WARN, packagePolicy.getDecision(READ_SMS));
+        assertEquals(DECISION_WARN, packagePolicy.getDecision(RECORD_AUDIO));
+        assertEquals(DECISION_NONE, packagePolicy.getDecision(CAMERA));
+    }
+
+    @Test
+    public void trustsNamedAndPrefixedPackagesExceptForWarnedPermissions() {
+        for (String packageName : new String[]{"com.example.mail", "com.example.internal.tools"}) {
+            PermissionPolicy.PackagePolicy packagePolicy = permissionPolicy.getPackagePolicy(packageName);
+            assertEquals(DECISION_IGNORE, packagePolicy.getDecision(CAMERA));
+            assertEquals(DECISION_WARN, packagePolicy.getDecision(READ_SMS));
+        }
+        assertEquals(DECISION_NONE, permissionPolicy.getPackagePolicy("com.example.mail.debug").getDecision(CAMERA));
+    }
+
+    @Test
+    public void mergesEveryRuleMatchingThePackage() {
+        PermissionPolicy.PackagePolicy maps = permissionPolicy.getPackagePolicy("com.example.maps");
+        PermissionPolicy.PackagePolicy mapsBeta = permissionPolicy.getPackagePolicy("com.example.maps.beta");
+
+        assertEquals(DECISION_IGNORE, maps.getDecision(ACCESS_FINE_LOCATION));
+        assertEquals(DECISION_WARN, mapsBeta.getDecision(ACCESS_FINE_LOCATION));
+        assertEquals(DECISION_IGNORE, mapsBeta.getDecision("android.permission.ACCESS_COARSE_LOCATION"));
+    }
+
+    @Test
+    public void warnedPermissionsOverrideTheIgnoreRulesOfTheUser() {
+        PermissionPolicy.PackagePolicy packagePolicy = permissionPolicy.getPackagePolicy("org.example");
+
+        assertTrue(packagePolicy.isWarnable(READ_SMS, true));
+        assertFalse(packagePolicy.isWarnable(CAMERA, true));
+        assertTrue(packagePolicy.isWarnable(CAMERA, false));
+        assertFalse(packagePolicy.isWarnable(READ_PHONE_STATE, false));
+    }
+
+    @Test
+    public void auditsSystemPackagesOnlyAsRestricted() {
+        assertTrue(permissionPolicy.isAuditedSystemPackage("com.oem.camera"));
+        assertFalse(permissionPolicy.isAuditedSystemPackage("com.oem.launcher"));
+        assertFalse(permissionPolicy.isAuditedSystemPackage("com.vendor.camera"));
+        assertFalse(permissionPolicy.isAuditedSystemPackage("android"));
+    }
+
+    @Test
+    public void theEmptyPolicyAuditsEverySystemPackageButThePlatform() {
+        assertTrue(PermissionPolicy.EMPTY.isAuditedSystemPackage("com.vendor.camera"));
+        assertFalse(PermissionPolicy.EMPTY.isAuditedSystemPackage("android"));
+        assertFalse(PermissionPolicy.EMPTY.isAuditedSystemPackage("com.android.settings"));
+        assertEquals(DECISION_NONE, PermissionPolicy.EMPTY.getPackagePolicy("com.example").getDecision(READ_SMS));
+    }
+
+    @Test
+    public void countsItsRules() {
+        //1 global ignored and 1 warned permission, 1 warned group, 2 trusted packages and 2 package rules
+        assertEquals(7, permissionPolicy.getNumberOfRules());
+    }
+
+    @Test
+    public void keepsTheTextItWasParsedFrom() {
+        assertEquals(POLICY, permissionPolicy.getSource());
+        assertEquals("", PermissionPolicy.EMPTY.getSource());
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsAPackageRuleWithoutPackages() throws JSONException {
+        PermissionPolicy.parse("{\"packageRules\": [{\"ignoredGroups\": [\"LOCATION\"]}]}");
+    }
+}
@@ -0,0 +1,84 @@
+package open.com.permissionsmanager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PermissionUsageTrackerTest {
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String RECORD_AUDIO = "android.permission.RECORD_AUDIO";
+
+    private static AndroidApplication application(String packageName, String... warnablePermissions) {
+        return new AndroidApplication.Builder(packageName)
+                .withWarnablePermissions(new ArrayList<>(Arrays.asList(warnablePermissions)))
+                .withNonWarnablePermissions(new ArrayList<String>())
+                .build();
+    }
+
+    @Test
+    public void mergesTheUsageOfWarnablePermissions() {
+        FakePermissionUsageSource source = new FakePermissionUsageSource()
+                .withLastAccessTime("com.camera", CAMERA, 1000)
+                .withLastAccessTime("com.camera", RECORD_AUDIO, 2000);
+        AndroidApplication camera = application("com.camera", CAMERA);
+
+        new PermissionUsageTracker(source).mergeUsage(Collections.singletonList(camera));
+
+        assertEquals(Collections.singletonMap(CAMERA, 1000L), camera.getPermissionLastAccessTimes());
+        assertEquals(1000, camera.getLastWarnablePermissionAccessTime());
+    }
+
+    @Test
+    public void reusesCachedUsageWithinItsTimeToLive() {
+        FakePermissionUsageSource source = new FakePermissionUsageSource().withLastAccessTime("com.camera", CAMERA, 1000);
+        PermissionUsageTracker tracker = new PermissionUsageTracker(source);
+
+        tracker.mergeUsage(Collections.singletonList(application("com.camera", CAMERA)));
+        AndroidApplication rescanned = application("com.camera", CAMERA);
+        tracker.mergeUsage(Collections.singletonList(rescanned));
+
+        assertEquals(Collections.singletonList("com.camera"), source.getQueriedPackages());
+        assertEquals(0, tracker.getLastPassQueries());
+        assertEquals(1000, rescanned.getLastWarnablePermissionAccessTime());
+    }
+
+    @Test
+    public void queriesTheCopyOfAPackageInEveryProfile() {
+        FakePermissionUsageSource source = new FakePermissionUsageSource().withLastAccessTime("com.camera", CAMERA, 1000);
+        AndroidApplication workCamera = new AndroidApplication.Builder("com.camera")
+                .withProfile(10)
+                .withWarnablePermissions(new ArrayList<>(Collections.singletonList(CAMERA)))
+                .withNonWarnablePermissions(new ArrayList<String>())
+                .build();
+
+        new PermissionUsageTracker(source).mergeUsage(Arrays.asList(application("com.camera", CAMERA), workCamera));
+
+        assertEquals(Arrays.asList("com.camera", "com.camera"), source.getQueriedPackages());
+    }
+
+    @Test
+    public void skipsAnUnavailableSource() {
+        FakePermissionUsageSource source = new FakePermissionUsageSource().withAvailable(false);
+
+        new PermissionUsageTracker(source).mergeUsage(Collections.singletonList(application("com.camera", CAMERA)));
+
+        assertTrue(source.getQueriedPackages().isEmpty());
+    }
+
+    @Test
+    public void stopsQueryingOnceTheTimeBudgetIsSpent() {
+        FakePermissionUsageSource source = new FakePermissionUsageSource().withDelayPerQuery(PermissionUsageTracker.TIME_BUDGET + 10);
+        List<AndroidApplication> applications = Arrays.asList(application("com.first", CAMERA), application("com.second", CAMERA));
+        PermissionUsageTracker tracker = new PermissionUsageTracker(source);
+
+        tracker.mergeUsage(applications);
+
+        assertEquals(Collections.singletonList("com.first"), source.getQueriedPackages());
+        assertEquals(1, tracker.getLastPassQueries());
+    }
+}
@@ -0,0 +1,108 @@
+package open.com.permissionsmanager;
+
+import android.content.pm.ApplicationInfo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ProfileKeysTest {
+    private static final long WORK_PROFILE = 10;
+
+    /**
+     * @return the applications of the other profiles, as the scanner creates them
+     */
+    private static List<AndroidApplication> getOtherProfilesApplications(ProfileSource profileSource) {
+        List<AndroidApplication> applications = new ArrayList<>();
+        for (long profile : profileSource.getOtherProfiles()) {
+            List<ApplicationInfo> profileApplications = profileSource.getApplications(profile);
+            if (profileApplications == null)
+                continue;
+            for (ApplicationInfo applicationInfo : profileApplications)
+                applications.add(new AndroidApplication.Builder(applicationInfo.packageName)
+                        .withProfile(profile)
+                        .withName(profileSource.getBadgedLabel(applicationInfo, profile))
+                        .build());
+        }
+        return applications;
+    }
+
+    @Test
+    public void keysApplicationsOfOtherProfilesByTheirSerial() {
+        List<AndroidApplication> applications = getOtherProfilesApplications(new FakeProfileSource().withProfile(WORK_PROFILE, "com.mail"));
+
+        assertEquals(1, applications.size());
+        assertEquals("10/com.mail", applications.get(0).getKey());
+        assertFalse(applications.get(0).isInCurrentProfile());
+    }
+
+    @Test
+    public void keysApplicationsOfTheCurrentProfileByTheirPackageName() {
+        AndroidApplication application = new AndroidApplication("com.mail");
+
+        assertEquals("com.mail", application.getKey());
+        assertEquals("com.mail", AndroidApplication.getKey(AndroidApplication.CURRENT_PROFILE, "com.mail"));
+        assertTrue(application.isInCurrentProfile());
+    }
+
+    @Test
+    public void tellsTheSamePackageInTwoProfilesApart() {
+        AndroidApplication personal = new AndroidApplication("com.mail");
+        AndroidApplication work = getOtherProfilesApplications(new FakeProfileSource().withProfile(WORK_PROFILE, "com.mail")).get(0);
+
+        assertNotEquals(personal, work);
+        assertNotEquals(personal.getKey(), work.getKey());
+        Set<String> keys = new HashSet<>();
+        keys.add(personal.getKey());
+        keys.add(work.getKey());
+        assertEquals(2, keys.size());
+    }
+
+    @Test
+    public void looksUpApplicationsByTheirKey() {
+        List<AndroidApplication> applications = getOtherProfilesApplications(new FakeProfileSource().withProfile(WORK_PROFILE, "com.mail", "com.chat"));
+        applications.add(new AndroidApplication("com.chat"));
+
+        for (AndroidApplication application : applications) {
+            AndroidApplication lookup = AndroidApplication.forKey(application.getKey());
+            assertEquals(application.getProfile(), lookup.getProfile());
+            assertEquals(application.getPackageName(), lookup.getPackageName());
+            assertEquals(applications.indexOf(application), applications.indexOf(lookup));
+        }
+    }
+
+    @Test
+    public void skipsProfilesWhichAreTurnedOff() {
+        FakeProfileSource profileSource = new FakeProfileSource()
+                .withTurnedOffProfile(WORK_PROFILE)
+                .withProfile(WORK_PROFILE + 1, "com.mail");
+
+        List<AndroidApplication> applications = getOtherProfilesApplications(profileSource);
+
+        assertEquals(1, applications.size());
+        assertEquals("11/com.mail", applications.get(0).getKey());
+    }
+
+    @Test
+    public void notifiesTheProfileWhosePackagesChanged() {
+        FakeProfileSource profileSource = new FakeProfileSource().withProfile(WORK_PROFILE, "com.mail");
+        final List<Long> changedProfiles = new ArrayList<>();
+        profileSource.setProfileChangeListener(new ProfileChangeListener() {
+            @Override
+            public void profilePackagesChanged(long profile) {
+                changedProfiles.add(profile);
+            }
+        });
+
+        profileSource.changePackages(WORK_PROFILE, "com.mail", "com.chat");
+
+        assertEquals(1, changedProfiles.size());
+        assertEquals(WORK_PROFILE, (long) changedProfiles.get(0));
+        assertEquals(2, getOtherProfilesApplications(profileSource).size());
+    }
+}
@@ -0,0 +1,125 @@
+package open.com.permissionsmanager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScanSnapshotStoreTest {
+    private static final long WORK_PROFILE = 10;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File snapshotFile;
+
+    @Before
+    public void setUp() throws IOException {
+        snapshotFile = new File(temporaryFolder.newFolder(), "scan_snapshot_" + WORK_PROFILE);
+    }
+
+    //a profile other than the current one, so that saving does not render the widget and the tile
+    private ScanSnapshotStore openStore() {
+        return new ScanSnapshotStore(null, WORK_PROFILE, false, snapshotFile);
+    }
+
+    private static AndroidApplication camera(boolean ignored) {
+        return new AndroidApplication.Builder("com.camera")
+                .withName("Camera")
+                .withVersionCode(42)
+                .withUid(10123)
+                .withIgnoredTemporarily(ignored)
+                .withDangerousThreshold(3)
+                .withWarnablePermissions(Arrays.asList("android.permission.CAMERA", "android.permission.RECORD_AUDIO"))
+                .withNonWarnablePermissions(Collections.singletonList("android.permission.INTERNET"))
+                .build();
+    }
+
+    @Test
+    public void roundTripsTheApplicationsOfTheSnapshot() {
+        openStore().save(Collections.singletonList(camera(true)));
+
+        ScanSnapshot snapshot = openStore().load();
+
+        assertEquals(1, snapshot.getVersion());
+        AndroidApplication application = snapshot.getApplications().get(0);
+        assertEquals("com.camera", application.getPackageName());
+        assertEquals("Camera", application.getName());
+        assertEquals(42, application.getVersionCode());
+        assertEquals(10123, application.getUid());
+        assertEquals(WORK_PROFILE, application.getProfile());
+        assertFalse(application.isSystemApp());
+        assertTrue(application.isIgnoredTemporarily());
+        assertEquals(3, application.getDangerousThreshold());
+        assertEquals(Arrays.asList("android.permission.CAMERA", "android.permission.RECORD_AUDIO"), application.getWarnablePermissions());
+        assertEquals(Collections.singletonList("android.permission.INTERNET"), application.getNonwarnablePermissions());
+    }
+
+    @Test
+    public void marksTheApplicationsOfTheSystemAppsSnapshotAsSystemApps() {
+        new ScanSnapshotStore(null, WORK_PROFILE, true, snapshotFile).save(Collections.singletonList(camera(false)));
+
+        List<AndroidApplication> applications = new ScanSnapshotStore(null, WORK_PROFILE, true, snapshotFile).load().getApplications();
+
+        assertTrue(applications.get(0).isSystemApp());
+    }
+
+    @Test
+    public void keepsTheVersionWhenTheContentIsUnchanged() {
+        ScanSnapshotStore store = openStore();
+        ScanSnapshot saved = store.save(Collections.singletonList(camera(false)));
+        long modified = snapshotFile.lastModified();
+
+        assertSame(saved, store.save(Collections.singletonList(camera(false))));
+        assertEquals(saved.getVersion(), openStore().load().getVersion());
+        assertEquals(modified, snapshotFile.lastModified());
+    }
+
+    @Test
+    public void comparesAgainstThePersistedChecksumAfterARestart() {
+        openStore().save(Collections.singletonList(camera(false)));
+
+        assertEquals(1, openStore().save(Collections.singletonList(camera(false))).getVersion());
+        assertEquals(2, openStore().save(Collections.singletonList(camera(true))).getVersion());
+        assertTrue(openStore().load().getApplications().get(0).isIgnoredTemporarily());
+    }
+
+    @Test
+    public void ignoresASnapshotOfAnotherFormatVersion() throws IOException {
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(snapshotFile));
+        try {
+            output.writeInt(1);
+            output.writeLong(7);
+        } finally {
+            output.close();
+        }
+
+        ScanSnapshot snapshot = openStore().load();
+
+        assertEquals(0, snapshot.getVersion());
+        assertTrue(snapshot.getApplications().isEmpty());
+    }
+
+    @Test
+    public void ignoresATruncatedSnapshot() throws IOException {
+        openStore().save(Collections.singletonList(camera(false)));
+        RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+        try {
+            file.setLength(file.length() - 4);
+        } finally {
+            file.close();
+        }
+
+        assertTrue(openStore().load().getApplications().isEmpty());
+    }
+}
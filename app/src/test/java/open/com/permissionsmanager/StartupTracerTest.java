@@ -0,0 +1,68 @@
+package open.com.permissionsmanager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static open.com.permissionsmanager.StartupTracer.MAX_RECORDED_LAUNCHES_PER_VERSION;
+import static org.junit.Assert.*;
+
+public class StartupTracerTest {
+    private static List<String> recordLaunches(List<String> recordedLaunches, long versionCode, int numberOfLaunches) {
+        for (int i = 0; i < numberOfLaunches; i++)
+            recordedLaunches = StartupTracer.addLaunch(recordedLaunches, new StartupTracer.Launch(versionCode, 100 + i, 200 + i, 10));
+        return recordedLaunches;
+    }
+
+    @Test
+    public void keepsTheLaunchesOfThePreviousVersionWhenThisOneIsLaunchedOften() {
+        List<String> recordedLaunches = recordLaunches(new ArrayList<String>(), 8, 5);
+        recordedLaunches = recordLaunches(recordedLaunches, 9, 3 * MAX_RECORDED_LAUNCHES_PER_VERSION);
+
+        assertEquals(8, StartupTracer.getPreviousVersion(recordedLaunches, 9));
+        assertEquals(5, StartupTracer.getLaunchesOfVersion(recordedLaunches, 8).size());
+        assertEquals(MAX_RECORDED_LAUNCHES_PER_VERSION, StartupTracer.getLaunchesOfVersion(recordedLaunches, 9).size());
+    }
+
+    @Test
+    public void keepsTheLatestLaunchesOfEachVersion() {
+        List<String> recordedLaunches = recordLaunches(new ArrayList<String>(), 9, MAX_RECORDED_LAUNCHES_PER_VERSION + 5);
+
+        List<StartupTracer.Launch> launches = StartupTracer.getLaunchesOfVersion(recordedLaunches, 9);
+
+        assertEquals(MAX_RECORDED_LAUNCHES_PER_VERSION, launches.size());
+        assertEquals(new StartupTracer.Launch(9, 105, 205, 10).toString(), launches.get(0).toString());
+        assertEquals(new StartupTracer.Launch(9, 124, 224, 10).toString(), launches.get(launches.size() - 1).toString());
+    }
+
+    @Test
+    public void dropsTheLaunchesOfOlderVersions() {
+        List<String> recordedLaunches = recordLaunches(new ArrayList<String>(), 7, 2);
+        recordedLaunches = recordLaunches(recordedLaunches, 8, 2);
+        recordedLaunches = recordLaunches(recordedLaunches, 9, 1);
+
+        assertTrue(StartupTracer.getLaunchesOfVersion(recordedLaunches, 7).isEmpty());
+        assertEquals(2, StartupTracer.getLaunchesOfVersion(recordedLaunches, 8).size());
+        assertEquals(1, StartupTracer.getLaunchesOfVersion(recordedLaunches, 9).size());
+    }
+
+    @Test
+    public void skipsMalformedLaunches() {
+        List<String> recordedLaunches = Arrays.asList("9,100,200,10", "9,not,a,launch", "9,100", "");
+
+        assertEquals(1, StartupTracer.getLaunchesOfVersion(recordedLaunches, 9).size());
+        assertEquals(-1, StartupTracer.getPreviousVersion(recordedLaunches, 9));
+    }
+
+    @Test
+    public void computesTheMedianOfTheLaunches() {
+        List<String> recordedLaunches = Arrays.asList("9,300,900,0", "9,100,700,0", "9,200,800,0");
+
+        List<StartupTracer.Launch> launches = StartupTracer.getLaunchesOfVersion(recordedLaunches, 9);
+
+        assertEquals(200, StartupTracer.getMedian(launches, true));
+        assertEquals(800, StartupTracer.getMedian(launches, false));
+    }
+}